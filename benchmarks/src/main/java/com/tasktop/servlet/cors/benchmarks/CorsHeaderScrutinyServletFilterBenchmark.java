@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.tasktop.servlet.cors.CorsHeaderScrutinyServletFilter;
+import com.tasktop.servlet.cors.StubFilterConfig;
+import com.tasktop.servlet.cors.StubHttpServletRequest;
+import com.tasktop.servlet.cors.StubHttpServletResponse;
+
+/**
+ * Measures the per-request cost of {@link CorsHeaderScrutinyServletFilter#doFilter} for the request mixes seen in
+ * production. Run with {@code -prof gc} (the default when launched via {@link #main(String[])}) to report bytes
+ * allocated per operation alongside the time per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CorsHeaderScrutinyServletFilterBenchmark {
+
+	private static final String CONTEXT_PATH = "/app";
+
+	private static final String HOST = "tasks.example.com";
+
+	private static final String EXCLUSION_PATHS = "/api/v1/ /api/v2/ /api/v3/ /rest/ /oauth/ /webhooks/ /health "
+			+ "/metrics /static/ /public/ /integrations/ /sync/ /export/ /import/ /attachments/ /avatars/";
+
+	private final CorsHeaderScrutinyServletFilter filter = new CorsHeaderScrutinyServletFilter();
+
+	private final CountingFilterChain chain = new CountingFilterChain();
+
+	private final StubHttpServletResponse response = new StubHttpServletResponse();
+
+	private StubHttpServletRequest sameOriginPost;
+
+	private StubHttpServletRequest crossOriginPost;
+
+	private StubHttpServletRequest getWithReferer;
+
+	private StubHttpServletRequest noOriginOrReferer;
+
+	private StubHttpServletRequest excludedPath;
+
+	private StubHttpServletRequest duplicateOrigin;
+
+	@Setup
+	public void setUp() throws ServletException {
+		filter.init(new StubFilterConfig().initParameter("exclusion-paths", EXCLUSION_PATHS));
+
+		sameOriginPost = new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks/1234/comments")
+				.header("Host", HOST)
+				.header("Origin", "https://" + HOST)
+				.header("Referer", "https://" + HOST + "/app/tasks/1234");
+		crossOriginPost = new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks/1234/comments")
+				.header("Host", HOST)
+				.header("Origin", "https://attacker.example.net");
+		getWithReferer = new StubHttpServletRequest("GET", CONTEXT_PATH, CONTEXT_PATH + "/tasks/1234")
+				.header("Host", HOST)
+				.header("Referer", "https://" + HOST
+						+ "/app/search?query=status%3Aopen%20assignee%3Ame&sort=updated&page=3&view=compact#results");
+		noOriginOrReferer = new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks")
+				.header("Host", HOST);
+		excludedPath = new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/webhooks/github/push")
+				.header("Host", HOST)
+				.header("Origin", "https://github.com");
+		duplicateOrigin = new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks")
+				.header("Host", HOST)
+				.header("Origin", "https://" + HOST, "https://attacker.example.net");
+	}
+
+	@Benchmark
+	public int sameOriginPost() throws IOException, ServletException {
+		return doFilter(sameOriginPost);
+	}
+
+	@Benchmark
+	public int crossOriginPost() throws IOException, ServletException {
+		return doFilter(crossOriginPost);
+	}
+
+	@Benchmark
+	public int getWithReferer() throws IOException, ServletException {
+		return doFilter(getWithReferer);
+	}
+
+	@Benchmark
+	public int noOriginOrReferer() throws IOException, ServletException {
+		return doFilter(noOriginOrReferer);
+	}
+
+	@Benchmark
+	public int excludedPath() throws IOException, ServletException {
+		return doFilter(excludedPath);
+	}
+
+	@Benchmark
+	public int duplicateOrigin() throws IOException, ServletException {
+		return doFilter(duplicateOrigin);
+	}
+
+	private int doFilter(StubHttpServletRequest request) throws IOException, ServletException {
+		filter.doFilter(request.clearAttributes(), response, chain);
+		return response.getStatus() + chain.invocations;
+	}
+
+	private static class CountingFilterChain implements FilterChain {
+
+		private int invocations;
+
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) {
+			++invocations;
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CorsHeaderScrutinyServletFilterBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+}
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.benchmarks.container;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+
+import com.tasktop.servlet.cors.CorsHeaderScrutinyServletFilter;
+
+/**
+ * Measures the overhead of {@link CorsHeaderScrutinyServletFilter} in a real container: an embedded Jetty server is
+ * started on the loopback interface without the filter, and another one with the filter mapped to {@code /*}. The
+ * same mix of requests is replayed against both servers, alternating between them in several rounds after warming
+ * both up, so that both are measured under the same conditions. The throughput and latency percentiles of both
+ * servers and their differences are printed.
+ * <p>
+ * Options, all optional:
+ * <ul>
+ * <li>{@code --requests N}: the number of measured requests per server and round (default 100000)</li>
+ * <li>{@code --rounds N}: the number of rounds (default 3)</li>
+ * <li>{@code --warmup N}: the number of requests sent to each server before measuring (default 100000)</li>
+ * <li>{@code --concurrency N}: the number of client connections (default 8)</li>
+ * <li>{@code --mix same-origin=70,cross-origin=10,excluded-path=15,malicious=5}: the relative weight of each kind of
+ * request</li>
+ * <li>{@code --init-param name=value}: an init parameter of the filter, which may be repeated (default
+ * {@code exclusion-paths=/webhooks/} and {@code allowed-origins=*.partner.example.com})</li>
+ * </ul>
+ */
+public class ContainerBenchmark {
+
+	private static final double[] PERCENTILES = { 0.5, 0.99, 0.999 };
+
+	private int requests = 100_000;
+
+	private int rounds = 3;
+
+	private int warmupRequests = 100_000;
+
+	private int concurrency = 8;
+
+	private final Map<Scenario, Integer> mix = new EnumMap<>(Scenario.class);
+
+	private final Map<String, String> initParameters = new LinkedHashMap<>();
+
+	public static void main(String[] args) throws Exception {
+		ContainerBenchmark benchmark = new ContainerBenchmark();
+		benchmark.parseArguments(args);
+		benchmark.run();
+	}
+
+	private ContainerBenchmark() {
+		mix.put(Scenario.SAME_ORIGIN, 70);
+		mix.put(Scenario.CROSS_ORIGIN, 10);
+		mix.put(Scenario.EXCLUDED_PATH, 15);
+		mix.put(Scenario.MALICIOUS, 5);
+	}
+
+	private void parseArguments(String[] args) {
+		boolean defaultInitParameters = true;
+		for (int index = 0; index < args.length; index += 2) {
+			if (index + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of option " + args[index]);
+			}
+			String value = args[index + 1];
+			switch (args[index]) {
+			case "--requests":
+				requests = Integer.parseInt(value);
+				break;
+			case "--rounds":
+				rounds = Integer.parseInt(value);
+				break;
+			case "--warmup":
+				warmupRequests = Integer.parseInt(value);
+				break;
+			case "--concurrency":
+				concurrency = Integer.parseInt(value);
+				break;
+			case "--mix":
+				mix.clear();
+				for (Map.Entry<String, String> entry : parsePairs(value).entrySet()) {
+					mix.put(Scenario.forName(entry.getKey()), Integer.parseInt(entry.getValue()));
+				}
+				break;
+			case "--init-param":
+				defaultInitParameters = false;
+				initParameters.putAll(parsePairs(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[index]);
+			}
+		}
+		if (defaultInitParameters) {
+			initParameters.put("exclusion-paths", "/webhooks/");
+			initParameters.put("allowed-origins", "*.partner.example.com");
+		}
+	}
+
+	private static Map<String, String> parsePairs(String value) {
+		Map<String, String> pairs = new LinkedHashMap<>();
+		for (String pair : value.split(",")) {
+			int separator = pair.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Expected name=value: \"" + pair + "\"");
+			}
+			pairs.put(pair.substring(0, separator).trim(), pair.substring(separator + 1).trim());
+		}
+		return pairs;
+	}
+
+	private void run() throws Exception {
+		List<Scenario> sequence = sequence();
+		System.out.println(String.format(Locale.ROOT,
+				"%d rounds of %d requests after %d warm-up requests over %d connections, mix %s", rounds, requests,
+				warmupRequests, concurrency, describeMix()));
+		System.out.println("Filter init parameters: " + initParameters);
+		Server serverWithoutFilter = startServer(false);
+		Server serverWithFilter = startServer(true);
+		Measurement withoutFilter;
+		Measurement withFilter;
+		try {
+			LoadGenerator generatorWithoutFilter = new LoadGenerator(getPort(serverWithoutFilter), sequence, false,
+					concurrency);
+			LoadGenerator generatorWithFilter = new LoadGenerator(getPort(serverWithFilter), sequence, true,
+					concurrency);
+			System.out.println("Warming up");
+			generatorWithoutFilter.run(warmupRequests);
+			generatorWithFilter.run(warmupRequests);
+			List<Measurement> measurementsWithoutFilter = new ArrayList<>();
+			List<Measurement> measurementsWithFilter = new ArrayList<>();
+			for (int round = 1; round <= rounds; ++round) {
+				System.out.println("Measuring round " + round);
+				measurementsWithoutFilter.add(generatorWithoutFilter.run(requests));
+				measurementsWithFilter.add(generatorWithFilter.run(requests));
+			}
+			withoutFilter = Measurement.combine(measurementsWithoutFilter);
+			withFilter = Measurement.combine(measurementsWithFilter);
+		} finally {
+			serverWithoutFilter.stop();
+			serverWithFilter.stop();
+		}
+
+		System.out.println();
+		System.out.println(String.format(Locale.ROOT, "%-16s %14s %12s %12s %12s", "", "requests/s", "p50 (us)",
+				"p99 (us)", "p99.9 (us)"));
+		printMeasurement("without filter", withoutFilter);
+		printMeasurement("with filter", withFilter);
+		StringBuilder difference = new StringBuilder(String.format(Locale.ROOT, "%-16s %+13.1f%%", "difference",
+				100 * (withFilter.getRequestsPerSecond() / withoutFilter.getRequestsPerSecond() - 1)));
+		for (double percentile : PERCENTILES) {
+			difference.append(String.format(Locale.ROOT, " %+12.1f",
+					withFilter.getLatencyMicros(percentile) - withoutFilter.getLatencyMicros(percentile)));
+		}
+		System.out.println(difference);
+		for (Measurement measurement : new Measurement[] { withoutFilter, withFilter }) {
+			if (measurement.getUnexpectedResponses() > 0) {
+				System.out.println(String.format(Locale.ROOT, "WARNING: %d of %d responses had an unexpected status",
+						measurement.getUnexpectedResponses(), measurement.getRequestCount()));
+			}
+		}
+	}
+
+	/**
+	 * Expands the mix into a shuffled sequence of scenarios, which every client replays in a loop.
+	 */
+	private List<Scenario> sequence() {
+		List<Scenario> sequence = new ArrayList<>();
+		for (Map.Entry<Scenario, Integer> entry : mix.entrySet()) {
+			sequence.addAll(Collections.nCopies(entry.getValue(), entry.getKey()));
+		}
+		if (sequence.isEmpty()) {
+			throw new IllegalArgumentException("The mix must have at least one request");
+		}
+		Collections.shuffle(sequence, new Random(1));
+		return sequence;
+	}
+
+	private String describeMix() {
+		StringBuilder description = new StringBuilder();
+		for (Map.Entry<Scenario, Integer> entry : mix.entrySet()) {
+			description.append(description.length() == 0 ? "" : ",").append(entry.getKey().getName()).append('=')
+					.append(entry.getValue());
+		}
+		return description.toString();
+	}
+
+	private static int getPort(Server server) {
+		return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+	}
+
+	private Server startServer(boolean filtered) throws Exception {
+		Server server = new Server(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath("/");
+		context.addServlet(OkServlet.class, "/*");
+		if (filtered) {
+			FilterHolder filter = new FilterHolder(CorsHeaderScrutinyServletFilter.class);
+			filter.setName("CORSFilter");
+			filter.setInitParameters(initParameters);
+			context.addFilter(filter, "/*", EnumSet.of(DispatcherType.REQUEST));
+		}
+		server.setHandler(context);
+		server.start();
+		return server;
+	}
+
+	private static void printMeasurement(String label, Measurement measurement) {
+		StringBuilder line = new StringBuilder(
+				String.format(Locale.ROOT, "%-16s %14.1f", label, measurement.getRequestsPerSecond()));
+		for (double percentile : PERCENTILES) {
+			line.append(String.format(Locale.ROOT, " %12.1f", measurement.getLatencyMicros(percentile)));
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * Answers every request with a short plain text response, standing in for the application.
+	 */
+	public static class OkServlet extends HttpServlet {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final byte[] CONTENT = { 'O', 'K' };
+
+		@Override
+		protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+			response.setContentType("text/plain");
+			response.setContentLength(CONTENT.length);
+			response.getOutputStream().write(CONTENT);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.benchmarks.container;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays a sequence of requests against a server on the loopback interface from a number of client threads, each
+ * with its own persistent connection, and records the latency of every request. Requests are written and responses
+ * are parsed directly on the socket, so that the cost of the client stays small compared to that of the server.
+ */
+class LoadGenerator {
+
+	private final int port;
+
+	private final List<Scenario> sequence;
+
+	private final boolean filtered;
+
+	private final int concurrency;
+
+	LoadGenerator(int port, List<Scenario> sequence, boolean filtered, int concurrency) {
+		this.port = port;
+		this.sequence = sequence;
+		this.filtered = filtered;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Sends the given number of requests, spread evenly over the client threads, and waits until every response has
+	 * been received.
+	 */
+	Measurement run(int requestCount) throws InterruptedException, IOException {
+		int requestsPerClient = Math.max(1, requestCount / concurrency);
+		List<Client> clients = new ArrayList<>();
+		for (int index = 0; index < concurrency; ++index) {
+			clients.add(new Client(index, requestsPerClient));
+		}
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<IOException> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for (Client client : clients) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					client.run();
+				} catch (IOException e) {
+					failure.compareAndSet(null, e);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}, "load-generator-" + client.index);
+			thread.start();
+			threads.add(thread);
+		}
+		long startTime = System.nanoTime();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		long[] latencies = new long[requestsPerClient * concurrency];
+		int unexpectedResponses = 0;
+		for (Client client : clients) {
+			System.arraycopy(client.latencies, 0, latencies, client.index * requestsPerClient, requestsPerClient);
+			unexpectedResponses += client.unexpectedResponses;
+		}
+		return new Measurement(latencies, elapsedNanos, unexpectedResponses);
+	}
+
+	private class Client {
+
+		private final int index;
+
+		private final long[] latencies;
+
+		private int unexpectedResponses;
+
+		private Socket socket;
+
+		private OutputStream output;
+
+		private InputStream input;
+
+		Client(int index, int requestCount) {
+			this.index = index;
+			this.latencies = new long[requestCount];
+		}
+
+		void run() throws IOException {
+			String host = "localhost:" + port;
+			byte[][] requests = new byte[sequence.size()][];
+			for (int position = 0; position < requests.length; ++position) {
+				requests[position] = sequence.get(position).request(host);
+			}
+			try {
+				// start each client at a different position so that the clients do not send the same request at once
+				int position = index * sequence.size() / concurrency;
+				for (int request = 0; request < latencies.length; ++request) {
+					Scenario scenario = sequence.get(position);
+					long startTime = System.nanoTime();
+					int status = exchange(requests[position]);
+					latencies[request] = System.nanoTime() - startTime;
+					if (status != scenario.expectedStatus(filtered)) {
+						++unexpectedResponses;
+					}
+					position = (position + 1) % requests.length;
+				}
+			} finally {
+				close();
+			}
+		}
+
+		private int exchange(byte[] request) throws IOException {
+			if (socket == null) {
+				socket = new Socket(InetAddress.getLoopbackAddress(), port);
+				socket.setTcpNoDelay(true);
+				output = socket.getOutputStream();
+				input = new BufferedInputStream(socket.getInputStream());
+			}
+			output.write(request);
+			output.flush();
+			return readResponse();
+		}
+
+		/**
+		 * Reads a response and its content, closing the connection if the server asks for it.
+		 */
+		private int readResponse() throws IOException {
+			String statusLine = readLine();
+			int status = Integer.parseInt(statusLine.substring(9, 12));
+			long contentLength = 0;
+			boolean chunked = false;
+			boolean close = false;
+			for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+				String header = line.toLowerCase(Locale.ROOT);
+				if (header.startsWith("content-length:")) {
+					contentLength = Long.parseLong(header.substring(15).trim());
+				} else if (header.startsWith("transfer-encoding:") && header.endsWith("chunked")) {
+					chunked = true;
+				} else if (header.startsWith("connection:") && header.endsWith("close")) {
+					close = true;
+				}
+			}
+			if (chunked) {
+				for (long chunkSize = readChunkSize(); chunkSize > 0; chunkSize = readChunkSize()) {
+					skip(chunkSize);
+					readLine();
+				}
+				readLine();
+			} else {
+				skip(contentLength);
+			}
+			if (close) {
+				close();
+			}
+			return status;
+		}
+
+		private long readChunkSize() throws IOException {
+			String line = readLine();
+			int extension = line.indexOf(';');
+			return Long.parseLong(extension < 0 ? line.trim() : line.substring(0, extension).trim(), 16);
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder line = new StringBuilder();
+			for (int c = read(); c != '\n'; c = read()) {
+				if (c != '\r') {
+					line.append((char) c);
+				}
+			}
+			return line.toString();
+		}
+
+		private void skip(long count) throws IOException {
+			for (long remaining = count; remaining > 0; --remaining) {
+				read();
+			}
+		}
+
+		private int read() throws IOException {
+			int c = input.read();
+			if (c < 0) {
+				throw new EOFException("Connection closed by the server");
+			}
+			return c;
+		}
+
+		private void close() throws IOException {
+			if (socket != null) {
+				socket.close();
+				socket = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.benchmarks.container;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput and latency distribution of one run of the {@link LoadGenerator}.
+ */
+class Measurement {
+
+	private final long[] sortedLatencies;
+
+	private final long elapsedNanos;
+
+	private final int unexpectedResponses;
+
+	Measurement(long[] latencies, long elapsedNanos, int unexpectedResponses) {
+		this.sortedLatencies = latencies.clone();
+		Arrays.sort(sortedLatencies);
+		this.elapsedNanos = elapsedNanos;
+		this.unexpectedResponses = unexpectedResponses;
+	}
+
+	/**
+	 * Combines the given measurements as if they were a single run.
+	 */
+	static Measurement combine(List<Measurement> measurements) {
+		long[] latencies = new long[0];
+		long elapsedNanos = 0;
+		int unexpectedResponses = 0;
+		for (Measurement measurement : measurements) {
+			int offset = latencies.length;
+			latencies = Arrays.copyOf(latencies, offset + measurement.sortedLatencies.length);
+			System.arraycopy(measurement.sortedLatencies, 0, latencies, offset, measurement.sortedLatencies.length);
+			elapsedNanos += measurement.elapsedNanos;
+			unexpectedResponses += measurement.unexpectedResponses;
+		}
+		return new Measurement(latencies, elapsedNanos, unexpectedResponses);
+	}
+
+	int getRequestCount() {
+		return sortedLatencies.length;
+	}
+
+	/**
+	 * Provides the number of responses with a status other than the one expected for their scenario.
+	 */
+	int getUnexpectedResponses() {
+		return unexpectedResponses;
+	}
+
+	double getRequestsPerSecond() {
+		return sortedLatencies.length * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+	/**
+	 * Provides the latency in microseconds below which the given fraction of the requests completed.
+	 */
+	double getLatencyMicros(double fraction) {
+		int index = (int) Math.ceil(fraction * sortedLatencies.length) - 1;
+		return sortedLatencies[Math.max(0, index)] / (double) TimeUnit.MICROSECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.benchmarks.container;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The kinds of requests replayed by the {@link LoadGenerator}, each with the status expected from the server when the
+ * filter is and is not installed.
+ */
+enum Scenario {
+
+	/**
+	 * A POST whose Origin and Referer match the Host header.
+	 */
+	SAME_ORIGIN("same-origin", "/tasks/1234/comments", 200) {
+		@Override
+		String headers(String host) {
+			return "Origin: http://" + host + "\r\nReferer: http://" + host + "/tasks/1234\r\n";
+		}
+	},
+
+	/**
+	 * A POST from an origin that is allowed by {@code allowed-origins}.
+	 */
+	CROSS_ORIGIN("cross-origin", "/tasks/1234/comments", 200) {
+		@Override
+		String headers(String host) {
+			return "Origin: https://app.partner.example.com\r\n";
+		}
+	},
+
+	/**
+	 * A POST from another origin to a path that is excluded by {@code exclusion-paths}.
+	 */
+	EXCLUDED_PATH("excluded-path", "/webhooks/push", 200) {
+		@Override
+		String headers(String host) {
+			return "Origin: https://github.com\r\n";
+		}
+	},
+
+	/**
+	 * A POST from another origin that must be rejected by the filter.
+	 */
+	MALICIOUS("malicious", "/tasks/1234/comments", 403) {
+		@Override
+		String headers(String host) {
+			return "Origin: https://attacker.example.net\r\nReferer: https://attacker.example.net/csrf.html\r\n";
+		}
+	};
+
+	private final String name;
+
+	private final String path;
+
+	private final int filteredStatus;
+
+	private Scenario(String name, String path, int filteredStatus) {
+		this.name = name;
+		this.path = path;
+		this.filteredStatus = filteredStatus;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Provides the status expected from the server, which is always {@code 200} when the filter is not installed.
+	 */
+	int expectedStatus(boolean filtered) {
+		return filtered ? filteredStatus : 200;
+	}
+
+	/**
+	 * Encodes the HTTP/1.1 request of this scenario for a server listening on the given host and port.
+	 */
+	byte[] request(String host) {
+		return ("POST " + path + " HTTP/1.1\r\nHost: " + host + "\r\n" + headers(host) + "Content-Length: 0\r\n\r\n")
+				.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	abstract String headers(String host);
+
+	static Scenario forName(String name) {
+		for (Scenario scenario : values()) {
+			if (scenario.name.equals(name)) {
+				return scenario;
+			}
+		}
+		throw new IllegalArgumentException("Unknown scenario: \"" + name + "\"");
+	}
+}
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+import static java.text.MessageFormat.format;
+import static java.util.Objects.requireNonNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A set of IPv4 and IPv6 address ranges in CIDR notation, such as {@code 10.0.0.0/8} or {@code 2001:db8::/32}, stored
+ * in a binary trie over the bits of the addresses. IPv4 addresses are stored as IPv4-mapped IPv6 addresses
+ * ({@code ::ffff:10.0.0.0/104}), so that both forms of an address are in the same range. Looking up an address
+ * parses it while walking the trie, so that its cost depends only on the number of bits of the address and it does
+ * not allocate.
+ */
+class AddressTrie {
+
+	private static final int IPV6_GROUPS = 8;
+
+	private static final int IPV4_MAPPED_PREFIX_BITS = 96;
+
+	/**
+	 * The walk of the trie reached a range of this set.
+	 */
+	private static final int MATCH = -1;
+
+	/**
+	 * The walk of the trie left every range of this set, or the address is not valid.
+	 */
+	private static final int NO_MATCH = -2;
+
+	// the children of each node, where 0 (the root, which is nobody's child) means no child
+	private int[] zeroChildren = new int[16];
+
+	private int[] oneChildren = new int[16];
+
+	private boolean[] terminal = new boolean[16];
+
+	private int nodeCount = 1;
+
+	AddressTrie(List<String> ranges) {
+		requireNonNull(ranges);
+		checkArgument(!ranges.isEmpty());
+		for (String range : ranges) {
+			add(range);
+		}
+		zeroChildren = Arrays.copyOf(zeroChildren, nodeCount);
+		oneChildren = Arrays.copyOf(oneChildren, nodeCount);
+		terminal = Arrays.copyOf(terminal, nodeCount);
+	}
+
+	/**
+	 * Indicates whether the IPv4 or IPv6 address between the given indexes of the given value is in one of the ranges
+	 * of this set. A zone index, as in {@code fe80::1%eth0}, is ignored. Values that are not addresses are not in the
+	 * set.
+	 */
+	boolean contains(String value, int start, int end) {
+		int zone = indexOf(value, '%', start, end);
+		if (zone >= 0) {
+			end = zone;
+		}
+		int node;
+		if (indexOf(value, ':', start, end) < 0) {
+			node = walkIpv4(walkIpv4MappedPrefix(0), value, start, end);
+		} else {
+			node = walkIpv6(value, start, end);
+		}
+		return node == MATCH || (node >= 0 && terminal[node]);
+	}
+
+	boolean contains(String value) {
+		return value != null && contains(value, 0, value.length());
+	}
+
+	private int walkIpv6(String value, int start, int end) {
+		int compression = indexOf(value, "::", start, end);
+		if (compression < 0) {
+			return countGroups(value, start, end) == IPV6_GROUPS ? walkGroups(0, value, start, end) : NO_MATCH;
+		}
+		int groupsBefore = countGroups(value, start, compression);
+		int groupsAfter = countGroups(value, compression + 2, end);
+		int compressedGroups = IPV6_GROUPS - groupsBefore - groupsAfter;
+		if (groupsBefore < 0 || groupsAfter < 0 || compressedGroups < 1) {
+			return NO_MATCH;
+		}
+		int node = walkGroups(0, value, start, compression);
+		for (int group = 0; group < compressedGroups; ++group) {
+			node = walk(node, 0, 16);
+		}
+		return walkGroups(node, value, compression + 2, end);
+	}
+
+	/**
+	 * Counts the 16-bit groups of the given part of an IPv6 address, in which a trailing IPv4 address counts as two
+	 * groups, or returns -1 if the part is malformed.
+	 */
+	private static int countGroups(String value, int start, int end) {
+		if (start == end) {
+			return 0;
+		}
+		int groups = 0;
+		for (int groupStart = start; groupStart <= end;) {
+			int groupEnd = indexOf(value, ':', groupStart, end);
+			if (groupEnd < 0) {
+				groupEnd = end;
+			}
+			if (groupEnd == groupStart) {
+				return -1;
+			}
+			groups += indexOf(value, '.', groupStart, groupEnd) >= 0 && groupEnd == end ? 2 : 1;
+			groupStart = groupEnd + 1;
+		}
+		return groups;
+	}
+
+	private int walkGroups(int node, String value, int start, int end) {
+		if (start == end) {
+			return node;
+		}
+		for (int groupStart = start; groupStart <= end && node >= 0;) {
+			int groupEnd = indexOf(value, ':', groupStart, end);
+			if (groupEnd < 0) {
+				groupEnd = end;
+			}
+			if (groupEnd == end && indexOf(value, '.', groupStart, groupEnd) >= 0) {
+				return walkIpv4(node, value, groupStart, groupEnd);
+			}
+			int group = parseHex(value, groupStart, groupEnd);
+			if (group < 0) {
+				return NO_MATCH;
+			}
+			node = walk(node, group, 16);
+			groupStart = groupEnd + 1;
+		}
+		return node;
+	}
+
+	private int walkIpv4MappedPrefix(int node) {
+		for (int group = 0; group < IPV4_MAPPED_PREFIX_BITS / 16 - 1; ++group) {
+			node = walk(node, 0, 16);
+		}
+		return walk(node, 0xffff, 16);
+	}
+
+	private int walkIpv4(int node, String value, int start, int end) {
+		int octetStart = start;
+		for (int octet = 0; octet < 4; ++octet) {
+			int octetEnd = octet == 3 ? end : indexOf(value, '.', octetStart, end);
+			if (octetEnd < 0) {
+				return NO_MATCH;
+			}
+			int octetValue = parseDecimalOctet(value, octetStart, octetEnd);
+			if (octetValue < 0) {
+				return NO_MATCH;
+			}
+			node = walk(node, octetValue, 8);
+			octetStart = octetEnd + 1;
+		}
+		return node;
+	}
+
+	/**
+	 * Walks the trie from the given node along the given number of low-order bits of the given value, most
+	 * significant bit first, and returns the node reached, {@link #MATCH} or {@link #NO_MATCH}.
+	 */
+	private int walk(int node, int value, int bits) {
+		for (int bit = bits - 1; bit >= 0 && node >= 0; --bit) {
+			if (terminal[node]) {
+				return MATCH;
+			}
+			int child = ((value >>> bit) & 1) == 0 ? zeroChildren[node] : oneChildren[node];
+			node = child == 0 ? NO_MATCH : child;
+		}
+		return node;
+	}
+
+	private static int parseHex(String value, int start, int end) {
+		if (end - start < 1 || end - start > 4) {
+			return -1;
+		}
+		int result = 0;
+		for (int index = start; index < end; ++index) {
+			int digit = hexDigit(value.charAt(index));
+			if (digit < 0) {
+				return -1;
+			}
+			result = (result << 4) | digit;
+		}
+		return result;
+	}
+
+	/**
+	 * Provides the value of an ASCII hexadecimal digit, unlike {@link Character#digit(char, int)}, which would also
+	 * accept the digits of other scripts, such as fullwidth digits.
+	 */
+	private static int hexDigit(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	private static int parseDecimalOctet(String value, int start, int end) {
+		if (end - start < 1 || end - start > 3) {
+			return -1;
+		}
+		int result = 0;
+		for (int index = start; index < end; ++index) {
+			char c = value.charAt(index);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			result = result * 10 + (c - '0');
+		}
+		return result <= 255 ? result : -1;
+	}
+
+	private static int indexOf(String value, char c, int start, int end) {
+		for (int index = start; index < end; ++index) {
+			if (value.charAt(index) == c) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(String value, String substring, int start, int end) {
+		int index = value.indexOf(substring, start);
+		return index >= 0 && index + substring.length() <= end ? index : -1;
+	}
+
+	private void add(String range) {
+		int separator = range.indexOf('/');
+		String address = separator < 0 ? range : range.substring(0, separator);
+		byte[] bytes = parseAddressLiteral(range, address);
+		// an IPv4-mapped IPv6 literal is parsed as an IPv4 address, while its prefix length counts the mapping prefix
+		int minimumPrefixLength = bytes.length == 4 && address.indexOf(':') >= 0 ? IPV4_MAPPED_PREFIX_BITS : 0;
+		int maximumPrefixLength = minimumPrefixLength + bytes.length * 8;
+		int prefixLength = separator < 0 ? maximumPrefixLength : parsePrefixLength(range, separator);
+		if (prefixLength < minimumPrefixLength || prefixLength > maximumPrefixLength) {
+			throw new IllegalArgumentException(format("Prefix length must be between {0} and {1}: \"{2}\"",
+					minimumPrefixLength, maximumPrefixLength, range));
+		}
+		prefixLength -= minimumPrefixLength;
+		int node = 0;
+		if (bytes.length == 4) {
+			for (int bit = 0; bit < IPV4_MAPPED_PREFIX_BITS; ++bit) {
+				node = child(node, bit >= IPV4_MAPPED_PREFIX_BITS - 16);
+			}
+		}
+		for (int bit = 0; bit < prefixLength; ++bit) {
+			node = child(node, ((bytes[bit / 8] >>> (7 - bit % 8)) & 1) != 0);
+		}
+		terminal[node] = true;
+	}
+
+	private static byte[] parseAddressLiteral(String range, String address) {
+		if (address.indexOf(':') < 0) {
+			// parsed here rather than by InetAddress, which would resolve anything that is not a valid IPv4 address
+			String[] octets = address.split("\\.", -1);
+			byte[] bytes = new byte[octets.length];
+			for (int index = 0; index < octets.length; ++index) {
+				int octet = parseDecimalOctet(octets[index], 0, octets[index].length());
+				if (octet < 0 || octets.length != 4) {
+					throw new IllegalArgumentException(format("Not an IP address range: \"{0}\"", range));
+				}
+				bytes[index] = (byte) octet;
+			}
+			return bytes;
+		}
+		// InetAddress only parses values with a colon as IPv6 literals and never resolves them
+		if (!address.matches("[0-9a-fA-F:.]+")) {
+			throw new IllegalArgumentException(format("Not an IP address range: \"{0}\"", range));
+		}
+		try {
+			return InetAddress.getByName(address).getAddress();
+		} catch (UnknownHostException e) {
+			throw new IllegalArgumentException(format("Not an IP address range: \"{0}\"", range), e);
+		}
+	}
+
+	private static int parsePrefixLength(String range, int separator) {
+		try {
+			return Integer.parseInt(range.substring(separator + 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(format("Not an IP address range: \"{0}\"", range), e);
+		}
+	}
+
+	private int child(int node, boolean one) {
+		int[] children = one ? oneChildren : zeroChildren;
+		if (children[node] == 0) {
+			if (nodeCount == terminal.length) {
+				zeroChildren = Arrays.copyOf(zeroChildren, nodeCount * 2);
+				oneChildren = Arrays.copyOf(oneChildren, nodeCount * 2);
+				terminal = Arrays.copyOf(terminal, nodeCount * 2);
+				children = one ? oneChildren : zeroChildren;
+			}
+			children[node] = nodeCount++;
+		}
+		return children[node];
+	}
+}
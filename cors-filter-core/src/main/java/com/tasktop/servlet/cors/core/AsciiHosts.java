@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+/**
+ * Compares, hashes and normalizes host names in place, ignoring the case of ASCII letters only, for the tables and
+ * scanners that look up hosts without creating substrings. Unlike {@link String#toLowerCase()}, non-ASCII characters
+ * such as the Kelvin sign are never folded into ASCII letters.
+ */
+class AsciiHosts {
+
+	private static final char LABEL_SEPARATOR = '.';
+
+	/**
+	 * Hashes the range of the given value ignoring ASCII case, with the higher bits spread into the lower ones for
+	 * tables that are indexed by a mask.
+	 */
+	static int hash(String value, int start, int end) {
+		int hash = 0;
+		for (int index = start; index < end; ++index) {
+			hash = 31 * hash + toLowerAscii(value.charAt(index));
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Provides the end of the host name between the given indexes of the given value without a single trailing dot,
+	 * so that a fully qualified domain name such as {@code example.com.} is looked up as {@code example.com}.
+	 */
+	static int withoutTrailingDot(String value, int start, int end) {
+		return end > start && value.charAt(end - 1) == LABEL_SEPARATOR ? end - 1 : end;
+	}
+
+	/**
+	 * Compares two ranges ignoring the case of ASCII letters only, unlike {@link String#regionMatches(boolean, int,
+	 * String, int, int)}, which would also fold non-ASCII characters such as the Kelvin sign into ASCII letters.
+	 */
+	static boolean regionEqualsIgnoreAsciiCase(String value, int start, int end, String other, int otherStart,
+			int otherEnd) {
+		if (end - start != otherEnd - otherStart) {
+			return false;
+		}
+		for (int offset = 0; offset < end - start; ++offset) {
+			char c = value.charAt(start + offset);
+			char otherC = other.charAt(otherStart + offset);
+			if (c != otherC && toLowerAscii(c) != toLowerAscii(otherC)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Converts the ASCII letters of the range of the given value to lower case, for keys that are compared with
+	 * {@link #regionEqualsIgnoreAsciiCase}.
+	 */
+	static String toLowerAscii(String value, int start, int end) {
+		char[] lowerCase = new char[end - start];
+		for (int index = start; index < end; ++index) {
+			lowerCase[index - start] = toLowerAscii(value.charAt(index));
+		}
+		return new String(lowerCase);
+	}
+
+	static char toLowerAscii(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	private AsciiHosts() {
+		// prevent instantiation
+	}
+}
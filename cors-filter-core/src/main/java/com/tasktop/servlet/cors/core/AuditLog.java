@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+import static java.text.MessageFormat.format;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records rejected requests to a rolling, append-only file without blocking the threads that reject them. Records are
+ * published to a preallocated ring buffer of fixed capacity using atomic operations without locking, and are drained
+ * in batches by a background thread, which writes each batch with a single gathering write. When the buffer is full,
+ * records are dropped and counted instead of waiting for the background thread.
+ * <p>
+ * Each record is a line of tab-separated fields: the ISO-8601 timestamp, the method, the request URI, the Origin and
+ * Referer headers, the effective Host header and the {@link Verdict}. Absent values are written as {@code -}, and
+ * control characters and backslashes are escaped as {@code \xHH} so that header values cannot forge records. When
+ * writing a record would make the file larger than the maximum size, the file is renamed with a {@code .1} suffix,
+ * older files are shifted to the next suffix and the oldest file is deleted.
+ */
+class AuditLog implements AutoCloseable {
+
+	static final int BATCH_SIZE = 256;
+
+	private static final Logger LOGGER = Logger.getLogger(AuditLog.class.getName());
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private static final String ABSENT_FIELD = "-";
+
+	private static final char FIELD_SEPARATOR = '\t';
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final Path file;
+
+	private final long maxFileSize;
+
+	private final int maxFiles;
+
+	private final int mask;
+
+	// slot i holds the record at position p when its sequence is p + 1, and is free for position p when it is p
+	private final AtomicLongArray sequences;
+
+	private final long[] timestamps;
+
+	private final String[] methods;
+
+	private final String[] paths;
+
+	private final String[] origins;
+
+	private final String[] referers;
+
+	private final String[] hosts;
+
+	private final Verdict[] reasons;
+
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final AtomicLong writtenCount = new AtomicLong();
+
+	// the remaining fields are only used by the thread that drains the buffer
+
+	private long head;
+
+	private long fileSize;
+
+	private final ByteBuffer[] batch = new ByteBuffer[BATCH_SIZE];
+
+	private final StringBuilder line = new StringBuilder();
+
+	private Optional<FileChannel> channel = Optional.empty();
+
+	private Optional<Thread> thread = Optional.empty();
+
+	private volatile boolean closed;
+
+	AuditLog(Path file, int capacity, long maxFileSize, int maxFiles) {
+		checkArgument(capacity > 0);
+		checkArgument(maxFileSize > 0);
+		checkArgument(maxFiles > 0);
+		this.file = requireNonNull(file).toAbsolutePath();
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+		int slots = Integer.highestOneBit(capacity * 2 - 1);
+		this.mask = slots - 1;
+		this.sequences = new AtomicLongArray(slots);
+		for (int index = 0; index < slots; ++index) {
+			sequences.set(index, index);
+		}
+		this.timestamps = new long[slots];
+		this.methods = new String[slots];
+		this.paths = new String[slots];
+		this.origins = new String[slots];
+		this.referers = new String[slots];
+		this.hosts = new String[slots];
+		this.reasons = new Verdict[slots];
+	}
+
+	/**
+	 * Opens the file and starts writing records to it on a daemon thread.
+	 */
+	void start() {
+		try {
+			open();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Thread writer = new Thread(this::run, "cors-audit-log-" + file.getFileName());
+		writer.setDaemon(true);
+		writer.start();
+		thread = Optional.of(writer);
+	}
+
+	/**
+	 * Publishes a record of a rejected request, or drops it if the buffer is full. Never blocks and does not
+	 * allocate.
+	 */
+	void record(long timestamp, String method, String path, String origin, String referer, String host,
+			Verdict reason) {
+		long position = tail.get();
+		while (true) {
+			long difference = sequences.get((int) position & mask) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+			} else if (difference < 0) {
+				droppedCount.incrementAndGet();
+				return;
+			}
+			position = tail.get();
+		}
+		int index = (int) position & mask;
+		timestamps[index] = timestamp;
+		methods[index] = method;
+		paths[index] = path;
+		origins[index] = origin;
+		referers[index] = referer;
+		hosts[index] = host;
+		reasons[index] = reason;
+		sequences.lazySet(index, position + 1);
+	}
+
+	/**
+	 * Stops the background thread after it has written all published records, and closes the file.
+	 */
+	@Override
+	public void close() {
+		if (thread.isPresent()) {
+			closed = true;
+			LockSupport.unpark(thread.get());
+			try {
+				thread.get().join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			while (drainQuietly() > 0) {
+				// write the records published before closing
+			}
+			try {
+				if (channel.isPresent()) {
+					channel.get().close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			channel = Optional.empty();
+			thread = Optional.empty();
+		}
+	}
+
+	/**
+	 * Provides the number of records that were dropped because the buffer was full or they could not be written.
+	 */
+	long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Provides the number of records that were written to the file.
+	 */
+	long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	int getCapacity() {
+		return mask + 1;
+	}
+
+	private void run() {
+		while (!closed) {
+			if (drainQuietly() == 0) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			}
+		}
+	}
+
+	private int drainQuietly() {
+		try {
+			return drain();
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.WARNING, format("Cannot write audit log \"{0}\"", file), e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Writes up to {@value #BATCH_SIZE} published records and provides the number of records taken from the buffer.
+	 */
+	private int drain() throws IOException {
+		int drained = 0;
+		int count = 0;
+		long batchSize = 0;
+		try {
+			while (drained < BATCH_SIZE) {
+				int index = (int) head & mask;
+				if (sequences.get(index) != head + 1) {
+					break;
+				}
+				ByteBuffer buffer = encode(index);
+				release(index);
+				++drained;
+				boolean full = fileSize + batchSize + buffer.remaining() > maxFileSize && fileSize + batchSize > 0;
+				if (full) {
+					write(count);
+					count = 0;
+					batchSize = 0;
+				}
+				batch[count++] = buffer;
+				batchSize += buffer.remaining();
+				if (full) {
+					rotate();
+				}
+			}
+			write(count);
+			count = 0;
+		} finally {
+			if (count > 0) {
+				droppedCount.addAndGet(count);
+				clearBatch(count);
+			}
+		}
+		return drained;
+	}
+
+	private ByteBuffer encode(int index) {
+		line.setLength(0);
+		DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(timestamps[index]), line);
+		appendField(methods[index]);
+		appendField(paths[index]);
+		appendField(origins[index]);
+		appendField(referers[index]);
+		appendField(hosts[index]);
+		appendField(reasons[index].name());
+		line.append('\n');
+		return ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void appendField(String value) {
+		line.append(FIELD_SEPARATOR);
+		if (value == null) {
+			line.append(ABSENT_FIELD);
+			return;
+		}
+		for (int offset = 0; offset < value.length(); ++offset) {
+			char c = value.charAt(offset);
+			if (c < 0x20 || c == 0x7f || c == '\\') {
+				line.append("\\x").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+			} else {
+				line.append(c);
+			}
+		}
+	}
+
+	private void release(int index) {
+		methods[index] = null;
+		paths[index] = null;
+		origins[index] = null;
+		referers[index] = null;
+		hosts[index] = null;
+		reasons[index] = null;
+		sequences.lazySet(index, head + mask + 1);
+		++head;
+	}
+
+	private void write(int count) throws IOException {
+		if (count == 0) {
+			return;
+		}
+		if (!channel.isPresent()) {
+			// reopen after a failed rotation
+			open();
+		}
+		FileChannel fileChannel = channel.get();
+		ByteBuffer last = batch[count - 1];
+		long written = 0;
+		while (last.hasRemaining()) {
+			written += fileChannel.write(batch, 0, count);
+		}
+		fileSize += written;
+		writtenCount.addAndGet(count);
+		clearBatch(count);
+	}
+
+	private void clearBatch(int count) {
+		for (int index = 0; index < count; ++index) {
+			batch[index] = null;
+		}
+	}
+
+	private void rotate() throws IOException {
+		channel.get().close();
+		channel = Optional.empty();
+		Files.deleteIfExists(rotatedFile(maxFiles - 1));
+		for (int suffix = maxFiles - 1; suffix > 0; --suffix) {
+			Path source = rotatedFile(suffix - 1);
+			if (Files.exists(source)) {
+				Files.move(source, rotatedFile(suffix), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		open();
+	}
+
+	private void open() throws IOException {
+		FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		channel = Optional.of(fileChannel);
+		fileSize = fileChannel.size();
+	}
+
+	private Path rotatedFile(int suffix) {
+		return suffix == 0 ? file : file.resolveSibling(file.getFileName() + "." + suffix);
+	}
+}
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static java.text.MessageFormat.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class ConfigurationParameterParser {
+	private static final String PATH_DELIMITER_PATTERN = "[,\\s]+";
+
+	private static final String PATH_SEGMENT_DELIMITER = "/";
+
+	private static final int MINIMUM_SECRET_LENGTH = 32;
+
+	private static final List<String> HOST_POLICY_PARAMETERS = Arrays.asList(InitParameterNames.ALLOWED_ORIGINS,
+			InitParameterNames.EXCLUSION_PATHS);
+
+	private static final Pattern TOKEN_PATTERN = Pattern.compile("[!#$%&'*+.^_`|~0-9a-zA-Z-]+");
+
+	private static final Pattern METHOD_POLICY_PATTERN = Pattern
+			.compile("(\\*|[!#$%&'*+.^_`|~0-9a-zA-Z-]+)=([a-z-]+)");
+
+	private static final Pattern ADDRESS_RANGE_PATTERN = Pattern.compile("[0-9a-fA-F:.]+(/[0-9]{1,3})?");
+
+	private static final Pattern HOST_NAME_PATTERN = Pattern
+			.compile("(\\*\\.)?[a-zA-Z0-9_-]+(\\.[a-zA-Z0-9_-]+)*\\.?");
+
+	public static List<String> parseExclusionPaths(String paths) {
+		requireNonNull(paths);
+		List<String> values = Arrays.asList(paths.split(PATH_DELIMITER_PATTERN)).stream().map(String::trim)
+				.filter(s -> !s.isEmpty()).map(prependSlashIfNotPresent()).map(checkWildcardSegments())
+				.collect(toList());
+		if (values.isEmpty()) {
+			throw new IllegalArgumentException(
+					format("When specified, {0} must have at least one value", InitParameterNames.EXCLUSION_PATHS));
+		}
+		return values;
+	}
+
+	public static List<String> parseAllowedOrigins(String origins) {
+		requireNonNull(origins);
+		List<String> values = Arrays.asList(origins.split(PATH_DELIMITER_PATTERN)).stream().map(String::trim)
+				.filter(s -> !s.isEmpty()).map(checkHostName()).map(s -> s.toLowerCase(Locale.ROOT)).collect(toList());
+		if (values.isEmpty()) {
+			throw new IllegalArgumentException(
+					format("When specified, {0} must have at least one value", InitParameterNames.ALLOWED_ORIGINS));
+		}
+		return values;
+	}
+
+	public static List<String> parseTokens(String parameterName, String tokens) {
+		requireNonNull(tokens);
+		List<String> values = Arrays.asList(tokens.split(PATH_DELIMITER_PATTERN)).stream().map(String::trim)
+				.filter(s -> !s.isEmpty()).collect(toList());
+		for (String value : values) {
+			if (!TOKEN_PATTERN.matcher(value).matches()) {
+				throw new IllegalArgumentException(
+						format("{0} must only contain HTTP tokens: \"{1}\"", parameterName, value));
+			}
+		}
+		return values;
+	}
+
+	public static List<String> parseTrustedProxies(String proxies) {
+		requireNonNull(proxies);
+		List<String> values = Arrays.asList(proxies.split(PATH_DELIMITER_PATTERN)).stream().map(String::trim)
+				.filter(s -> !s.isEmpty()).collect(toList());
+		if (values.isEmpty()) {
+			throw new IllegalArgumentException(
+					format("When specified, {0} must have at least one value", InitParameterNames.TRUSTED_PROXIES));
+		}
+		for (String value : values) {
+			if (!ADDRESS_RANGE_PATTERN.matcher(value).matches()) {
+				throw new IllegalArgumentException(
+						format("{0} must only contain IP addresses, optionally followed by \"/\" and a prefix length: "
+								+ "\"{1}\"", InitParameterNames.TRUSTED_PROXIES, value));
+			}
+		}
+		return values;
+	}
+
+	public static Map<String, MethodPolicy> parseMethodPolicies(String policies) {
+		requireNonNull(policies);
+		Map<String, MethodPolicy> values = new LinkedHashMap<>();
+		for (String entry : policies.trim().replaceAll("\\s*=\\s*", "=").split(PATH_DELIMITER_PATTERN)) {
+			if (entry.isEmpty()) {
+				continue;
+			}
+			Matcher matcher = METHOD_POLICY_PATTERN.matcher(entry);
+			Optional<MethodPolicy> policy = matcher.matches() ? MethodPolicy.fromParameterValue(matcher.group(2))
+					: Optional.empty();
+			if (!policy.isPresent()) {
+				throw new IllegalArgumentException(format(
+						"{0} must be a list of METHOD=POLICY entries, where POLICY is one of {1}: \"{2}\"",
+						InitParameterNames.METHOD_POLICY, Arrays.stream(MethodPolicy.values())
+								.map(MethodPolicy::getParameterValue).collect(joining(", ")),
+						entry));
+			}
+			values.put(matcher.group(1).toUpperCase(Locale.ROOT), policy.get());
+		}
+		if (values.isEmpty()) {
+			throw new IllegalArgumentException(
+					format("When specified, {0} must have at least one value", InitParameterNames.METHOD_POLICY));
+		}
+		return values;
+	}
+
+	/**
+	 * Groups the entries of a host policy file, named {@code HOST.PARAMETER}, by host. Only the parameters that can
+	 * differ between hosts are accepted, and host names are converted to lower case.
+	 */
+	public static Map<String, Map<String, String>> parseHostPolicies(Map<String, String> entries) {
+		requireNonNull(entries);
+		Map<String, Map<String, String>> policies = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			String name = entry.getKey().trim();
+			int separator = name.lastIndexOf('.');
+			String host = separator < 0 ? "" : name.substring(0, separator);
+			String parameter = name.substring(separator + 1);
+			if (!HOST_POLICY_PARAMETERS.contains(parameter) || host.startsWith(DomainTrie.WILDCARD_PREFIX)
+					|| !HOST_NAME_PATTERN.matcher(host).matches()) {
+				throw new IllegalArgumentException(format(
+						"{0} must only contain entries named HOST.PARAMETER, where HOST is a host name without a port "
+								+ "and PARAMETER is one of {1}: \"{2}\"",
+						InitParameterNames.HOST_POLICY_FILE, String.join(", ", HOST_POLICY_PARAMETERS), name));
+			}
+			policies.computeIfAbsent(host.toLowerCase(Locale.ROOT), key -> new LinkedHashMap<>()).put(parameter,
+					entry.getValue());
+		}
+		return policies;
+	}
+
+	public static Mode parseMode(String value) {
+		requireNonNull(value);
+		return Mode.fromParameterValue(value.trim())
+				.orElseThrow(() -> new IllegalArgumentException(format("{0} must be one of {1}: \"{2}\"",
+						InitParameterNames.MODE,
+						Arrays.stream(Mode.values()).map(Mode::getParameterValue).collect(joining(", ")), value)));
+	}
+
+	public static double parseSampleRate(String parameterName, String value) {
+		requireNonNull(value);
+		try {
+			double rate = Double.parseDouble(value.trim());
+			if (rate > 0 && rate <= 1) {
+				return rate;
+			}
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		throw new IllegalArgumentException(
+				format("{0} must be a number greater than 0 and at most 1: \"{1}\"", parameterName, value));
+	}
+
+	public static String parseToken(String parameterName, String value) {
+		requireNonNull(value);
+		String trimmed = value.trim();
+		if (!TOKEN_PATTERN.matcher(trimmed).matches()) {
+			throw new IllegalArgumentException(format("{0} must be an HTTP token: \"{1}\"", parameterName, value));
+		}
+		return trimmed;
+	}
+
+	public static byte[] parseSecret(String parameterName, String value) {
+		requireNonNull(value);
+		byte[] secret;
+		try {
+			secret = Base64.getDecoder().decode(value.trim());
+		} catch (IllegalArgumentException e) {
+			secret = new byte[0];
+		}
+		if (secret.length < MINIMUM_SECRET_LENGTH) {
+			// don't disclose the secret
+			throw new IllegalArgumentException(format("{0} must be encoded in Base64 and have at least {1} bytes",
+					parameterName, MINIMUM_SECRET_LENGTH));
+		}
+		return secret;
+	}
+
+	public static boolean parseBoolean(String parameterName, String value) {
+		requireNonNull(value);
+		String trimmed = value.trim();
+		if (trimmed.equalsIgnoreCase("true")) {
+			return true;
+		}
+		if (trimmed.equalsIgnoreCase("false")) {
+			return false;
+		}
+		throw new IllegalArgumentException(format("{0} must be either true or false: \"{1}\"", parameterName, value));
+	}
+
+	public static int parsePositiveInteger(String parameterName, String value) {
+		requireNonNull(value);
+		try {
+			int number = Integer.parseInt(value.trim());
+			if (number > 0) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		throw new IllegalArgumentException(format("{0} must be a positive integer: \"{1}\"", parameterName, value));
+	}
+
+	private static Function<String, String> checkWildcardSegments() {
+		return path -> {
+			for (String segment : path.split(PATH_SEGMENT_DELIMITER)) {
+				if (segment.contains(PathPrefixAutomaton.SEGMENT_WILDCARD)
+						&& !segment.equals(PathPrefixAutomaton.SEGMENT_WILDCARD)
+						&& !segment.equals(PathPrefixAutomaton.MULTI_SEGMENT_WILDCARD)) {
+					throw new IllegalArgumentException(format(
+							"{0} must only use \"*\" or \"**\" as an entire path segment: \"{1}\"",
+							InitParameterNames.EXCLUSION_PATHS, path));
+				}
+			}
+			return path;
+		};
+	}
+
+	private static Function<String, String> checkHostName() {
+		return host -> {
+			if (!HOST_NAME_PATTERN.matcher(host).matches()) {
+				throw new IllegalArgumentException(format(
+						"{0} must only contain host names, optionally prefixed by \"{1}\": \"{2}\"",
+						InitParameterNames.ALLOWED_ORIGINS, DomainTrie.WILDCARD_PREFIX, host));
+			}
+			return host;
+		};
+	}
+
+	private static Function<String, String> prependSlashIfNotPresent() {
+		return path -> {
+			if (path.startsWith("/")) {
+				return path;
+			}
+			return "/" + path;
+		};
+	}
+
+	private ConfigurationParameterParser() {
+		// prevent instantiation
+	}
+}
@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import java.nio.file.Paths;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+
+//based on https://www.owasp.org/index.php/CORS_OriginHeaderScrutiny
+/**
+ * Scrutinizes the Origin and Referer headers of requests, independently of the server that received them. Instances
+ * are configured by the init parameters named in {@link InitParameterNames}, are thread-safe and are intended to be
+ * shared by all requests. When a {@code policy-file} is specified, it is watched for changes and the policy is
+ * reloaded without interrupting requests.
+ */
+public final class CorsHeaderScrutinizer implements AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger(CorsHeaderScrutinizer.class.getName());
+
+	private static final int DEFAULT_VERDICT_CACHE_SIZE = 1024;
+
+	private static final int DEFAULT_ADAPTIVE_BLOCKING_THRESHOLD = 50;
+
+	private static final int DEFAULT_ADAPTIVE_BLOCKING_WINDOW_SECONDS = 60;
+
+	private static final int DEFAULT_ADAPTIVE_BLOCKING_COOLDOWN_SECONDS = 300;
+
+	private static final int DEFAULT_ADAPTIVE_BLOCKING_SIZE = 1024;
+
+	private static final int DEFAULT_AUDIT_LOG_BUFFER_SIZE = 8192;
+
+	private static final int DEFAULT_AUDIT_LOG_MAX_FILE_SIZE = 10 * 1024 * 1024;
+
+	private static final int DEFAULT_AUDIT_LOG_MAX_FILES = 5;
+
+	private static final int REPORTED_ORIGINS_CAPACITY = 256;
+
+	private static final int IDN_CACHE_SIZE = 64;
+
+	private static final String DEFAULT_TOKEN_COOKIE_NAME = "XSRF-TOKEN";
+
+	private static final String DEFAULT_TOKEN_HEADER_NAME = "X-XSRF-TOKEN";
+
+	private static final int DEFAULT_TOKEN_MAX_AGE = 12 * 60 * 60;
+
+	private static final Optional<Verdict> EXCLUDED = Optional.of(Verdict.EXCLUDED);
+
+	private final Optional<HostVerdictCache> originVerdictCache;
+
+	private final Optional<IdnHostConverter> idnConverter;
+
+	private final Optional<RejectionTracker> rejectionTracker;
+
+	private final Optional<PolicyFileWatcher> policyFileWatcher;
+
+	private final Optional<AuditLog> auditLog;
+
+	private final Optional<DoubleSubmitTokens> tokens;
+
+	private final RejectionReport rejectionReport = new RejectionReport(REPORTED_ORIGINS_CAPACITY);
+
+	private final boolean rescrutinizingDispatches;
+
+	private volatile ScrutinyPipeline pipeline;
+
+	private final Optional<RecordingFilterMetrics> recordingMetrics;
+
+	private final FilterMetrics metrics;
+
+	public CorsHeaderScrutinizer(InitParameterSource parameters) {
+		originVerdictCache = readVerdictCacheParameters(parameters);
+		idnConverter = readIdnParameter(parameters);
+		rescrutinizingDispatches = Optional
+				.ofNullable(parameters.getInitParameter(InitParameterNames.RESCRUTINIZE_DISPATCHES))
+				.map(value -> ConfigurationParameterParser.parseBoolean(InitParameterNames.RESCRUTINIZE_DISPATCHES,
+						value))
+				.orElse(false);
+		rejectionTracker = readAdaptiveBlockingParameters(parameters);
+		auditLog = readAuditLogParameters(parameters);
+		tokens = readTokenParameters(parameters);
+		recordingMetrics = readMetricsParameter(parameters);
+		metrics = recordingMetrics.map(FilterMetrics.class::cast).orElse(FilterMetrics.DISABLED);
+		policyFileWatcher = readPolicyFileParameter(parameters);
+		setPolicy(policyFileWatcher.map(PolicyFileWatcher::load).orElseGet(() -> new Policy(parameters)));
+		policyFileWatcher.ifPresent(PolicyFileWatcher::start);
+		auditLog.ifPresent(AuditLog::start);
+	}
+
+	/**
+	 * Registers the metrics of this scrutinizer with the platform MBean server under a name derived from the given
+	 * type, name and context path. Does nothing when metrics are disabled by the {@code metrics-enabled} init
+	 * parameter.
+	 */
+	public void registerMetrics(String type, String name, Optional<String> contextPath) throws JMException {
+		if (recordingMetrics.isPresent()) {
+			recordingMetrics.get().register(type, name, contextPath);
+		}
+	}
+
+	/**
+	 * Provides the statistics of the cache of Origin verdicts, which is present only when enabled by the
+	 * {@code verdict-cache-enabled} init parameter.
+	 */
+	public Optional<VerdictCacheStatistics> getVerdictCacheStatistics() {
+		return originVerdictCache.map(VerdictCacheStatistics.class::cast);
+	}
+
+	/**
+	 * Indicates whether later dispatches of a request, such as forwards, includes and error pages, must be scrutinized
+	 * again as specified by the {@code rescrutinize-dispatches} init parameter, rather than reusing the verdict of the
+	 * first dispatch. Only applies to servers that dispatch a request through the same filter several times.
+	 */
+	public boolean isRescrutinizingDispatches() {
+		return rescrutinizingDispatches;
+	}
+
+	/**
+	 * Indicates whether token mode is enabled by the {@code token-secret} init parameter, in which case
+	 * {@link #issueTokenCookie} must be called for each allowed request.
+	 */
+	public boolean isIssuingTokens() {
+		return tokens.isPresent();
+	}
+
+	/**
+	 * Provides the summary of the requests that would have been rejected in report-only mode, as specified by the
+	 * {@code mode} init parameter.
+	 */
+	public ReportOnlySummary getReportOnlySummary() {
+		return rejectionReport;
+	}
+
+	/**
+	 * Describes the checks that are applied to requests under the current policy, in the order in which they are
+	 * applied, for debugging. Checks that cannot affect the verdict under the current configuration are omitted. The
+	 * description is also logged at level {@code FINE} whenever the policy is loaded.
+	 */
+	public String describePipeline() {
+		return pipeline.describe();
+	}
+
+	/**
+	 * Scrutinizes the given request. Requests for which the returned verdict is not {@link Verdict#isAllowed()
+	 * allowed} must be rejected without disclosing the verdict.
+	 */
+	public Verdict scrutinize(ScrutinizedRequest request) {
+		long startTime = metrics.startTime();
+		Verdict verdict = pipeline.scrutinize(request);
+		metrics.record(verdict, startTime);
+		return verdict;
+	}
+
+	/**
+	 * Scrutinizes a request by its path alone, so that a server can skip adapting the requests that are excluded from
+	 * scrutiny. Provides {@link Verdict#EXCLUDED} if the path is excluded for requests to any host, in which case the
+	 * request needs no further scrutiny. Otherwise provides nothing, and the request must be scrutinized by
+	 * {@link #scrutinizeIncludedPath}.
+	 */
+	public Optional<Verdict> scrutinizePath(String requestUri, String contextPath) {
+		long startTime = metrics.startTime();
+		if (!pipeline.isExcludedPath(requestUri, contextPath)) {
+			return Optional.empty();
+		}
+		metrics.record(Verdict.EXCLUDED, startTime);
+		return EXCLUDED;
+	}
+
+	/**
+	 * Scrutinizes a request for which {@link #scrutinizePath} provided no verdict, without checking its path again.
+	 */
+	public Verdict scrutinizeIncludedPath(ScrutinizedRequest request) {
+		long startTime = metrics.startTime();
+		Verdict verdict = pipeline.scrutinizeIncludedPath(request);
+		metrics.record(verdict, startTime);
+		return verdict;
+	}
+
+	/**
+	 * Writes the headers of the response to a request for which {@link #scrutinize} returned
+	 * {@link Verdict#PREFLIGHT} to the given header writer. The response should have no content and a status of
+	 * {@code 204 No Content}. Nothing is written if preflight responses have been disabled by reloading the policy
+	 * since the request was scrutinized.
+	 */
+	public void writePreflightHeaders(ScrutinizedRequest request, BiConsumer<String, String> headerWriter) {
+		Optional<PreflightResponse> preflightResponse = pipeline.getPolicy().getPreflightResponse();
+		if (preflightResponse.isPresent()) {
+			Iterator<String> origins = request.getHeaders(RequestHeaders.ORIGIN);
+			preflightResponse.get().writeHeaders(origins.hasNext() ? Optional.of(origins.next()) : Optional.empty(),
+					headerWriter);
+		}
+	}
+
+	/**
+	 * Provides the value of a {@code Set-Cookie} header with a new token, which must be added to the response to the
+	 * given request, when token mode is enabled by the {@code token-secret} init parameter and the request does not
+	 * already have a token cookie that remains valid for a while. Should be called for each request that is allowed,
+	 * except preflight requests.
+	 */
+	public Optional<String> issueTokenCookie(ScrutinizedRequest request) {
+		if (!tokens.isPresent()) {
+			return Optional.empty();
+		}
+		return tokens.get().issueCookie(request, System.currentTimeMillis());
+	}
+
+	/**
+	 * Stops watching the policy file, if any, writes and closes the audit log, if any, and unregisters the metrics of
+	 * this scrutinizer, if they were registered.
+	 */
+	@Override
+	public void close() {
+		policyFileWatcher.ifPresent(PolicyFileWatcher::close);
+		auditLog.ifPresent(AuditLog::close);
+		if (recordingMetrics.isPresent()) {
+			try {
+				recordingMetrics.get().unregister();
+			} catch (JMException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private void setPolicy(Policy policy) {
+		ScrutinyPipeline pipeline = new ScrutinyPipeline(policy, originVerdictCache, idnConverter, rejectionTracker,
+				auditLog, tokens, rejectionReport);
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.fine(MessageFormat.format("Compiled scrutiny pipeline:\n{0}", pipeline.describe()));
+		}
+		this.pipeline = pipeline;
+	}
+
+	private Optional<PolicyFileWatcher> readPolicyFileParameter(InitParameterSource parameters) {
+		return Optional.ofNullable(parameters.getInitParameter(InitParameterNames.POLICY_FILE)).map(Paths::get)
+				.map(file -> new PolicyFileWatcher(file, parameters, this::setPolicy));
+	}
+
+	private Optional<RecordingFilterMetrics> readMetricsParameter(InitParameterSource parameters) {
+		boolean enabled = Optional.ofNullable(parameters.getInitParameter(InitParameterNames.METRICS_ENABLED))
+				.map(value -> ConfigurationParameterParser.parseBoolean(InitParameterNames.METRICS_ENABLED, value))
+				.orElse(true);
+		if (!enabled) {
+			return Optional.empty();
+		}
+		return Optional.of(new RecordingFilterMetrics(getVerdictCacheStatistics(), auditLog));
+	}
+
+	private Optional<RejectionTracker> readAdaptiveBlockingParameters(InitParameterSource parameters) {
+		boolean enabled = Optional
+				.ofNullable(parameters.getInitParameter(InitParameterNames.ADAPTIVE_BLOCKING_ENABLED))
+				.map(value -> ConfigurationParameterParser.parseBoolean(InitParameterNames.ADAPTIVE_BLOCKING_ENABLED,
+						value))
+				.orElse(false);
+		if (!enabled) {
+			return Optional.empty();
+		}
+		int threshold = readPositiveInteger(parameters, InitParameterNames.ADAPTIVE_BLOCKING_THRESHOLD,
+				DEFAULT_ADAPTIVE_BLOCKING_THRESHOLD);
+		int windowSeconds = readPositiveInteger(parameters, InitParameterNames.ADAPTIVE_BLOCKING_WINDOW_SECONDS,
+				DEFAULT_ADAPTIVE_BLOCKING_WINDOW_SECONDS);
+		int cooldownSeconds = readPositiveInteger(parameters, InitParameterNames.ADAPTIVE_BLOCKING_COOLDOWN_SECONDS,
+				DEFAULT_ADAPTIVE_BLOCKING_COOLDOWN_SECONDS);
+		int size = readPositiveInteger(parameters, InitParameterNames.ADAPTIVE_BLOCKING_SIZE,
+				DEFAULT_ADAPTIVE_BLOCKING_SIZE);
+		return Optional.of(new RejectionTracker(threshold, TimeUnit.SECONDS.toNanos(windowSeconds),
+				TimeUnit.SECONDS.toNanos(cooldownSeconds), size));
+	}
+
+	private Optional<IdnHostConverter> readIdnParameter(InitParameterSource parameters) {
+		boolean enabled = Optional.ofNullable(parameters.getInitParameter(InitParameterNames.IDN_ENABLED))
+				.map(value -> ConfigurationParameterParser.parseBoolean(InitParameterNames.IDN_ENABLED, value))
+				.orElse(false);
+		return enabled ? Optional.of(new IdnHostConverter(IDN_CACHE_SIZE)) : Optional.empty();
+	}
+
+	private Optional<AuditLog> readAuditLogParameters(InitParameterSource parameters) {
+		String file = parameters.getInitParameter(InitParameterNames.AUDIT_LOG_FILE);
+		if (file == null) {
+			return Optional.empty();
+		}
+		int bufferSize = readPositiveInteger(parameters, InitParameterNames.AUDIT_LOG_BUFFER_SIZE,
+				DEFAULT_AUDIT_LOG_BUFFER_SIZE);
+		int maxFileSize = readPositiveInteger(parameters, InitParameterNames.AUDIT_LOG_MAX_FILE_SIZE,
+				DEFAULT_AUDIT_LOG_MAX_FILE_SIZE);
+		int maxFiles = readPositiveInteger(parameters, InitParameterNames.AUDIT_LOG_MAX_FILES,
+				DEFAULT_AUDIT_LOG_MAX_FILES);
+		return Optional.of(new AuditLog(Paths.get(file), bufferSize, maxFileSize, maxFiles));
+	}
+
+	private Optional<DoubleSubmitTokens> readTokenParameters(InitParameterSource parameters) {
+		String secret = parameters.getInitParameter(InitParameterNames.TOKEN_SECRET);
+		if (secret == null) {
+			return Optional.empty();
+		}
+		String cookieName = Optional.ofNullable(parameters.getInitParameter(InitParameterNames.TOKEN_COOKIE_NAME))
+				.map(value -> ConfigurationParameterParser.parseToken(InitParameterNames.TOKEN_COOKIE_NAME, value))
+				.orElse(DEFAULT_TOKEN_COOKIE_NAME);
+		String headerName = Optional.ofNullable(parameters.getInitParameter(InitParameterNames.TOKEN_HEADER_NAME))
+				.map(value -> ConfigurationParameterParser.parseToken(InitParameterNames.TOKEN_HEADER_NAME, value))
+				.orElse(DEFAULT_TOKEN_HEADER_NAME);
+		int maxAge = readPositiveInteger(parameters, InitParameterNames.TOKEN_MAX_AGE, DEFAULT_TOKEN_MAX_AGE);
+		boolean secure = Optional.ofNullable(parameters.getInitParameter(InitParameterNames.TOKEN_COOKIE_SECURE))
+				.map(value -> ConfigurationParameterParser.parseBoolean(InitParameterNames.TOKEN_COOKIE_SECURE, value))
+				.orElse(true);
+		if (!secure && DoubleSubmitTokens.requiresSecure(cookieName)) {
+			throw new IllegalArgumentException(MessageFormat.format(
+					"{0} must be true when {1} starts with __Host- or __Secure-: \"{2}\"",
+					InitParameterNames.TOKEN_COOKIE_SECURE, InitParameterNames.TOKEN_COOKIE_NAME, cookieName));
+		}
+		return Optional.of(new DoubleSubmitTokens(
+				ConfigurationParameterParser.parseSecret(InitParameterNames.TOKEN_SECRET, secret), cookieName,
+				headerName, maxAge, secure));
+	}
+
+	private int readPositiveInteger(InitParameterSource parameters, String name, int defaultValue) {
+		return Optional.ofNullable(parameters.getInitParameter(name))
+				.map(value -> ConfigurationParameterParser.parsePositiveInteger(name, value)).orElse(defaultValue);
+	}
+
+	private Optional<HostVerdictCache> readVerdictCacheParameters(InitParameterSource parameters) {
+		boolean enabled = Optional.ofNullable(parameters.getInitParameter(InitParameterNames.VERDICT_CACHE_ENABLED))
+				.map(value -> ConfigurationParameterParser.parseBoolean(InitParameterNames.VERDICT_CACHE_ENABLED,
+						value))
+				.orElse(false);
+		if (!enabled) {
+			return Optional.empty();
+		}
+		int size = Optional.ofNullable(parameters.getInitParameter(InitParameterNames.VERDICT_CACHE_SIZE))
+				.map(value -> ConfigurationParameterParser.parsePositiveInteger(InitParameterNames.VERDICT_CACHE_SIZE,
+						value))
+				.orElse(DEFAULT_VERDICT_CACHE_SIZE);
+		return Optional.of(new HostVerdictCache(size));
+	}
+}
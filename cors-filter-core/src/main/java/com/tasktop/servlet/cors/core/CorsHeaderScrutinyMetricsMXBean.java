@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+/**
+ * The management interface of the metrics registered by {@link CorsHeaderScrutinizer#registerMetrics} unless disabled
+ * by the {@code metrics-enabled} init parameter. Latencies measure the time spent scrutinizing requests, excluding
+ * the handling of the request after it has been allowed.
+ */
+public interface CorsHeaderScrutinyMetricsMXBean {
+
+	long getRequestsChecked();
+
+	long getRequestsExcluded();
+
+	long getRequestsAllowed();
+
+	long getRequestsPreflightAnswered();
+
+	long getRequestsRejected();
+
+	/**
+	 * Provides the number of requests that were not scrutinized in report-only mode because they were not sampled.
+	 * These requests are not counted as checked.
+	 */
+	long getRequestsNotSampled();
+
+	/**
+	 * Provides the number of requests that failed scrutiny in report-only mode, and were allowed instead of being
+	 * rejected.
+	 */
+	long getRequestsReported();
+
+	long getRequestsRejectedDuplicateHeader();
+
+	long getRequestsRejectedEmptyHeader();
+
+	long getRequestsRejectedHostMismatch();
+
+	long getRequestsRejectedMissingHost();
+
+	long getRequestsRejectedCrossSite();
+
+	long getRequestsRejectedMissingToken();
+
+	long getRequestsRejectedInvalidToken();
+
+	long getRequestsRejectedBlockedOrigin();
+
+	double getLatencyMeanNanos();
+
+	long getLatency50thPercentileNanos();
+
+	long getLatency99thPercentileNanos();
+
+	long getLatency999thPercentileNanos();
+
+	/**
+	 * Provides the largest latency of each bucket of the latency histogram.
+	 */
+	long[] getLatencyBucketUpperBoundsNanos();
+
+	/**
+	 * Provides the number of requests in each bucket of the latency histogram.
+	 */
+	long[] getLatencyBucketCounts();
+
+	long getVerdictCacheHitCount();
+
+	long getVerdictCacheMissCount();
+
+	long getVerdictCacheEvictionCount();
+
+	long getAuditRecordsWritten();
+
+	/**
+	 * Provides the number of rejected requests that were not written to the audit log because its buffer was full or
+	 * the file could not be written.
+	 */
+	long getAuditRecordsDropped();
+}
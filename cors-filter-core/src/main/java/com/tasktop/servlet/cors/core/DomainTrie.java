@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+
+/**
+ * A set of host names, some of which may be wildcards of the form {@code *.example.com} that contain every subdomain
+ * of {@code example.com} but not {@code example.com} itself. Host names are stored in a trie keyed by their labels in
+ * reverse order (i.e. {@code com}, then {@code example}), so that the cost of a lookup depends on the number of labels
+ * of the host being looked up rather than on the number of host names in the set. Lookups are case-insensitive, work
+ * on index ranges of the original {@link String} and do not allocate.
+ */
+class DomainTrie {
+
+	static final String WILDCARD_PREFIX = "*.";
+
+	private static final char LABEL_SEPARATOR = '.';
+
+	private final Node root = new Node();
+
+	private int size;
+
+	DomainTrie(List<String> domains) {
+		requireNonNull(domains);
+		checkArgument(!domains.isEmpty());
+		for (String domain : domains) {
+			add(domain);
+		}
+	}
+
+	/**
+	 * Indicates whether the host name between the given indexes of the given value is in this set. A single trailing
+	 * dot, as in a fully qualified domain name, is ignored.
+	 */
+	boolean contains(String value, int start, int end) {
+		Node node = root;
+		int labelEnd = AsciiHosts.withoutTrailingDot(value, start, end);
+		while (true) {
+			int labelStart = lastIndexOf(value, LABEL_SEPARATOR, start, labelEnd) + 1;
+			node = node.child(value, labelStart, labelEnd);
+			if (node == null) {
+				return false;
+			}
+			if (labelStart == start) {
+				return node.exact;
+			}
+			if (node.wildcard && labelStart - 1 > start) {
+				return true;
+			}
+			labelEnd = labelStart - 1;
+		}
+	}
+
+	/**
+	 * Provides the number of host names in this set.
+	 */
+	int size() {
+		return size;
+	}
+
+	private void add(String domain) {
+		boolean wildcard = domain.startsWith(WILDCARD_PREFIX);
+		int start = wildcard ? WILDCARD_PREFIX.length() : 0;
+		int end = AsciiHosts.withoutTrailingDot(domain, start, domain.length());
+		checkArgument(end > start);
+		Node node = root;
+		int labelEnd = end;
+		while (labelEnd >= start) {
+			int labelStart = lastIndexOf(domain, LABEL_SEPARATOR, start, labelEnd) + 1;
+			checkArgument(labelStart < labelEnd);
+			node = node.addChild(domain, labelStart, labelEnd);
+			labelEnd = labelStart - 1;
+		}
+		if (wildcard ? !node.wildcard : !node.exact) {
+			++size;
+		}
+		if (wildcard) {
+			node.wildcard = true;
+		} else {
+			node.exact = true;
+		}
+	}
+
+	private static int lastIndexOf(String value, char c, int start, int end) {
+		for (int index = end - 1; index >= start; --index) {
+			if (value.charAt(index) == c) {
+				return index;
+			}
+		}
+		return start - 1;
+	}
+
+	/**
+	 * A node of the trie, whose children are kept in an open-addressing hash table keyed by their label in lower case.
+	 */
+	private static class Node {
+
+		private static final int INITIAL_CAPACITY = 2;
+
+		/**
+		 * Whether the domain ending at this node is in the set.
+		 */
+		private boolean exact;
+
+		/**
+		 * Whether the subdomains of the domain ending at this node are in the set.
+		 */
+		private boolean wildcard;
+
+		private String[] labels = new String[INITIAL_CAPACITY];
+
+		private Node[] children = new Node[INITIAL_CAPACITY];
+
+		private int childCount;
+
+		Node child(String value, int start, int end) {
+			int mask = labels.length - 1;
+			for (int index = AsciiHosts.hash(value, start, end) & mask;; index = (index + 1) & mask) {
+				String label = labels[index];
+				if (label == null) {
+					return null;
+				}
+				if (AsciiHosts.regionEqualsIgnoreAsciiCase(value, start, end, label, 0, label.length())) {
+					return children[index];
+				}
+			}
+		}
+
+		Node addChild(String value, int start, int end) {
+			Node child = child(value, start, end);
+			if (child == null) {
+				if ((childCount + 1) * 2 > labels.length) {
+					resize();
+				}
+				child = new Node();
+				insert(AsciiHosts.toLowerAscii(value, start, end), child);
+				++childCount;
+			}
+			return child;
+		}
+
+		private void resize() {
+			String[] oldLabels = labels;
+			Node[] oldChildren = children;
+			labels = new String[oldLabels.length * 2];
+			children = new Node[oldChildren.length * 2];
+			for (int index = 0; index < oldLabels.length; ++index) {
+				if (oldLabels[index] != null) {
+					insert(oldLabels[index], oldChildren[index]);
+				}
+			}
+		}
+
+		private void insert(String label, Node child) {
+			int mask = labels.length - 1;
+			int index = AsciiHosts.hash(label, 0, label.length()) & mask;
+			while (labels[index] != null) {
+				index = (index + 1) & mask;
+			}
+			labels[index] = label;
+			children[index] = child;
+		}
+	}
+}
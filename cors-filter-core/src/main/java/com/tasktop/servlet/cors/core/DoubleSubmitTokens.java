@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies the stateless tokens of the token mode enabled by the {@code token-secret} init parameter. A
+ * token is issued in a cookie, and must be submitted again in a header of requests that have neither an Origin nor a
+ * Referer header, which a cross-site request cannot do since it cannot read the cookie. Tokens consist of a random
+ * nonce and an expiry time, signed with HMAC-SHA256 so that they cannot be forged, and are verified without any
+ * server-side state.
+ * <p>
+ * Verification reuses a {@link Mac} and buffers per thread, into which the HMAC is computed and the submitted one is
+ * decoded before they are compared in constant time, so that verifying a token allocates no buffers of its own. The
+ * thread-locals only hold JDK classes, so that the threads of the server do not retain the classes of the application
+ * after it is undeployed.
+ */
+class DoubleSubmitTokens {
+
+	static final String COOKIE_HEADER = "Cookie";
+
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+
+	private static final int MAC_LENGTH = 32;
+
+	private static final int NONCE_LENGTH = 16;
+
+	private static final int NONCE_END = NONCE_LENGTH * 2;
+
+	private static final int EXPIRY_END = NONCE_END + 16;
+
+	static final int TOKEN_LENGTH = EXPIRY_END + MAC_LENGTH * 2;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final String[] SECURE_COOKIE_PREFIXES = { "__Host-", "__Secure-" };
+
+	private final SecretKeySpec key;
+
+	private final String cookieName;
+
+	private final String headerName;
+
+	private final long maxAgeSeconds;
+
+	private final String cookieAttributes;
+
+	private final SecureRandom random = new SecureRandom();
+
+	private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+	private final ThreadLocal<byte[]> messageBuffers = ThreadLocal.withInitial(() -> new byte[EXPIRY_END]);
+
+	private final ThreadLocal<byte[]> macBuffers = ThreadLocal.withInitial(() -> new byte[MAC_LENGTH]);
+
+	private final ThreadLocal<byte[]> submittedMacBuffers = ThreadLocal.withInitial(() -> new byte[MAC_LENGTH]);
+
+	/**
+	 * Creates tokens issued in a cookie with the given name, which is marked {@code Secure} unless {@code secure} is
+	 * {@code false}, which is only allowed for names that do not require it.
+	 */
+	DoubleSubmitTokens(byte[] secret, String cookieName, String headerName, long maxAgeSeconds, boolean secure) {
+		checkArgument(secret.length > 0 && maxAgeSeconds > 0 && (secure || !requiresSecure(cookieName)));
+		this.cookieName = requireNonNull(cookieName);
+		this.headerName = requireNonNull(headerName);
+		this.maxAgeSeconds = maxAgeSeconds;
+		this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+		// fails early if the algorithm is not available
+		newMac();
+		cookieAttributes = "; Max-Age=" + maxAgeSeconds + "; Path=/; SameSite=Strict" + (secure ? "; Secure" : "");
+	}
+
+	/**
+	 * Determines whether browsers only accept a cookie with the given name when it is marked {@code Secure}.
+	 */
+	static boolean requiresSecure(String cookieName) {
+		for (String prefix : SECURE_COOKIE_PREFIXES) {
+			if (cookieName.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	String getCookieName() {
+		return cookieName;
+	}
+
+	String getHeaderName() {
+		return headerName;
+	}
+
+	/**
+	 * Verifies that the token header of the given request is a valid token that has not expired at the given time,
+	 * and that it is equal to one of the token cookies of the request.
+	 */
+	Verdict verify(ScrutinizedRequest request, long nowMillis) {
+		Iterator<String> headerValues = request.getHeaders(headerName);
+		if (!headerValues.hasNext()) {
+			return Verdict.MISSING_TOKEN;
+		}
+		String token = headerValues.next();
+		if (headerValues.hasNext()) {
+			return Verdict.DUPLICATE_HEADER;
+		}
+		boolean cookiePresent = false;
+		boolean cookieMatches = false;
+		for (Iterator<String> cookies = request.getHeaders(COOKIE_HEADER); cookies.hasNext();) {
+			String cookie = cookies.next();
+			for (int start = findCookieValue(cookie, 0); start >= 0; start = findCookieValue(cookie,
+					cookieValueEnd(cookie, start))) {
+				cookiePresent = true;
+				cookieMatches |= regionEquals(cookie, start, cookieValueEnd(cookie, start), token);
+			}
+		}
+		if (!cookiePresent) {
+			return Verdict.MISSING_TOKEN;
+		}
+		long nowSeconds = toSeconds(nowMillis);
+		if (!cookieMatches || !isValid(token, 0, token.length(), nowSeconds, nowSeconds)) {
+			return Verdict.INVALID_TOKEN;
+		}
+		return Verdict.ALLOWED;
+	}
+
+	/**
+	 * Provides the value of a {@code Set-Cookie} header with a new token, unless the given request has a token cookie
+	 * that remains valid for at least half of the maximum age of tokens, so that clients always have a token that does
+	 * not expire soon.
+	 */
+	Optional<String> issueCookie(ScrutinizedRequest request, long nowMillis) {
+		long nowSeconds = toSeconds(nowMillis);
+		long renewalTime = nowSeconds + maxAgeSeconds / 2;
+		for (Iterator<String> cookies = request.getHeaders(COOKIE_HEADER); cookies.hasNext();) {
+			String cookie = cookies.next();
+			for (int start = findCookieValue(cookie, 0); start >= 0; start = findCookieValue(cookie,
+					cookieValueEnd(cookie, start))) {
+				if (isValid(cookie, start, cookieValueEnd(cookie, start), nowSeconds, renewalTime)) {
+					return Optional.empty();
+				}
+			}
+		}
+		return Optional.of(cookieName + "=" + issue(nowMillis) + cookieAttributes);
+	}
+
+	/**
+	 * Issues a new token that expires after the maximum age of tokens from the given time.
+	 */
+	String issue(long nowMillis) {
+		byte[] nonce = new byte[NONCE_LENGTH];
+		random.nextBytes(nonce);
+		char[] token = new char[TOKEN_LENGTH];
+		for (int index = 0; index < NONCE_LENGTH; ++index) {
+			writeHex(nonce[index], token, index * 2);
+		}
+		long expiry = toSeconds(nowMillis) + maxAgeSeconds;
+		for (int index = EXPIRY_END - 1; index >= NONCE_END; --index, expiry >>>= 4) {
+			token[index] = HEX_DIGITS[(int) (expiry & 0xf)];
+		}
+		byte[] message = messageBuffers.get();
+		for (int index = 0; index < EXPIRY_END; ++index) {
+			message[index] = (byte) token[index];
+		}
+		byte[] mac = macBuffers.get();
+		computeMac(message, mac);
+		for (int index = 0; index < MAC_LENGTH; ++index) {
+			writeHex(mac[index], token, EXPIRY_END + index * 2);
+		}
+		return new String(token);
+	}
+
+	/**
+	 * Indicates whether the given range of the given value is a correctly signed token whose expiry time is after the
+	 * given minimum, and within the maximum age of tokens from the given time so that tokens issued with a longer
+	 * maximum age are not accepted.
+	 */
+	private boolean isValid(String value, int start, int end, long nowSeconds, long minimumExpirySeconds) {
+		if (end - start != TOKEN_LENGTH) {
+			return false;
+		}
+		long expiry = 0;
+		for (int index = start; index < end; ++index) {
+			int digit = hexDigit(value.charAt(index));
+			if (digit < 0) {
+				return false;
+			}
+			if (index >= start + NONCE_END && index < start + EXPIRY_END) {
+				expiry = expiry << 4 | digit;
+			}
+		}
+		if (expiry <= minimumExpirySeconds || expiry - nowSeconds > maxAgeSeconds) {
+			return false;
+		}
+		byte[] message = messageBuffers.get();
+		for (int index = 0; index < EXPIRY_END; ++index) {
+			message[index] = (byte) value.charAt(start + index);
+		}
+		byte[] submittedMac = submittedMacBuffers.get();
+		for (int index = 0; index < MAC_LENGTH; ++index) {
+			int offset = start + EXPIRY_END + index * 2;
+			submittedMac[index] = (byte) (hexDigit(value.charAt(offset)) << 4 | hexDigit(value.charAt(offset + 1)));
+		}
+		byte[] mac = macBuffers.get();
+		computeMac(message, mac);
+		return MessageDigest.isEqual(mac, submittedMac);
+	}
+
+	/**
+	 * Computes the HMAC of the given nonce and expiry time of a token into the given buffer, without allocating.
+	 */
+	private void computeMac(byte[] message, byte[] mac) {
+		Mac hmac = macs.get();
+		hmac.update(message);
+		try {
+			hmac.doFinal(mac, 0);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Provides the start of the value of the next token cookie in the given Cookie header at or after the given
+	 * index, or -1 if there is none.
+	 */
+	private int findCookieValue(String cookie, int fromIndex) {
+		int index = fromIndex;
+		while (index < cookie.length()) {
+			while (index < cookie.length() && (cookie.charAt(index) == ' ' || cookie.charAt(index) == ';')) {
+				++index;
+			}
+			int nameEnd = index + cookieName.length();
+			if (nameEnd < cookie.length() && cookie.charAt(nameEnd) == '='
+					&& cookie.regionMatches(index, cookieName, 0, cookieName.length())) {
+				return nameEnd + 1;
+			}
+			int separator = cookie.indexOf(';', index);
+			if (separator < 0) {
+				break;
+			}
+			index = separator + 1;
+		}
+		return -1;
+	}
+
+	private static int cookieValueEnd(String cookie, int start) {
+		int separator = cookie.indexOf(';', start);
+		int end = separator < 0 ? cookie.length() : separator;
+		while (end > start && cookie.charAt(end - 1) == ' ') {
+			--end;
+		}
+		return end;
+	}
+
+	/**
+	 * Compares the given range of the given value with the given token in time that only depends on their lengths.
+	 */
+	private static boolean regionEquals(String value, int start, int end, String token) {
+		if (end - start != token.length()) {
+			return false;
+		}
+		int difference = 0;
+		for (int index = 0; index < token.length(); ++index) {
+			difference |= value.charAt(start + index) ^ token.charAt(index);
+		}
+		return difference == 0;
+	}
+
+	private static int hexDigit(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		return c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+	}
+
+	private static void writeHex(byte value, char[] target, int offset) {
+		target[offset] = HEX_DIGITS[(value >>> 4) & 0xf];
+		target[offset + 1] = HEX_DIGITS[value & 0xf];
+	}
+
+	private static long toSeconds(long millis) {
+		return TimeUnit.MILLISECONDS.toSeconds(millis);
+	}
+
+	private Mac newMac() {
+		try {
+			Mac mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(key);
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
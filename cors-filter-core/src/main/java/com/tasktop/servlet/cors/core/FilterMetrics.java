@@ -13,27 +13,34 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  *******************************************************************************/
-package com.tasktop.servlet.cors;
+package com.tasktop.servlet.cors.core;
 
-import static org.assertj.core.api.Assertions.assertThat;
+/**
+ * Records the verdict of each request scrutinized by {@link CorsHeaderScrutinizer}. Implementations must not
+ * allocate.
+ */
+interface FilterMetrics {
 
-import org.junit.Test;
+	/**
+	 * Metrics that record nothing, used when metrics are disabled.
+	 */
+	FilterMetrics DISABLED = new FilterMetrics() {
 
-public class UriDecoderTest {
+		@Override
+		public long startTime() {
+			return 0;
+		}
 
-	@Test
-	public void decode() {
-		assertThat(UriDecoder.decode("a path")).isEqualTo("a path");
-	}
+		@Override
+		public void record(Verdict verdict, long startTime) {
+			// nothing to do
+		}
+	};
 
-	@Test
-	public void decodeEmpty() {
-		assertThat(UriDecoder.decode("")).isEqualTo("");
-	}
+	/**
+	 * Provides the time at which scrutiny of a request started, to be passed to {@link #record(Verdict, long)}.
+	 */
+	long startTime();
 
-	@Test
-	public void decodePathWithEncodedSpaces() {
-		assertThat(UriDecoder.decode("one%20two")).isEqualTo("one two");
-		assertThat(UriDecoder.decode("one+two")).isEqualTo("one two");
-	}
+	void record(Verdict verdict, long startTime);
 }
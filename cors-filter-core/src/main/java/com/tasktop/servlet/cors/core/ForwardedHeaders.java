@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Finds the host requested by the client in the headers added by proxies: the standard Forwarded header
+ * (<a href="https://tools.ietf.org/html/rfc7239">RFC 7239</a>) and the X-Forwarded-Host header, both of which may
+ * list one value per proxy. Proxies append their values, so the leftmost values are controlled by the client and
+ * values are only used when they were added by a trusted proxy.
+ */
+class ForwardedHeaders {
+
+	private static final String PARAMETER_FOR = "for";
+
+	private static final String PARAMETER_HOST = "host";
+
+	/**
+	 * Provides the {@code host} parameter of the element of the given Forwarded header values that was added by the
+	 * outermost trusted proxy, which is the last element whose {@code for} parameter is not a trusted proxy, or the
+	 * first element if all of them are. Elements are added by proxies from left to right, so the {@code host} of
+	 * that element is the Host header sent by the client. Returns {@code null} if there is no element, or if that
+	 * element has no {@code host} parameter.
+	 */
+	static String forwardedHost(Iterator<String> values, AddressTrie trustedProxies) {
+		String host = null;
+		boolean first = true;
+		while (values.hasNext()) {
+			String value = values.next();
+			for (int elementStart = 0; elementStart <= value.length();) {
+				int elementEnd = indexOfUnquoted(value, ',', elementStart, value.length());
+				if (!isBlank(value, elementStart, elementEnd)) {
+					if (first || !isTrustedProxy(value, elementStart, elementEnd, trustedProxies)) {
+						host = parameter(value, elementStart, elementEnd, PARAMETER_HOST);
+					}
+					first = false;
+				}
+				elementStart = elementEnd + 1;
+			}
+		}
+		return host;
+	}
+
+	/**
+	 * Provides the host of the given X-Forwarded-Host header values that was added by the outermost trusted proxy.
+	 * Each proxy appends the Host header it received to X-Forwarded-Host and the address it received it from to
+	 * X-Forwarded-For, so that both headers are followed from the last value back: one host is skipped for each
+	 * trailing X-Forwarded-For address that is a trusted proxy, or all but the first host if all of them are. Returns
+	 * {@code null} if there is no host.
+	 */
+	static String xForwardedHost(Iterator<String> hostValues, Iterator<String> forValues,
+			AddressTrie trustedProxies) {
+		if (!hostValues.hasNext()) {
+			return null;
+		}
+		int trustedHops = 0;
+		while (forValues.hasNext()) {
+			String value = forValues.next();
+			for (int elementStart = 0; elementStart <= value.length();) {
+				int elementEnd = indexOfUnquoted(value, ',', elementStart, value.length());
+				int addressStart = trimStart(value, elementStart, elementEnd);
+				if (addressStart < elementEnd) {
+					boolean trusted = isTrustedAddress(value, addressStart, trimEnd(value, addressStart, elementEnd),
+							trustedProxies);
+					trustedHops = trusted ? trustedHops + 1 : 0;
+				}
+				elementStart = elementEnd + 1;
+			}
+		}
+		String value = hostValues.next();
+		List<String> values;
+		if (hostValues.hasNext()) {
+			values = new ArrayList<>();
+			values.add(value);
+			hostValues.forEachRemaining(values::add);
+		} else {
+			values = Collections.singletonList(value);
+		}
+		return hostFromEnd(values, trustedHops);
+	}
+
+	/**
+	 * Provides the host that follows the given number of hosts, counted from the end of the given comma separated
+	 * values, or the first host if there are not that many.
+	 */
+	private static String hostFromEnd(List<String> values, int skipped) {
+		String host = null;
+		for (int index = values.size() - 1; index >= 0; --index) {
+			String value = values.get(index);
+			for (int elementEnd = value.length(); elementEnd >= 0;) {
+				int separator = value.lastIndexOf(',', elementEnd - 1);
+				int hostStart = trimStart(value, separator + 1, elementEnd);
+				if (hostStart < elementEnd) {
+					host = value.substring(hostStart, trimEnd(value, hostStart, elementEnd));
+					if (skipped-- == 0) {
+						return host;
+					}
+				}
+				elementEnd = separator;
+			}
+		}
+		return host;
+	}
+
+	private static boolean isTrustedProxy(String value, int start, int end, AddressTrie trustedProxies) {
+		int valueStart = parameterStart(value, start, end, PARAMETER_FOR);
+		if (valueStart < 0) {
+			return false;
+		}
+		int valueEnd = trimEnd(value, valueStart, indexOfUnquoted(value, ';', valueStart, end));
+		return isTrustedAddress(value, valueStart, valueEnd, trustedProxies);
+	}
+
+	/**
+	 * Determines whether the address between the given indexes, which may be quoted, bracketed and followed by a
+	 * port, is a trusted proxy.
+	 */
+	private static boolean isTrustedAddress(String value, int valueStart, int valueEnd, AddressTrie trustedProxies) {
+		if (valueEnd - valueStart >= 2 && value.charAt(valueStart) == '"' && value.charAt(valueEnd - 1) == '"') {
+			++valueStart;
+			--valueEnd;
+		}
+		if (valueStart < valueEnd && value.charAt(valueStart) == '[') {
+			// a bracketed IPv6 address, optionally followed by a port
+			int bracket = value.indexOf(']', valueStart);
+			if (bracket < 0 || bracket >= valueEnd) {
+				return false;
+			}
+			return trustedProxies.contains(value, valueStart + 1, bracket);
+		}
+		int colon = value.indexOf(':', valueStart);
+		int secondColon = colon < 0 ? -1 : value.indexOf(':', colon + 1);
+		if (colon >= 0 && colon < valueEnd && (secondColon < 0 || secondColon >= valueEnd)) {
+			// an IPv4 address followed by a port
+			valueEnd = colon;
+		}
+		return trustedProxies.contains(value, valueStart, valueEnd);
+	}
+
+	/**
+	 * Provides the unquoted value of the parameter with the given name in the element between the given indexes, or
+	 * {@code null} if there is no such parameter.
+	 */
+	private static String parameter(String value, int start, int end, String name) {
+		int valueStart = parameterStart(value, start, end, name);
+		if (valueStart < 0) {
+			return null;
+		}
+		int valueEnd = trimEnd(value, valueStart, indexOfUnquoted(value, ';', valueStart, end));
+		if (valueEnd - valueStart >= 2 && value.charAt(valueStart) == '"' && value.charAt(valueEnd - 1) == '"') {
+			return value.substring(valueStart + 1, valueEnd - 1);
+		}
+		return value.substring(valueStart, valueEnd);
+	}
+
+	/**
+	 * Provides the index of the value of the parameter with the given name in the element between the given indexes,
+	 * or -1 if there is no such parameter. Parameter names are case-insensitive.
+	 */
+	private static int parameterStart(String value, int start, int end, String name) {
+		for (int pairStart = start; pairStart < end;) {
+			int pairEnd = indexOfUnquoted(value, ';', pairStart, end);
+			int nameStart = trimStart(value, pairStart, pairEnd);
+			int equals = value.indexOf('=', nameStart);
+			if (equals >= 0 && equals < pairEnd && trimEnd(value, nameStart, equals) - nameStart == name.length()
+					&& value.regionMatches(true, nameStart, name, 0, name.length())) {
+				return trimStart(value, equals + 1, pairEnd);
+			}
+			pairStart = pairEnd + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Provides the index of the first occurrence of the given character between the given indexes that is not in a
+	 * quoted string, or the end index if there is none.
+	 */
+	private static int indexOfUnquoted(String value, char c, int start, int end) {
+		boolean quoted = false;
+		for (int index = start; index < end; ++index) {
+			char current = value.charAt(index);
+			if (current == '"') {
+				quoted = !quoted;
+			} else if (current == '\\' && quoted) {
+				++index;
+			} else if (current == c && !quoted) {
+				return index;
+			}
+		}
+		return end;
+	}
+
+	private static boolean isBlank(String value, int start, int end) {
+		return trimStart(value, start, end) == end;
+	}
+
+	private static int trimStart(String value, int start, int end) {
+		while (start < end && Character.isWhitespace(value.charAt(start))) {
+			++start;
+		}
+		return start;
+	}
+
+	private static int trimEnd(String value, int start, int end) {
+		while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+			--end;
+		}
+		return end;
+	}
+
+	private ForwardedHeaders() {
+		// prevent instantiation
+	}
+}
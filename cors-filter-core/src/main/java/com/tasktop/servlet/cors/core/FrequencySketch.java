@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+
+/**
+ * An approximate, fixed-size frequency counter (a count-min sketch with 4-bit counters) used to decide whether a new
+ * cache entry is worth admitting in place of an existing one. Counters are halved periodically so that the history
+ * of past popularity fades. Updates are not synchronized; occasional lost increments only make the estimates slightly
+ * less accurate.
+ */
+class FrequencySketch {
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final int MAX_COUNT = 15;
+
+	private final long[] table;
+
+	private final int counterMask;
+
+	private final int sampleSize;
+
+	private int additions;
+
+	FrequencySketch(int capacity) {
+		checkArgument(capacity > 0);
+		int length = Integer.highestOneBit(Math.max(capacity, 4) - 1) << 1;
+		this.table = new long[length];
+		this.counterMask = (length << 4) - 1;
+		this.sampleSize = 10 * capacity;
+	}
+
+	/**
+	 * Returns the estimated number of occurrences of the given hash, up to 15.
+	 */
+	int frequency(int hash) {
+		int frequency = MAX_COUNT;
+		for (int depth = 0; depth < SEEDS.length; ++depth) {
+			frequency = Math.min(frequency, count(counterIndex(hash, depth)));
+		}
+		return frequency;
+	}
+
+	void increment(int hash) {
+		boolean incremented = false;
+		for (int depth = 0; depth < SEEDS.length; ++depth) {
+			incremented |= incrementCount(counterIndex(hash, depth));
+		}
+		if (incremented && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	private int counterIndex(int hash, int depth) {
+		long h = (hash + SEEDS[depth]) * SEEDS[depth];
+		h += h >>> 32;
+		return (int) h & counterMask;
+	}
+
+	private int count(int counterIndex) {
+		return (int) (table[counterIndex >>> 4] >>> shift(counterIndex)) & MAX_COUNT;
+	}
+
+	private boolean incrementCount(int counterIndex) {
+		int index = counterIndex >>> 4;
+		int shift = shift(counterIndex);
+		long value = table[index];
+		if (((value >>> shift) & MAX_COUNT) == MAX_COUNT) {
+			return false;
+		}
+		table[index] = value + (1L << shift);
+		return true;
+	}
+
+	private int shift(int counterIndex) {
+		return (counterIndex & 15) << 2;
+	}
+
+	private void reset() {
+		additions = 0;
+		for (int index = 0; index < table.length; ++index) {
+			table[index] = (table[index] >>> 1) & RESET_MASK;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static java.util.Objects.requireNonNull;
+
+import java.text.MessageFormat;
+import java.util.Map;
+
+/**
+ * Maps host names to values, such as the policies of virtual hosts. Hosts are looked up by the value of a Host header,
+ * whose port and single trailing dot are ignored and whose ASCII letters are compared ignoring case. The table is an
+ * open-addressing hash table with linear probing, and the host is hashed and compared in place, so that a lookup does
+ * not allocate a key.
+ */
+class HostTable<V> {
+
+	private final String[] hosts;
+
+	private final Object[] values;
+
+	private final int mask;
+
+	/**
+	 * Creates a table of the given entries, whose keys are host names without a port. A single trailing dot of a key is
+	 * ignored.
+	 */
+	HostTable(Map<String, V> entries) {
+		int length = Integer.highestOneBit(Math.max(entries.size(), 1) * 4 - 1) << 1;
+		hosts = new String[length];
+		values = new Object[length];
+		mask = length - 1;
+		for (Map.Entry<String, V> entry : entries.entrySet()) {
+			String key = entry.getKey();
+			String host = AsciiHosts.toLowerAscii(key, 0, AsciiHosts.withoutTrailingDot(key, 0, key.length()));
+			int index = AsciiHosts.hash(host, 0, host.length()) & mask;
+			while (hosts[index] != null) {
+				if (hosts[index].equals(host)) {
+					throw new IllegalArgumentException(MessageFormat.format("Duplicate host \"{0}\"", host));
+				}
+				index = (index + 1) & mask;
+			}
+			hosts[index] = host;
+			values[index] = requireNonNull(entry.getValue());
+		}
+	}
+
+	/**
+	 * Provides the value of the host of the given Host header value, or the given default value if the host is not in
+	 * the table.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(String hostHeader, V defaultValue) {
+		int end = AsciiHosts.withoutTrailingDot(hostHeader, 0, UriHostScanner.hostHeaderHostEnd(hostHeader));
+		for (int index = AsciiHosts.hash(hostHeader, 0, end) & mask;; index = (index + 1) & mask) {
+			String host = hosts[index];
+			if (host == null) {
+				return defaultValue;
+			}
+			if (AsciiHosts.regionEqualsIgnoreAsciiCase(hostHeader, 0, end, host, 0, host.length())) {
+				return (V) values[index];
+			}
+		}
+	}
+}
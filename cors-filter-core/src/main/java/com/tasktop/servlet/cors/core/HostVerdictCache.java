@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, lock-free cache of the result of comparing the host of a URI header (such as Origin) with the effective
+ * Host header, keyed by the raw header values.
+ * <p>
+ * Entries are held in small sets of slots selected by hash. When a set is full, a victim is chosen using the CLOCK
+ * algorithm and the new entry is only admitted if it has been seen more often than the victim, as estimated by a
+ * {@link FrequencySketch}. This keeps a flood of distinct values, such as attacker-controlled Origins, from flushing
+ * the entries that are actually in use.
+ */
+class HostVerdictCache implements VerdictCacheStatistics {
+
+	private static final int WAYS = 8;
+
+	private final AtomicReferenceArray<Entry> entries;
+
+	// CLOCK hands are advisory, so racy updates are acceptable
+	private final int[] hands;
+
+	private final int setMask;
+
+	private final FrequencySketch sketch;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	HostVerdictCache(int capacity) {
+		checkArgument(capacity > 0);
+		int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS) * 2 - 1);
+		this.entries = new AtomicReferenceArray<>(sets * WAYS);
+		this.hands = new int[sets];
+		this.setMask = sets - 1;
+		this.sketch = new FrequencySketch(sets * WAYS);
+	}
+
+	/**
+	 * Provides the cached result for the given header values.
+	 *
+	 * @return the cached result, or {@code null} if there is none
+	 */
+	Boolean get(String uriHeader, String hostHeader) {
+		int hash = hash(uriHeader, hostHeader);
+		int base = (hash & setMask) * WAYS;
+		for (int way = 0; way < WAYS; ++way) {
+			Entry entry = entries.get(base + way);
+			if (entry != null && entry.matches(hash, uriHeader, hostHeader)) {
+				if (!entry.referenced) {
+					entry.referenced = true;
+					sketch.increment(hash);
+				}
+				hits.increment();
+				return entry.hostMatches;
+			}
+		}
+		misses.increment();
+		sketch.increment(hash);
+		return null;
+	}
+
+	void put(String uriHeader, String hostHeader, boolean hostMatches) {
+		int hash = hash(uriHeader, hostHeader);
+		int set = hash & setMask;
+		int base = set * WAYS;
+		for (int way = 0; way < WAYS; ++way) {
+			if (entries.get(base + way) == null
+					&& entries.compareAndSet(base + way, null, new Entry(hash, uriHeader, hostHeader, hostMatches))) {
+				return;
+			}
+		}
+		int hand = hands[set];
+		for (int sweep = 0; sweep < 2 * WAYS; ++sweep) {
+			int slot = base + ((hand + sweep) & (WAYS - 1));
+			Entry entry = entries.get(slot);
+			if (entry == null) {
+				continue;
+			}
+			if (entry.referenced) {
+				entry.referenced = false;
+			} else {
+				hands[set] = (hand + sweep + 1) & (WAYS - 1);
+				if (sketch.frequency(hash) > sketch.frequency(entry.hash) && entries.compareAndSet(slot, entry,
+						new Entry(hash, uriHeader, hostHeader, hostMatches))) {
+					evictions.increment();
+				}
+				return;
+			}
+		}
+	}
+
+	@Override
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	@Override
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	@Override
+	public int getCapacity() {
+		return entries.length();
+	}
+
+	private static int hash(String uriHeader, String hostHeader) {
+		int hash = uriHeader.hashCode() * 31 + hostHeader.hashCode();
+		hash *= 0x9e3779b9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private static class Entry {
+
+		private final int hash;
+
+		private final String uriHeader;
+
+		private final String hostHeader;
+
+		private final boolean hostMatches;
+
+		private volatile boolean referenced;
+
+		Entry(int hash, String uriHeader, String hostHeader, boolean hostMatches) {
+			this.hash = hash;
+			this.uriHeader = uriHeader;
+			this.hostHeader = hostHeader;
+			this.hostMatches = hostMatches;
+		}
+
+		boolean matches(int hash, String uriHeader, String hostHeader) {
+			return this.hash == hash && this.uriHeader.equals(uriHeader) && this.hostHeader.equals(hostHeader);
+		}
+	}
+}
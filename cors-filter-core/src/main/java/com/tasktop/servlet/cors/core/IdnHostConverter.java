@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+
+import java.net.IDN;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Converts internationalized host names to their ASCII form using punycode, as enabled by the {@code idn-enabled}
+ * init parameter. Conversions are kept in a small direct-mapped cache that is looked up by comparing the host in place,
+ * so that converting a host that was recently seen does not allocate. Since any host may evict any other, a flood of
+ * distinct hosts can only make conversions slower.
+ */
+class IdnHostConverter {
+
+	private final AtomicReferenceArray<Entry> entries;
+
+	private final int mask;
+
+	IdnHostConverter(int capacity) {
+		checkArgument(capacity > 0);
+		int slots = Integer.highestOneBit(capacity * 2 - 1);
+		this.entries = new AtomicReferenceArray<>(slots);
+		this.mask = slots - 1;
+	}
+
+	/**
+	 * Provides the ASCII form of the host name in the given range of the given value, which is {@code null} if the
+	 * host name is not a valid internationalized domain name.
+	 */
+	String toAscii(String value, int start, int end) {
+		int index = hash(value, start, end) & mask;
+		Entry entry = entries.get(index);
+		if (entry != null && entry.matches(value, start, end)) {
+			return entry.asciiHost;
+		}
+		String host = value.substring(start, end);
+		String asciiHost;
+		try {
+			asciiHost = IDN.toASCII(host);
+		} catch (IllegalArgumentException e) {
+			asciiHost = null;
+		}
+		entries.set(index, new Entry(host, asciiHost));
+		return asciiHost;
+	}
+
+	int getCapacity() {
+		return entries.length();
+	}
+
+	private static int hash(String value, int start, int end) {
+		int hash = 0;
+		for (int index = start; index < end; ++index) {
+			hash = 31 * hash + value.charAt(index);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static class Entry {
+
+		private final String host;
+
+		private final String asciiHost;
+
+		private Entry(String host, String asciiHost) {
+			this.host = host;
+			this.asciiHost = asciiHost;
+		}
+
+		private boolean matches(String value, int start, int end) {
+			return host.length() == end - start && host.regionMatches(0, value, start, end - start);
+		}
+	}
+}
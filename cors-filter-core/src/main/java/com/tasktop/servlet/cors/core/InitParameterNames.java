@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+public class InitParameterNames {
+
+	public static final String EXCLUSION_PATHS = "exclusion-paths";
+
+	public static final String VERDICT_CACHE_ENABLED = "verdict-cache-enabled";
+
+	public static final String VERDICT_CACHE_SIZE = "verdict-cache-size";
+
+	public static final String METRICS_ENABLED = "metrics-enabled";
+
+	public static final String ALLOWED_ORIGINS = "allowed-origins";
+
+	public static final String IDN_ENABLED = "idn-enabled";
+
+	public static final String PREFLIGHT_ENABLED = "preflight-enabled";
+
+	public static final String PREFLIGHT_ALLOWED_METHODS = "preflight-allowed-methods";
+
+	public static final String PREFLIGHT_ALLOWED_HEADERS = "preflight-allowed-headers";
+
+	public static final String PREFLIGHT_MAX_AGE = "preflight-max-age";
+
+	public static final String METHOD_POLICY = "method-policy";
+
+	public static final String TRUSTED_PROXIES = "trusted-proxies";
+
+	public static final String FETCH_METADATA_ENABLED = "fetch-metadata-enabled";
+
+	public static final String MODE = "mode";
+
+	public static final String REPORT_ONLY_SAMPLE_RATE = "report-only-sample-rate";
+
+	public static final String POLICY_FILE = "policy-file";
+
+	public static final String HOST_POLICY_FILE = "host-policy-file";
+
+	public static final String ADAPTIVE_BLOCKING_ENABLED = "adaptive-blocking-enabled";
+
+	public static final String ADAPTIVE_BLOCKING_THRESHOLD = "adaptive-blocking-threshold";
+
+	public static final String ADAPTIVE_BLOCKING_WINDOW_SECONDS = "adaptive-blocking-window-seconds";
+
+	public static final String ADAPTIVE_BLOCKING_COOLDOWN_SECONDS = "adaptive-blocking-cooldown-seconds";
+
+	public static final String ADAPTIVE_BLOCKING_SIZE = "adaptive-blocking-size";
+
+	public static final String RESCRUTINIZE_DISPATCHES = "rescrutinize-dispatches";
+
+	public static final String AUDIT_LOG_FILE = "audit-log-file";
+
+	public static final String AUDIT_LOG_BUFFER_SIZE = "audit-log-buffer-size";
+
+	public static final String AUDIT_LOG_MAX_FILE_SIZE = "audit-log-max-file-size";
+
+	public static final String AUDIT_LOG_MAX_FILES = "audit-log-max-files";
+
+	public static final String TOKEN_SECRET = "token-secret";
+
+	public static final String TOKEN_COOKIE_NAME = "token-cookie-name";
+
+	public static final String TOKEN_COOKIE_SECURE = "token-cookie-secure";
+
+	public static final String TOKEN_HEADER_NAME = "token-header-name";
+
+	public static final String TOKEN_MAX_AGE = "token-max-age";
+
+	private InitParameterNames() {
+		// prevent instantiation
+	}
+}
@@ -13,19 +13,19 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  *******************************************************************************/
-package com.tasktop.servlet.cors;
+package com.tasktop.servlet.cors.core;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
-
-class UriDecoder {
+/**
+ * Provides the init parameters that configure a {@link CorsHeaderScrutinizer}, such as those of a servlet filter
+ * configuration.
+ * 
+ * @see InitParameterNames
+ */
+@FunctionalInterface
+public interface InitParameterSource {
 
-	public static String decode(String path) {
-		try {
-			return URLDecoder.decode(path, StandardCharsets.UTF_8.name());
-		} catch (UnsupportedEncodingException e) {
-			throw new RuntimeException(e);
-		}
-	}
+	/**
+	 * Provides the value of the init parameter with the given name, or {@code null} if the parameter is not present.
+	 */
+	String getInitParameter(String name);
 }
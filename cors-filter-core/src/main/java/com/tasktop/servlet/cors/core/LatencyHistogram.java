@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds with a fixed set of buckets. Each power of two is split into four
+ * buckets, so the reported values are within 25% of the recorded values. Latencies beyond the last bucket are
+ * recorded in the last bucket.
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 2;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int MAX_EXPONENT = 40;
+
+	static final int BUCKET_COUNT = ((MAX_EXPONENT - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + SUB_BUCKETS;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	LatencyHistogram() {
+		for (int index = 0; index < buckets.length; ++index) {
+			buckets[index] = new LongAdder();
+		}
+	}
+
+	void record(long nanos) {
+		buckets[bucketIndex(nanos)].increment();
+		totalNanos.add(Math.max(0, nanos));
+	}
+
+	long[] getBucketCounts() {
+		long[] counts = new long[BUCKET_COUNT];
+		for (int index = 0; index < counts.length; ++index) {
+			counts[index] = buckets[index].sum();
+		}
+		return counts;
+	}
+
+	long getCount() {
+		long count = 0;
+		for (LongAdder bucket : buckets) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	double getMeanNanos() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) totalNanos.sum() / count;
+	}
+
+	/**
+	 * Provides the upper bound of the bucket that contains the given percentile, or 0 if nothing has been recorded.
+	 */
+	long getPercentileNanos(double percentile) {
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long cumulative = 0;
+		for (int index = 0; index < counts.length; ++index) {
+			cumulative += counts[index];
+			if (cumulative >= rank) {
+				return bucketUpperBound(index);
+			}
+		}
+		return bucketUpperBound(counts.length - 1);
+	}
+
+	static int bucketIndex(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) Math.max(0, nanos);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+	}
+
+	/**
+	 * Provides the largest latency recorded in the bucket with the given index.
+	 */
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = (index >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+		long lowerBound = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << (exponent - SUB_BUCKET_BITS);
+		return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import java.util.Optional;
+
+/**
+ * How requests with a given HTTP method are scrutinized, as specified by the {@code method-policy} init parameter.
+ */
+enum MethodPolicy {
+
+	/**
+	 * The headers are validated and the host of the Origin and Referer headers must match the Host header.
+	 */
+	ENFORCE("enforce"),
+
+	/**
+	 * The headers are validated, but the host of the Origin and Referer headers is not compared with the Host header.
+	 */
+	HEADERS_ONLY("headers-only"),
+
+	/**
+	 * The request is allowed without scrutiny.
+	 */
+	SKIP("skip");
+
+	private final String parameterValue;
+
+	private MethodPolicy(String parameterValue) {
+		this.parameterValue = parameterValue;
+	}
+
+	String getParameterValue() {
+		return parameterValue;
+	}
+
+	static Optional<MethodPolicy> fromParameterValue(String parameterValue) {
+		for (MethodPolicy policy : values()) {
+			if (policy.parameterValue.equals(parameterValue)) {
+				return Optional.of(policy);
+			}
+		}
+		return Optional.empty();
+	}
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.AsciiHosts.regionEqualsIgnoreAsciiCase;
+import static com.tasktop.servlet.cors.core.AsciiHosts.toLowerAscii;
+import static java.util.Objects.requireNonNull;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the {@link MethodPolicy} of a request method through an open-addressing table that is computed once. The
+ * slot of a method is derived from its length and its first and last characters, so that a lookup reads at most
+ * three characters before comparing the method with the one in the slot, without allocating. Methods are stored in
+ * upper case when the table is built and compared ignoring the case of ASCII letters, so that a method such as
+ * {@code get} is treated like {@code GET} whichever way it is configured. A method that is not listed ends its probe at
+ * an empty slot and resolves to the default policy.
+ */
+class MethodPolicyTable {
+
+	static final String DEFAULT_METHOD = "*";
+
+	private static final Map<String, MethodPolicy> DEFAULT_POLICIES = defaultPolicies();
+
+	private final String[] methods;
+
+	private final MethodPolicy[] policies;
+
+	private final MethodPolicy defaultPolicy;
+
+	/**
+	 * Creates a table from the given policies, which override the default policies: {@code GET} requests are
+	 * {@link MethodPolicy#HEADERS_ONLY headers-only} and all other methods, designated by
+	 * {@value #DEFAULT_METHOD}, are {@link MethodPolicy#ENFORCE enforced}.
+	 */
+	MethodPolicyTable(Map<String, MethodPolicy> overrides) {
+		Map<String, MethodPolicy> methodPolicies = new HashMap<>(DEFAULT_POLICIES);
+		for (Map.Entry<String, MethodPolicy> entry : requireNonNull(overrides).entrySet()) {
+			methodPolicies.put(entry.getKey().toUpperCase(Locale.ROOT), entry.getValue());
+		}
+		defaultPolicy = methodPolicies.remove(DEFAULT_METHOD);
+		int length = Integer.highestOneBit(Math.max(methodPolicies.size(), 1) * 4 - 1) << 1;
+		methods = new String[length];
+		policies = new MethodPolicy[length];
+		for (Map.Entry<String, MethodPolicy> entry : methodPolicies.entrySet()) {
+			int index = slot(entry.getKey());
+			while (methods[index] != null) {
+				index = (index + 1) & (length - 1);
+			}
+			methods[index] = entry.getKey();
+			policies[index] = entry.getValue();
+		}
+	}
+
+	MethodPolicy get(String method) {
+		if (method.isEmpty()) {
+			return defaultPolicy;
+		}
+		for (int index = slot(method);; index = (index + 1) & (methods.length - 1)) {
+			String candidate = methods[index];
+			if (candidate == null) {
+				return defaultPolicy;
+			}
+			if (candidate.equals(method)
+					|| regionEqualsIgnoreAsciiCase(candidate, 0, candidate.length(), method, 0, method.length())) {
+				return policies[index];
+			}
+		}
+	}
+
+	/**
+	 * Provides the policies that some method resolves to, including the policy of methods that are not listed.
+	 */
+	Set<MethodPolicy> getPolicies() {
+		Set<MethodPolicy> usedPolicies = EnumSet.of(defaultPolicy);
+		for (MethodPolicy policy : policies) {
+			if (policy != null) {
+				usedPolicies.add(policy);
+			}
+		}
+		return usedPolicies;
+	}
+
+	private int slot(String method) {
+		int length = method.length();
+		int hash = (length * 31 + toLowerAscii(method.charAt(0))) * 31 + toLowerAscii(method.charAt(length - 1));
+		return (hash ^ (hash >>> 7)) & (methods.length - 1);
+	}
+
+	private static Map<String, MethodPolicy> defaultPolicies() {
+		Map<String, MethodPolicy> policies = new HashMap<>();
+		policies.put("GET", MethodPolicy.HEADERS_ONLY);
+		policies.put(DEFAULT_METHOD, MethodPolicy.ENFORCE);
+		return policies;
+	}
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import java.util.Optional;
+
+/**
+ * Whether rejected requests are actually rejected, as specified by the {@code mode} init parameter.
+ */
+enum Mode {
+
+	/**
+	 * Every request is scrutinized, and requests that fail scrutiny are rejected.
+	 */
+	ENFORCE("enforce"),
+
+	/**
+	 * A sample of requests is scrutinized, and requests that fail scrutiny are reported in the
+	 * {@link ReportOnlySummary} but are not rejected.
+	 */
+	REPORT_ONLY("report-only");
+
+	private final String parameterValue;
+
+	private Mode(String parameterValue) {
+		this.parameterValue = parameterValue;
+	}
+
+	String getParameterValue() {
+		return parameterValue;
+	}
+
+	static Optional<Mode> fromParameterValue(String parameterValue) {
+		for (Mode mode : values()) {
+			if (mode.parameterValue.equals(parameterValue)) {
+				return Optional.of(mode);
+			}
+		}
+		return Optional.empty();
+	}
+}
@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+import static java.text.MessageFormat.format;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A deterministic automaton that recognizes paths starting with any of a set of path prefixes. Prefixes consist of
+ * {@code /}-separated segments, where a segment of {@code *} matches any single segment and a segment of {@code **}
+ * matches any number of segments, including none. All other segments are matched literally after being URI-decoded.
+ * <p>
+ * Matching is a single pass over the path which stops as soon as a prefix has been recognized, and its cost does not
+ * depend on the number of prefixes.
+ */
+class PathPrefixAutomaton {
+
+	static final String SEGMENT_WILDCARD = "*";
+
+	static final String MULTI_SEGMENT_WILDCARD = "**";
+
+	private static final char SEPARATOR = '/';
+
+	private static final int DEAD_STATE = -1;
+
+	private static final int MAX_STATES = 1 << 16;
+
+	private final boolean[] accepting;
+
+	private final int[] transitionOffsets;
+
+	private final char[] transitionCharacters;
+
+	private final int[] transitionTargets;
+
+	private final int[] defaultTargets;
+
+	PathPrefixAutomaton(List<String> prefixes) {
+		requireNonNull(prefixes);
+		checkArgument(!prefixes.isEmpty());
+		Nfa nfa = new Nfa(prefixes);
+		DfaBuilder builder = new DfaBuilder(nfa);
+		accepting = builder.accepting();
+		transitionOffsets = builder.transitionOffsets();
+		transitionCharacters = builder.transitionCharacters();
+		transitionTargets = builder.transitionTargets();
+		defaultTargets = builder.defaultTargets();
+	}
+
+	/**
+	 * Indicates whether the portion of the given path starting at {@code fromIndex} starts with one of the prefixes.
+	 */
+	boolean matchesPrefix(String path, int fromIndex) {
+		int state = 0;
+		int length = path.length();
+		for (int index = fromIndex; index < length; ++index) {
+			if (accepting[state]) {
+				return true;
+			}
+			state = transition(state, path.charAt(index));
+			if (state == DEAD_STATE) {
+				return false;
+			}
+		}
+		return accepting[state];
+	}
+
+	int stateCount() {
+		return accepting.length;
+	}
+
+	private int transition(int state, char c) {
+		int from = transitionOffsets[state];
+		int to = transitionOffsets[state + 1];
+		int index = Arrays.binarySearch(transitionCharacters, from, to, c);
+		return index >= 0 ? transitionTargets[index] : defaultTargets[state];
+	}
+
+	private enum NodeKind {
+		LITERAL, SEGMENT_WILDCARD, MULTI_SEGMENT_WILDCARD, ACCEPT
+	}
+
+	/**
+	 * A nondeterministic automaton with one chain of nodes per prefix. A segment wildcard node loops on any character
+	 * other than {@code /}, and a multi-segment wildcard node matches zero or more whole segments including their
+	 * trailing separator.
+	 */
+	private static class Nfa {
+
+		private final List<NodeKind> kinds = new ArrayList<>();
+
+		private final StringBuilder literals = new StringBuilder();
+
+		private final List<Integer> starts = new ArrayList<>();
+
+		Nfa(List<String> prefixes) {
+			for (String prefix : prefixes) {
+				starts.add(kinds.size());
+				addPrefix(requireNonNull(prefix));
+			}
+		}
+
+		private void addPrefix(String prefix) {
+			String[] segments = prefix.split(String.valueOf(SEPARATOR), -1);
+			for (int index = 0; index < segments.length; ++index) {
+				String segment = segments[index];
+				boolean last = index == segments.length - 1;
+				if (segment.equals(MULTI_SEGMENT_WILDCARD)) {
+					add(NodeKind.MULTI_SEGMENT_WILDCARD, SEPARATOR);
+					continue;
+				}
+				if (segment.equals(SEGMENT_WILDCARD)) {
+					add(NodeKind.SEGMENT_WILDCARD, SEPARATOR);
+				} else {
+					for (char c : UriDecoder.decode(segment).toCharArray()) {
+						add(NodeKind.LITERAL, c);
+					}
+				}
+				if (!last) {
+					add(NodeKind.LITERAL, SEPARATOR);
+				}
+			}
+			add(NodeKind.ACCEPT, SEPARATOR);
+		}
+
+		private void add(NodeKind kind, char literal) {
+			kinds.add(kind);
+			literals.append(literal);
+		}
+
+		int size() {
+			return kinds.size();
+		}
+
+		NodeKind kind(int node) {
+			return kinds.get(node);
+		}
+
+		char literal(int node) {
+			return literals.charAt(node);
+		}
+
+		List<Integer> starts() {
+			return starts;
+		}
+
+		/**
+		 * Adds the node and every node reachable from it without consuming a character.
+		 */
+		void addClosure(BitSet states, int node) {
+			states.set(node);
+			while (kind(node) != NodeKind.LITERAL && kind(node) != NodeKind.ACCEPT) {
+				states.set(++node);
+			}
+		}
+
+		/**
+		 * Adds the nodes reachable from the given node by consuming the given character, or by consuming any character
+		 * without an explicit transition when {@code c} is {@code null}.
+		 */
+		void addTransitions(BitSet states, int node, Character c) {
+			switch (kind(node)) {
+			case LITERAL:
+				if (c != null && literal(node) == c) {
+					addClosure(states, node + 1);
+				}
+				break;
+			case SEGMENT_WILDCARD:
+				if (c == null || c != SEPARATOR) {
+					addClosure(states, node);
+				}
+				break;
+			case MULTI_SEGMENT_WILDCARD:
+				// stays within the wildcard until a separator completes a segment
+				states.set(node);
+				if (c != null && c == SEPARATOR) {
+					addClosure(states, node + 1);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Converts the {@link Nfa} into a deterministic automaton using the subset construction. States that contain an
+	 * accepting node have no transitions since matching stops as soon as they are reached.
+	 */
+	private static class DfaBuilder {
+
+		private final Nfa nfa;
+
+		private final Map<BitSet, Integer> stateIds = new HashMap<>();
+
+		private final List<BitSet> states = new ArrayList<>();
+
+		private final List<TreeMap<Character, Integer>> transitions = new ArrayList<>();
+
+		private final List<Integer> defaults = new ArrayList<>();
+
+		DfaBuilder(Nfa nfa) {
+			this.nfa = nfa;
+			BitSet start = new BitSet(nfa.size());
+			for (int node : nfa.starts()) {
+				nfa.addClosure(start, node);
+			}
+			stateId(start);
+			for (int state = 0; state < states.size(); ++state) {
+				computeTransitions(state);
+			}
+		}
+
+		private void computeTransitions(int state) {
+			BitSet nodes = states.get(state);
+			TreeMap<Character, Integer> stateTransitions = new TreeMap<>();
+			int defaultTarget = DEAD_STATE;
+			if (!isAccepting(nodes)) {
+				boolean hasWildcard = false;
+				for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+					if (nfa.kind(node) == NodeKind.LITERAL) {
+						stateTransitions.put(nfa.literal(node), DEAD_STATE);
+					} else if (nfa.kind(node) != NodeKind.ACCEPT) {
+						hasWildcard = true;
+					}
+				}
+				if (hasWildcard) {
+					stateTransitions.put(SEPARATOR, DEAD_STATE);
+					defaultTarget = target(nodes, null);
+				}
+				for (Map.Entry<Character, Integer> entry : stateTransitions.entrySet()) {
+					entry.setValue(target(nodes, entry.getKey()));
+				}
+			}
+			transitions.add(stateTransitions);
+			defaults.add(defaultTarget);
+		}
+
+		private int target(BitSet nodes, Character c) {
+			BitSet target = new BitSet(nfa.size());
+			for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+				nfa.addTransitions(target, node, c);
+			}
+			return target.isEmpty() ? DEAD_STATE : stateId(target);
+		}
+
+		private int stateId(BitSet nodes) {
+			Integer id = stateIds.get(nodes);
+			if (id == null) {
+				if (states.size() == MAX_STATES) {
+					throw new IllegalArgumentException(
+							format("Path prefixes are too complex, more than {0} states are required", MAX_STATES));
+				}
+				id = states.size();
+				stateIds.put(nodes, id);
+				states.add(nodes);
+			}
+			return id;
+		}
+
+		private boolean isAccepting(BitSet nodes) {
+			for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+				if (nfa.kind(node) == NodeKind.ACCEPT) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		boolean[] accepting() {
+			boolean[] accepting = new boolean[states.size()];
+			for (int state = 0; state < accepting.length; ++state) {
+				accepting[state] = isAccepting(states.get(state));
+			}
+			return accepting;
+		}
+
+		int[] transitionOffsets() {
+			int[] offsets = new int[states.size() + 1];
+			for (int state = 0; state < states.size(); ++state) {
+				offsets[state + 1] = offsets[state] + transitions.get(state).size();
+			}
+			return offsets;
+		}
+
+		char[] transitionCharacters() {
+			List<Character> characters = new ArrayList<>();
+			transitions.forEach(t -> characters.addAll(t.keySet()));
+			char[] array = new char[characters.size()];
+			for (int index = 0; index < array.length; ++index) {
+				array[index] = characters.get(index);
+			}
+			return array;
+		}
+
+		int[] transitionTargets() {
+			List<Integer> targets = new ArrayList<>();
+			transitions.forEach(t -> targets.addAll(t.values()));
+			return targets.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		int[] defaultTargets() {
+			return defaults.stream().mapToInt(Integer::intValue).toArray();
+		}
+	}
+}
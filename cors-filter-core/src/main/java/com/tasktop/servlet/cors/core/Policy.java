@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static java.text.MessageFormat.format;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * The settings of a {@link CorsHeaderScrutinizer} that can be reloaded while it is in use, compiled from the init
+ * parameters. Policies are immutable, so that a new policy can be published to request threads with a single volatile
+ * write.
+ */
+class Policy {
+
+	private static final List<String> DEFAULT_PREFLIGHT_ALLOWED_METHODS = Arrays.asList("GET", "HEAD", "POST");
+
+	private static final double DEFAULT_REPORT_ONLY_SAMPLE_RATE = 1;
+
+	private final Optional<RequestPathMatcher> requestExclusionMatcher;
+
+	private final Optional<DomainTrie> allowedOrigins;
+
+	private final Optional<PreflightResponse> preflightResponse;
+
+	private final MethodPolicyTable methodPolicies;
+
+	private final Optional<AddressTrie> trustedProxies;
+
+	private final Mode mode;
+
+	private final double reportOnlySampleRate;
+
+	private final boolean fetchMetadataEnabled;
+
+	private final Map<String, Policy> hostPolicies;
+
+	Policy(InitParameterSource parameters) {
+		requestExclusionMatcher = readPathExclusionParameter(parameters);
+		allowedOrigins = readAllowedOriginsParameter(parameters);
+		preflightResponse = readPreflightParameters(parameters);
+		methodPolicies = readMethodPolicyParameter(parameters);
+		trustedProxies = readTrustedProxiesParameter(parameters);
+		mode = Optional.ofNullable(parameters.getInitParameter(InitParameterNames.MODE))
+				.map(ConfigurationParameterParser::parseMode).orElse(Mode.ENFORCE);
+		reportOnlySampleRate = Optional
+				.ofNullable(parameters.getInitParameter(InitParameterNames.REPORT_ONLY_SAMPLE_RATE))
+				.map(value -> ConfigurationParameterParser
+						.parseSampleRate(InitParameterNames.REPORT_ONLY_SAMPLE_RATE, value))
+				.orElse(DEFAULT_REPORT_ONLY_SAMPLE_RATE);
+		fetchMetadataEnabled = Optional
+				.ofNullable(parameters.getInitParameter(InitParameterNames.FETCH_METADATA_ENABLED))
+				.map(value -> ConfigurationParameterParser.parseBoolean(InitParameterNames.FETCH_METADATA_ENABLED,
+						value))
+				.orElse(false);
+		hostPolicies = readHostPolicyFileParameter(parameters);
+	}
+
+	Optional<RequestPathMatcher> getRequestExclusionMatcher() {
+		return requestExclusionMatcher;
+	}
+
+	Optional<DomainTrie> getAllowedOrigins() {
+		return allowedOrigins;
+	}
+
+	Optional<PreflightResponse> getPreflightResponse() {
+		return preflightResponse;
+	}
+
+	MethodPolicyTable getMethodPolicies() {
+		return methodPolicies;
+	}
+
+	Optional<AddressTrie> getTrustedProxies() {
+		return trustedProxies;
+	}
+
+	Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Provides the fraction of requests that are scrutinized in {@link Mode#REPORT_ONLY report-only} mode.
+	 */
+	double getReportOnlySampleRate() {
+		return reportOnlySampleRate;
+	}
+
+	/**
+	 * Indicates whether the Sec-Fetch-Site header sent by browsers decides the verdict when it is conclusive.
+	 */
+	boolean isFetchMetadataEnabled() {
+		return fetchMetadataEnabled;
+	}
+
+	/**
+	 * Provides the policies of the virtual hosts listed in the {@code host-policy-file}, keyed by lower case host
+	 * name. Each of them is this policy with the allowed origins and exclusion paths of the host.
+	 */
+	Map<String, Policy> getHostPolicies() {
+		return hostPolicies;
+	}
+
+	private static Map<String, Policy> readHostPolicyFileParameter(InitParameterSource parameters) {
+		String file = parameters.getInitParameter(InitParameterNames.HOST_POLICY_FILE);
+		if (file == null) {
+			return Collections.emptyMap();
+		}
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (IOException | UncheckedIOException e) {
+			throw new IllegalArgumentException(
+					format("Cannot read {0} \"{1}\": {2}", InitParameterNames.HOST_POLICY_FILE, file, e.getMessage()),
+					e);
+		}
+		Map<String, String> entries = new LinkedHashMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			entries.put(name, properties.getProperty(name));
+		}
+		Map<String, Policy> policies = new HashMap<>();
+		ConfigurationParameterParser.parseHostPolicies(entries).forEach((host, hostParameters) -> {
+			try {
+				policies.put(host, new Policy(name -> hostParameters.containsKey(name) ? hostParameters.get(name)
+						: InitParameterNames.HOST_POLICY_FILE.equals(name) ? null : parameters.getInitParameter(name)));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(format("Invalid policy of host \"{0}\" in {1}: {2}", host,
+						InitParameterNames.HOST_POLICY_FILE, e.getMessage()), e);
+			}
+		});
+		return Collections.unmodifiableMap(policies);
+	}
+
+	private static Optional<AddressTrie> readTrustedProxiesParameter(InitParameterSource parameters) {
+		return Optional.ofNullable(parameters.getInitParameter(InitParameterNames.TRUSTED_PROXIES))
+				.map(ConfigurationParameterParser::parseTrustedProxies).map(AddressTrie::new);
+	}
+
+	private static MethodPolicyTable readMethodPolicyParameter(InitParameterSource parameters) {
+		return new MethodPolicyTable(Optional.ofNullable(parameters.getInitParameter(InitParameterNames.METHOD_POLICY))
+				.map(ConfigurationParameterParser::parseMethodPolicies).orElse(Collections.emptyMap()));
+	}
+
+	private static Optional<RequestPathMatcher> readPathExclusionParameter(InitParameterSource parameters) {
+		return Optional.ofNullable(parameters.getInitParameter(InitParameterNames.EXCLUSION_PATHS))
+				.map(ConfigurationParameterParser::parseExclusionPaths).map(RequestPathMatcher::new);
+	}
+
+	private static Optional<DomainTrie> readAllowedOriginsParameter(InitParameterSource parameters) {
+		return Optional.ofNullable(parameters.getInitParameter(InitParameterNames.ALLOWED_ORIGINS))
+				.map(ConfigurationParameterParser::parseAllowedOrigins).map(DomainTrie::new);
+	}
+
+	private static Optional<PreflightResponse> readPreflightParameters(InitParameterSource parameters) {
+		boolean enabled = Optional.ofNullable(parameters.getInitParameter(InitParameterNames.PREFLIGHT_ENABLED))
+				.map(value -> ConfigurationParameterParser.parseBoolean(InitParameterNames.PREFLIGHT_ENABLED, value))
+				.orElse(false);
+		if (!enabled) {
+			return Optional.empty();
+		}
+		List<String> allowedMethods = Optional
+				.ofNullable(parameters.getInitParameter(InitParameterNames.PREFLIGHT_ALLOWED_METHODS))
+				.map(value -> ConfigurationParameterParser.parseTokens(InitParameterNames.PREFLIGHT_ALLOWED_METHODS,
+						value))
+				.orElse(DEFAULT_PREFLIGHT_ALLOWED_METHODS);
+		List<String> allowedHeaders = Optional
+				.ofNullable(parameters.getInitParameter(InitParameterNames.PREFLIGHT_ALLOWED_HEADERS))
+				.map(value -> ConfigurationParameterParser.parseTokens(InitParameterNames.PREFLIGHT_ALLOWED_HEADERS,
+						value))
+				.orElse(Collections.emptyList());
+		Optional<Integer> maxAgeSeconds = Optional
+				.ofNullable(parameters.getInitParameter(InitParameterNames.PREFLIGHT_MAX_AGE))
+				.map(value -> ConfigurationParameterParser.parsePositiveInteger(InitParameterNames.PREFLIGHT_MAX_AGE,
+						value));
+		return Optional.of(new PreflightResponse(allowedMethods, allowedHeaders, maxAgeSeconds));
+	}
+}
@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static java.text.MessageFormat.format;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches a policy file for changes on a background thread, compiling a new {@link Policy} each time the file changes
+ * and passing it to a publisher. The policy file is a properties file whose entries override the init parameters of
+ * the same name. When the file cannot be read or contains invalid values, the failure is logged and nothing is
+ * published, so that the last good policy stays in effect.
+ * <p>
+ * Any event in the directory of the file starts a reload, which waits until no further event has occurred for the
+ * settle delay, so that a file that is still being written is not read. The file is then only read if its real path,
+ * file key, size or modification time differs from when it was last read: this detects files that are replaced
+ * through a symbolic link elsewhere in the directory, such as the {@code ..data} link of a Kubernetes ConfigMap
+ * volume, which raises no event for the name of the file itself, while ignoring changes to other files.
+ */
+class PolicyFileWatcher implements AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger(PolicyFileWatcher.class.getName());
+
+	static final long DEFAULT_SETTLE_MILLIS = 250;
+
+	private final Path file;
+
+	private final InitParameterSource parameters;
+
+	private final Consumer<Policy> publisher;
+
+	private final long settleMillis;
+
+	private final AtomicLong reloadCount = new AtomicLong();
+
+	private final AtomicLong reloadFailureCount = new AtomicLong();
+
+	private Optional<WatchService> watchService = Optional.empty();
+
+	private Optional<Thread> thread = Optional.empty();
+
+	/**
+	 * The version of the file when it was last read, whether or not its values were valid.
+	 */
+	private volatile Optional<FileVersion> readVersion = Optional.empty();
+
+	PolicyFileWatcher(Path file, InitParameterSource parameters, Consumer<Policy> publisher) {
+		this(file, parameters, publisher, DEFAULT_SETTLE_MILLIS);
+	}
+
+	PolicyFileWatcher(Path file, InitParameterSource parameters, Consumer<Policy> publisher, long settleMillis) {
+		this.file = requireNonNull(file).toAbsolutePath();
+		this.parameters = requireNonNull(parameters);
+		this.publisher = requireNonNull(publisher);
+		this.settleMillis = settleMillis;
+	}
+
+	/**
+	 * Reads the policy file and compiles it into a policy.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the file cannot be read or contains invalid values
+	 */
+	Policy load() {
+		Properties properties = new Properties();
+		try {
+			FileVersion version = FileVersion.of(file);
+			try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				properties.load(reader);
+			}
+			readVersion = Optional.of(version);
+		} catch (IOException | UncheckedIOException e) {
+			throw new IllegalArgumentException(
+					format("Cannot read {0} \"{1}\": {2}", InitParameterNames.POLICY_FILE, file, e.getMessage()), e);
+		}
+		return new Policy(name -> properties.containsKey(name) ? properties.getProperty(name)
+				: parameters.getInitParameter(name));
+	}
+
+	/**
+	 * Starts watching the policy file on a daemon thread.
+	 */
+	void start() {
+		Path directory = file.getParent();
+		try {
+			WatchService service = directory.getFileSystem().newWatchService();
+			directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE);
+			watchService = Optional.of(service);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Thread watcher = new Thread(this::watch, "cors-policy-watcher-" + file.getFileName());
+		watcher.setDaemon(true);
+		watcher.start();
+		thread = Optional.of(watcher);
+	}
+
+	/**
+	 * Stops watching the policy file and waits for the background thread to terminate.
+	 */
+	@Override
+	public void close() {
+		if (watchService.isPresent()) {
+			try {
+				watchService.get().close();
+				thread.get().join();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			watchService = Optional.empty();
+			thread = Optional.empty();
+		}
+	}
+
+	long getReloadCount() {
+		return reloadCount.get();
+	}
+
+	long getReloadFailureCount() {
+		return reloadFailureCount.get();
+	}
+
+	private void watch() {
+		WatchService service = watchService.get();
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				do {
+					key.pollEvents();
+					key.reset();
+					key = service.poll(settleMillis, TimeUnit.MILLISECONDS);
+				} while (key != null);
+				if (isChanged()) {
+					reload();
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// closed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean isChanged() {
+		try {
+			return !readVersion.equals(Optional.of(FileVersion.of(file)));
+		} catch (IOException e) {
+			// reported by reload()
+			return true;
+		}
+	}
+
+	private void reload() {
+		try {
+			publisher.accept(load());
+			reloadCount.incrementAndGet();
+		} catch (RuntimeException e) {
+			reloadFailureCount.incrementAndGet();
+			LOGGER.log(Level.WARNING, format("Keeping the current policy, cannot reload \"{0}\"", file), e);
+		}
+	}
+
+	/**
+	 * Identifies the content of the file that a path resolves to, following symbolic links.
+	 */
+	private static final class FileVersion {
+
+		private final Path realPath;
+
+		private final Object fileKey;
+
+		private final long size;
+
+		private final FileTime lastModifiedTime;
+
+		private FileVersion(Path realPath, BasicFileAttributes attributes) {
+			this.realPath = realPath;
+			this.fileKey = attributes.fileKey();
+			this.size = attributes.size();
+			this.lastModifiedTime = attributes.lastModifiedTime();
+		}
+
+		static FileVersion of(Path file) throws IOException {
+			Path realPath = file.toRealPath();
+			return new FileVersion(realPath, Files.readAttributes(realPath, BasicFileAttributes.class));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FileVersion)) {
+				return false;
+			}
+			FileVersion other = (FileVersion) obj;
+			return realPath.equals(other.realPath) && Objects.equals(fileKey, other.fileKey) && size == other.size
+					&& lastModifiedTime.equals(other.lastModifiedTime);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(realPath, fileKey, size, lastModifiedTime);
+		}
+	}
+}
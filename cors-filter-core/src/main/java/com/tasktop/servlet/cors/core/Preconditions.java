@@ -13,7 +13,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  *******************************************************************************/
-package com.tasktop.servlet.cors;
+package com.tasktop.servlet.cors.core;
 
 class Preconditions {
 
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * The headers of the response to CORS preflight requests. All headers except {@code Access-Control-Allow-Origin},
+ * which echoes the Origin of each request, are computed once from the {@code preflight-*} init parameters.
+ */
+class PreflightResponse {
+
+	static final String HEADER_ALLOW_ORIGIN = "Access-Control-Allow-Origin";
+	static final String HEADER_ALLOW_METHODS = "Access-Control-Allow-Methods";
+	static final String HEADER_ALLOW_HEADERS = "Access-Control-Allow-Headers";
+	static final String HEADER_MAX_AGE = "Access-Control-Max-Age";
+	static final String HEADER_VARY = "Vary";
+
+	private static final String LIST_DELIMITER = ", ";
+
+	private final String[] headerNames;
+
+	private final String[] headerValues;
+
+	PreflightResponse(List<String> allowedMethods, List<String> allowedHeaders, Optional<Integer> maxAgeSeconds) {
+		requireNonNull(allowedMethods);
+		requireNonNull(allowedHeaders);
+		requireNonNull(maxAgeSeconds);
+		List<String> names = new ArrayList<>();
+		List<String> values = new ArrayList<>();
+		names.add(HEADER_ALLOW_METHODS);
+		values.add(String.join(LIST_DELIMITER, allowedMethods));
+		if (!allowedHeaders.isEmpty()) {
+			names.add(HEADER_ALLOW_HEADERS);
+			values.add(String.join(LIST_DELIMITER, allowedHeaders));
+		}
+		if (maxAgeSeconds.isPresent()) {
+			names.add(HEADER_MAX_AGE);
+			values.add(maxAgeSeconds.get().toString());
+		}
+		names.add(HEADER_VARY);
+		values.add("Origin");
+		headerNames = names.toArray(new String[names.size()]);
+		headerValues = values.toArray(new String[values.size()]);
+	}
+
+	/**
+	 * Writes the headers of the response to the given header writer, allowing the given origin if it is present.
+	 */
+	void writeHeaders(Optional<String> origin, BiConsumer<String, String> headerWriter) {
+		if (origin.isPresent()) {
+			headerWriter.accept(HEADER_ALLOW_ORIGIN, origin.get());
+		}
+		for (int index = 0; index < headerNames.length; ++index) {
+			headerWriter.accept(headerNames[index], headerValues[index]);
+		}
+	}
+}
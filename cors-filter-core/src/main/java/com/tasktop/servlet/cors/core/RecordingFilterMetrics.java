@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records metrics using striped counters, and exposes them as a {@link CorsHeaderScrutinyMetricsMXBean}.
+ */
+class RecordingFilterMetrics implements FilterMetrics, CorsHeaderScrutinyMetricsMXBean {
+
+	static final String OBJECT_NAME_DOMAIN = "com.tasktop.servlet.cors";
+
+	private static final AtomicInteger instanceCount = new AtomicInteger();
+
+	private final LongAdder[] verdicts = new LongAdder[Verdict.values().length];
+
+	private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+	private final Optional<VerdictCacheStatistics> verdictCacheStatistics;
+
+	private final Optional<AuditLog> auditLog;
+
+	private Optional<ObjectName> objectName = Optional.empty();
+
+	RecordingFilterMetrics(Optional<VerdictCacheStatistics> verdictCacheStatistics, Optional<AuditLog> auditLog) {
+		this.verdictCacheStatistics = requireNonNull(verdictCacheStatistics);
+		this.auditLog = requireNonNull(auditLog);
+		for (int index = 0; index < verdicts.length; ++index) {
+			verdicts[index] = new LongAdder();
+		}
+	}
+
+	@Override
+	public long startTime() {
+		return System.nanoTime();
+	}
+
+	@Override
+	public void record(Verdict verdict, long startTime) {
+		latencyHistogram.record(System.nanoTime() - startTime);
+		verdicts[verdict.ordinal()].increment();
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server using a name derived from the given type, name and
+	 * context path. If that name is already in use, an {@code instance} key is added to make it unique.
+	 */
+	void register(String type, String name, Optional<String> contextPath) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Hashtable<String, String> properties = new Hashtable<>();
+		properties.put("type", type);
+		properties.put("name", ObjectName.quote(name));
+		contextPath.ifPresent(path -> properties.put("context", ObjectName.quote(path)));
+		ObjectName objectName = new ObjectName(OBJECT_NAME_DOMAIN, properties);
+		try {
+			server.registerMBean(this, objectName);
+		} catch (InstanceAlreadyExistsException e) {
+			properties.put("instance", Integer.toString(instanceCount.incrementAndGet()));
+			objectName = new ObjectName(OBJECT_NAME_DOMAIN, properties);
+			server.registerMBean(this, objectName);
+		}
+		this.objectName = Optional.of(objectName);
+	}
+
+	void unregister() throws JMException {
+		if (objectName.isPresent()) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName.get());
+			} catch (InstanceNotFoundException e) {
+				// already unregistered
+			}
+			objectName = Optional.empty();
+		}
+	}
+
+	Optional<ObjectName> getObjectName() {
+		return objectName;
+	}
+
+	@Override
+	public long getRequestsChecked() {
+		long count = 0;
+		for (LongAdder counter : verdicts) {
+			count += counter.sum();
+		}
+		return count - getRequestsExcluded() - getRequestsNotSampled();
+	}
+
+	@Override
+	public long getRequestsExcluded() {
+		return getCount(Verdict.EXCLUDED);
+	}
+
+	@Override
+	public long getRequestsAllowed() {
+		return getCount(Verdict.ALLOWED);
+	}
+
+	@Override
+	public long getRequestsPreflightAnswered() {
+		return getCount(Verdict.PREFLIGHT);
+	}
+
+	@Override
+	public long getRequestsRejected() {
+		return getRequestsChecked() - getRequestsAllowed() - getRequestsPreflightAnswered() - getRequestsReported();
+	}
+
+	@Override
+	public long getRequestsNotSampled() {
+		return getCount(Verdict.NOT_SAMPLED);
+	}
+
+	@Override
+	public long getRequestsReported() {
+		return getCount(Verdict.REPORTED);
+	}
+
+	@Override
+	public long getRequestsRejectedDuplicateHeader() {
+		return getCount(Verdict.DUPLICATE_HEADER);
+	}
+
+	@Override
+	public long getRequestsRejectedEmptyHeader() {
+		return getCount(Verdict.EMPTY_HEADER);
+	}
+
+	@Override
+	public long getRequestsRejectedHostMismatch() {
+		return getCount(Verdict.HOST_MISMATCH);
+	}
+
+	@Override
+	public long getRequestsRejectedMissingHost() {
+		return getCount(Verdict.MISSING_HOST);
+	}
+
+	@Override
+	public long getRequestsRejectedCrossSite() {
+		return getCount(Verdict.CROSS_SITE);
+	}
+
+	@Override
+	public long getRequestsRejectedMissingToken() {
+		return getCount(Verdict.MISSING_TOKEN);
+	}
+
+	@Override
+	public long getRequestsRejectedInvalidToken() {
+		return getCount(Verdict.INVALID_TOKEN);
+	}
+
+	@Override
+	public long getRequestsRejectedBlockedOrigin() {
+		return getCount(Verdict.BLOCKED_ORIGIN);
+	}
+
+	@Override
+	public double getLatencyMeanNanos() {
+		return latencyHistogram.getMeanNanos();
+	}
+
+	@Override
+	public long getLatency50thPercentileNanos() {
+		return latencyHistogram.getPercentileNanos(50);
+	}
+
+	@Override
+	public long getLatency99thPercentileNanos() {
+		return latencyHistogram.getPercentileNanos(99);
+	}
+
+	@Override
+	public long getLatency999thPercentileNanos() {
+		return latencyHistogram.getPercentileNanos(99.9);
+	}
+
+	@Override
+	public long[] getLatencyBucketUpperBoundsNanos() {
+		long[] upperBounds = new long[LatencyHistogram.BUCKET_COUNT];
+		for (int index = 0; index < upperBounds.length; ++index) {
+			upperBounds[index] = LatencyHistogram.bucketUpperBound(index);
+		}
+		return upperBounds;
+	}
+
+	@Override
+	public long[] getLatencyBucketCounts() {
+		return latencyHistogram.getBucketCounts();
+	}
+
+	@Override
+	public long getVerdictCacheHitCount() {
+		return verdictCacheStatistics.map(VerdictCacheStatistics::getHitCount).orElse(0L);
+	}
+
+	@Override
+	public long getVerdictCacheMissCount() {
+		return verdictCacheStatistics.map(VerdictCacheStatistics::getMissCount).orElse(0L);
+	}
+
+	@Override
+	public long getVerdictCacheEvictionCount() {
+		return verdictCacheStatistics.map(VerdictCacheStatistics::getEvictionCount).orElse(0L);
+	}
+
+	@Override
+	public long getAuditRecordsWritten() {
+		return auditLog.map(AuditLog::getWrittenCount).orElse(0L);
+	}
+
+	@Override
+	public long getAuditRecordsDropped() {
+		return auditLog.map(AuditLog::getDroppedCount).orElse(0L);
+	}
+
+	private long getCount(Verdict verdict) {
+		return verdicts[verdict.ordinal()].sum();
+	}
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, lock-free {@link ReportOnlySummary}. Origin headers are held in an open-addressing table of fixed
+ * capacity, where an Origin is looked for in a few slots after the one selected by its hash; once those slots are
+ * taken by other Origins, its requests are only counted as unlisted. Entries are never evicted, so a flood of distinct
+ * Origins cannot hide the Origins seen first, and memory use does not depend on traffic.
+ */
+class RejectionReport implements ReportOnlySummary {
+
+	private static final int MAX_PROBES = 8;
+
+	private static final String ABSENT_ORIGIN = "";
+
+	private final AtomicReferenceArray<Entry> entries;
+
+	private final int mask;
+
+	private final LongAdder sampled = new LongAdder();
+
+	private final LongAdder[] reported = new LongAdder[Verdict.values().length];
+
+	private final LongAdder unlisted = new LongAdder();
+
+	RejectionReport(int capacity) {
+		checkArgument(capacity > 0);
+		int slots = Integer.highestOneBit(capacity * 2 - 1);
+		this.entries = new AtomicReferenceArray<>(slots);
+		this.mask = slots - 1;
+		for (int index = 0; index < reported.length; ++index) {
+			reported[index] = new LongAdder();
+		}
+	}
+
+	void recordSample() {
+		sampled.increment();
+	}
+
+	/**
+	 * Records a sampled request that would have been rejected for the given reason. Only allocates the first time a
+	 * given Origin is recorded.
+	 */
+	void recordRejection(String origin, Verdict reason) {
+		reported[reason.ordinal()].increment();
+		String key = origin == null ? ABSENT_ORIGIN : origin;
+		int hash = key.hashCode();
+		int index = (hash ^ (hash >>> 16)) & mask;
+		for (int probe = 0; probe < MAX_PROBES; ++probe) {
+			int slot = (index + probe) & mask;
+			Entry entry = entries.get(slot);
+			if (entry == null) {
+				Entry newEntry = new Entry(key);
+				entry = entries.compareAndSet(slot, null, newEntry) ? newEntry : entries.get(slot);
+			}
+			if (entry.origin.equals(key)) {
+				entry.count.increment();
+				return;
+			}
+		}
+		unlisted.increment();
+	}
+
+	@Override
+	public long getSampledCount() {
+		return sampled.sum();
+	}
+
+	@Override
+	public long getReportedCount() {
+		long count = 0;
+		for (LongAdder counter : reported) {
+			count += counter.sum();
+		}
+		return count;
+	}
+
+	@Override
+	public long getReportedCount(Verdict reason) {
+		return reported[Objects.requireNonNull(reason).ordinal()].sum();
+	}
+
+	@Override
+	public Map<String, Long> getReportedCountsByOrigin() {
+		List<Map.Entry<String, Long>> counts = new ArrayList<>();
+		for (int slot = 0; slot < entries.length(); ++slot) {
+			Entry entry = entries.get(slot);
+			if (entry != null) {
+				counts.add(new SimpleImmutableEntry<>(entry.origin, entry.count.sum()));
+			}
+		}
+		counts.sort(Map.Entry.<String, Long> comparingByValue().reversed());
+		Map<String, Long> countsByOrigin = new LinkedHashMap<>();
+		counts.forEach(count -> countsByOrigin.put(count.getKey(), count.getValue()));
+		return countsByOrigin;
+	}
+
+	@Override
+	public long getUnlistedReportedCount() {
+		return unlisted.sum();
+	}
+
+	@Override
+	public int getCapacity() {
+		return entries.length();
+	}
+
+	private static class Entry {
+
+		private final String origin;
+
+		private final LongAdder count = new LongAdder();
+
+		private Entry(String origin) {
+			this.origin = origin;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static com.tasktop.servlet.cors.core.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tracks the number of rejected requests per Origin host over a sliding window, and blocks a host for a cool-down
+ * period once its count reaches a threshold. Hosts are given as a range of a header value, and are hashed and compared
+ * in place ignoring ASCII case, so that neither the scheme nor the port of an Origin can be varied to evade a block.
+ * Counts are kept in a count-min sketch per slot of the window, so that memory stays fixed however many distinct hosts
+ * are seen; collisions can only overestimate the count of a host that has been rejected. Blocked hosts are kept in a
+ * direct-mapped table that compares the host itself, so a host that has never been rejected is never blocked, and a
+ * flood of blocked hosts can only evict each other.
+ * <p>
+ * The window is divided into {@value #WINDOW_SLOTS} slots, so rejections are forgotten between three quarters of the
+ * window and the whole window after they happened. Updates use atomic operations without locking; a few increments
+ * may be lost when a slot is recycled, which only makes the counts slightly lower.
+ */
+class RejectionTracker {
+
+	static final int WINDOW_SLOTS = 4;
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+
+	private static final long NO_EPOCH = Long.MIN_VALUE;
+
+	private final int threshold;
+
+	private final long slotNanos;
+
+	private final long cooldownNanos;
+
+	private final int width;
+
+	private final AtomicIntegerArray counts;
+
+	private final AtomicLongArray slotEpochs = new AtomicLongArray(WINDOW_SLOTS);
+
+	private final AtomicReferenceArray<BlockedHost> blockedHosts;
+
+	RejectionTracker(int threshold, long windowNanos, long cooldownNanos, int size) {
+		checkArgument(threshold > 0);
+		checkArgument(windowNanos >= WINDOW_SLOTS);
+		checkArgument(cooldownNanos > 0);
+		checkArgument(size > 0);
+		this.threshold = threshold;
+		this.slotNanos = windowNanos / WINDOW_SLOTS;
+		this.cooldownNanos = cooldownNanos;
+		this.width = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+		this.counts = new AtomicIntegerArray(WINDOW_SLOTS * SEEDS.length * width);
+		this.blockedHosts = new AtomicReferenceArray<>(width);
+		for (int slot = 0; slot < WINDOW_SLOTS; ++slot) {
+			slotEpochs.set(slot, NO_EPOCH);
+		}
+	}
+
+	/**
+	 * Indicates whether the host between the given indices of the given value is blocked at the given time, as provided
+	 * by {@link System#nanoTime()}.
+	 */
+	boolean isBlocked(String value, int hostStart, int hostEnd, long now) {
+		BlockedHost blocked = blockedHosts.get(blockedIndex(AsciiHosts.hash(value, hostStart, hostEnd)));
+		return blocked != null && blocked.until - now > 0 && AsciiHosts.regionEqualsIgnoreAsciiCase(value,
+				hostStart, hostEnd, blocked.host, 0, blocked.host.length());
+	}
+
+	/**
+	 * Records the rejection of a request whose Origin has the host between the given indices of the given value at the
+	 * given time, as provided by {@link System#nanoTime()}, blocking the host if it has reached the threshold.
+	 */
+	void recordRejection(String value, int hostStart, int hostEnd, long now) {
+		int hash = AsciiHosts.hash(value, hostStart, hostEnd);
+		long epoch = Math.floorDiv(now, slotNanos);
+		int slot = (int) Math.floorMod(epoch, (long) WINDOW_SLOTS);
+		recycleSlot(slot, epoch);
+		int estimate = Integer.MAX_VALUE;
+		for (int depth = 0; depth < SEEDS.length; ++depth) {
+			int counterIndex = counterIndex(hash, depth);
+			counts.incrementAndGet(slot * SEEDS.length * width + counterIndex);
+			estimate = Math.min(estimate, windowCount(counterIndex, epoch));
+		}
+		if (estimate >= threshold) {
+			String host = AsciiHosts.toLowerAscii(value, hostStart, hostEnd);
+			blockedHosts.set(blockedIndex(hash), new BlockedHost(host, now + cooldownNanos));
+		}
+	}
+
+	private void recycleSlot(int slot, long epoch) {
+		long slotEpoch = slotEpochs.get(slot);
+		if (slotEpoch != epoch && slotEpochs.compareAndSet(slot, slotEpoch, epoch)) {
+			int start = slot * SEEDS.length * width;
+			for (int index = start; index < start + SEEDS.length * width; ++index) {
+				counts.set(index, 0);
+			}
+		}
+	}
+
+	private int windowCount(int counterIndex, long epoch) {
+		int count = 0;
+		for (int slot = 0; slot < WINDOW_SLOTS; ++slot) {
+			long slotEpoch = slotEpochs.get(slot);
+			if (slotEpoch != NO_EPOCH && epoch - slotEpoch < WINDOW_SLOTS) {
+				count += counts.get(slot * SEEDS.length * width + counterIndex);
+			}
+		}
+		return count;
+	}
+
+	private int counterIndex(int hash, int depth) {
+		long h = (hash + SEEDS[depth]) * SEEDS[depth];
+		h += h >>> 32;
+		return depth * width + ((int) h & (width - 1));
+	}
+
+	private int blockedIndex(int hash) {
+		return hash & (width - 1);
+	}
+
+	private static class BlockedHost {
+
+		private final String host;
+
+		private final long until;
+
+		BlockedHost(String host, long until) {
+			this.host = host;
+			this.until = until;
+		}
+	}
+}
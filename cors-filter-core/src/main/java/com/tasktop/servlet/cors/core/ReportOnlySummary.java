@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import java.util.Map;
+
+/**
+ * Summarizes the requests that would have been rejected while the {@code mode} init parameter is
+ * {@code report-only}. Counts are kept across policy reloads, and are not reset when switching modes.
+ */
+public interface ReportOnlySummary {
+
+	/**
+	 * Provides the number of requests that were sampled and scrutinized in report-only mode.
+	 */
+	long getSampledCount();
+
+	/**
+	 * Provides the number of sampled requests that would have been rejected.
+	 */
+	long getReportedCount();
+
+	/**
+	 * Provides the number of sampled requests that would have been rejected for the given reason.
+	 */
+	long getReportedCount(Verdict reason);
+
+	/**
+	 * Provides the number of sampled requests that would have been rejected per Origin header, in decreasing order of
+	 * count, with requests without an Origin header counted under the empty string. At most {@link #getCapacity()}
+	 * distinct Origin headers are tracked, and the requests with other Origin headers are only counted by
+	 * {@link #getUnlistedReportedCount()}.
+	 */
+	Map<String, Long> getReportedCountsByOrigin();
+
+	/**
+	 * Provides the number of sampled requests that would have been rejected and whose Origin header could not be
+	 * tracked because the summary was full.
+	 */
+	long getUnlistedReportedCount();
+
+	/**
+	 * Provides the maximum number of distinct Origin headers tracked by the summary.
+	 */
+	int getCapacity();
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Iterator;
+
+/**
+ * A view of the headers of a single request that are scrutinized, which reads each of them from the request at most
+ * once and only when first needed. Only the first value of a header is kept: a duplicate is detected by checking
+ * whether the request has a second value, without reading any further values. Instances are not thread-safe, and are
+ * created for each request rather than kept per thread, so that no object of the application is retained by the
+ * threads of the server after it is undeployed.
+ */
+class RequestHeaders {
+
+	static final String ORIGIN = "Origin";
+	static final String REFERER = "Referer";
+	static final String HOST = "Host";
+	static final String X_FORWARDED_HOST = "X-Forwarded-Host";
+	static final String X_FORWARDED_FOR = "X-Forwarded-For";
+	static final String FORWARDED = "Forwarded";
+	static final String SEC_FETCH_SITE = "Sec-Fetch-Site";
+
+	private static final int ORIGIN_BIT = 1;
+	private static final int REFERER_BIT = 1 << 1;
+	private static final int HOST_BIT = 1 << 2;
+	private static final int X_FORWARDED_HOST_BIT = 1 << 3;
+	private static final int TRUSTED_FORWARDED_HOST_BIT = 1 << 4;
+
+	private final ScrutinizedRequest request;
+
+	private int readHeaders;
+
+	private int duplicateHeaders;
+
+	private String origin;
+
+	private String referer;
+
+	private String host;
+
+	private String forwardedHost;
+
+	private String trustedForwardedHost;
+
+	RequestHeaders(ScrutinizedRequest request) {
+		this.request = requireNonNull(request);
+	}
+
+	/**
+	 * Provides the first value of the Origin header, or {@code null} if the request does not have one.
+	 */
+	String getOrigin() {
+		if ((readHeaders & ORIGIN_BIT) == 0) {
+			origin = read(ORIGIN, ORIGIN_BIT);
+		}
+		return origin;
+	}
+
+	/**
+	 * Provides the first value of the Referer header, or {@code null} if the request does not have one.
+	 */
+	String getReferer() {
+		if ((readHeaders & REFERER_BIT) == 0) {
+			referer = read(REFERER, REFERER_BIT);
+		}
+		return referer;
+	}
+
+	/**
+	 * Provides the first value of the Host header, or {@code null} if the request does not have one.
+	 */
+	String getHost() {
+		if ((readHeaders & HOST_BIT) == 0) {
+			host = read(HOST, HOST_BIT);
+		}
+		return host;
+	}
+
+	/**
+	 * Provides the first value of the X-Forwarded-Host header, or {@code null} if the request does not have one.
+	 */
+	String getForwardedHost() {
+		if ((readHeaders & X_FORWARDED_HOST_BIT) == 0) {
+			forwardedHost = read(X_FORWARDED_HOST, X_FORWARDED_HOST_BIT);
+		}
+		return forwardedHost;
+	}
+
+	/**
+	 * Provides the host sent by the client according to the Forwarded header or, if the request has none, the
+	 * X-Forwarded-Host header, as added by the outermost of the given trusted proxies. Returns {@code null} if the
+	 * request was not sent by a trusted proxy, or if the header that is used does not provide a host, in which case
+	 * the Host header applies: X-Forwarded-Host is not consulted when the request has a Forwarded header.
+	 */
+	String getTrustedForwardedHost(AddressTrie trustedProxies) {
+		if ((readHeaders & TRUSTED_FORWARDED_HOST_BIT) == 0) {
+			readHeaders |= TRUSTED_FORWARDED_HOST_BIT;
+			trustedForwardedHost = readTrustedForwardedHost(trustedProxies);
+		}
+		return trustedForwardedHost;
+	}
+
+	boolean isOriginDuplicated() {
+		return getOrigin() != null && (duplicateHeaders & ORIGIN_BIT) != 0;
+	}
+
+	boolean isRefererDuplicated() {
+		return getReferer() != null && (duplicateHeaders & REFERER_BIT) != 0;
+	}
+
+	boolean isHostDuplicated() {
+		return getHost() != null && (duplicateHeaders & HOST_BIT) != 0;
+	}
+
+	boolean isForwardedHostDuplicated() {
+		return getForwardedHost() != null && (duplicateHeaders & X_FORWARDED_HOST_BIT) != 0;
+	}
+
+	private String readTrustedForwardedHost(AddressTrie trustedProxies) {
+		if (!trustedProxies.contains(request.getRemoteAddress())) {
+			return null;
+		}
+		Iterator<String> forwarded = request.getHeaders(FORWARDED);
+		if (forwarded.hasNext()) {
+			return ForwardedHeaders.forwardedHost(forwarded, trustedProxies);
+		}
+		Iterator<String> forwardedHosts = request.getHeaders(X_FORWARDED_HOST);
+		if (!forwardedHosts.hasNext()) {
+			return null;
+		}
+		return ForwardedHeaders.xForwardedHost(forwardedHosts, request.getHeaders(X_FORWARDED_FOR), trustedProxies);
+	}
+
+	private String read(String name, int bit) {
+		readHeaders |= bit;
+		Iterator<String> values = request.getHeaders(name);
+		if (!values.hasNext()) {
+			return null;
+		}
+		String value = values.next();
+		if (values.hasNext()) {
+			duplicateHeaders |= bit;
+		}
+		return value;
+	}
+}
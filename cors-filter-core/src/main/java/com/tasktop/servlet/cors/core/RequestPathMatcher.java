@@ -13,39 +13,39 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  *******************************************************************************/
-package com.tasktop.servlet.cors;
-
-import static com.tasktop.servlet.cors.Preconditions.checkArgument;
-import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.joining;
+package com.tasktop.servlet.cors.core;
 
 import java.text.MessageFormat;
 import java.util.List;
-import java.util.regex.Pattern;
-
-import javax.servlet.http.HttpServletRequest;
 
 class RequestPathMatcher {
-	private static final String PATTERN_OR = "|";
+	private final PathPrefixAutomaton pathPrefixes;
 
-	private final Pattern pathPattern;
+	// the context path is the same for every request, so it is only decoded when it changes
+	private volatile DecodedPath contextPath = new DecodedPath("");
 
 	RequestPathMatcher(List<String> paths) {
-		requireNonNull(paths);
-		checkArgument(!paths.isEmpty());
-		this.pathPattern = Pattern.compile(
-				"^(" + paths.stream().map(UriDecoder::decode).map(Pattern::quote).collect(joining(PATTERN_OR)) + ").*");
+		this.pathPrefixes = new PathPrefixAutomaton(paths);
 	}
 
-	boolean matches(HttpServletRequest request) {
-		return pathPattern.matcher(getRequestUriWithoutContextPath(request)).matches();
+	boolean matches(ScrutinizedRequest request) {
+		return matches(request.getRequestUri(), request.getContextPath());
 	}
 
-	private String getRequestUriWithoutContextPath(HttpServletRequest request) {
-		String requestUri = UriDecoder.decode(request.getRequestURI());
-		String contextPath = UriDecoder.decode(request.getContextPath());
+	boolean matches(String encodedRequestUri, String encodedContextPath) {
+		String requestUri = UriDecoder.decode(encodedRequestUri);
+		String contextPath = decodeContextPath(encodedContextPath);
 		checkContextPath(requestUri, contextPath);
-		return requestUri.substring(contextPath.length());
+		return pathPrefixes.matchesPrefix(requestUri, contextPath.length());
+	}
+
+	private String decodeContextPath(String path) {
+		DecodedPath decodedPath = contextPath;
+		if (!decodedPath.path.equals(path)) {
+			decodedPath = new DecodedPath(path);
+			contextPath = decodedPath;
+		}
+		return decodedPath.decoded;
 	}
 
 	private void checkContextPath(String requestUri, String contextPath) {
@@ -54,4 +54,16 @@ class RequestPathMatcher {
 					MessageFormat.format("Path \"{1}\" must start with context path \"{1}\"", requestUri, contextPath));
 		}
 	}
+
+	private static class DecodedPath {
+
+		private final String path;
+
+		private final String decoded;
+
+		DecodedPath(String path) {
+			this.path = path;
+			this.decoded = UriDecoder.decode(path);
+		}
+	}
 }
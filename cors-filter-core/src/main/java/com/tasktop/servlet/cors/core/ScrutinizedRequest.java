@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import java.util.Iterator;
+
+/**
+ * The parts of an HTTP request that are scrutinized by {@link CorsHeaderScrutinizer}, so that it can be adapted to
+ * the API of any server.
+ */
+public interface ScrutinizedRequest {
+
+	String getMethod();
+
+	/**
+	 * Provides the path of the request URI as sent by the client, including the context path but excluding the query
+	 * string.
+	 */
+	String getRequestUri();
+
+	/**
+	 * Provides the prefix of the request URI that identifies the application, which is empty for applications that
+	 * are not deployed under a context path.
+	 */
+	String getContextPath();
+
+	/**
+	 * Provides the values of the header with the given case-insensitive name, which is empty if the request does not
+	 * have such a header. The iterators returned for several headers may be used at the same time, so implementations
+	 * must not share them.
+	 */
+	Iterator<String> getHeaders(String name);
+
+	/**
+	 * Provides the IP address of the client or proxy that sent the request, which is only needed when the
+	 * {@code trusted-proxies} init parameter is specified. The default implementation provides {@code null}, in which
+	 * case the headers added by proxies are not trusted.
+	 */
+	default String getRemoteAddress() {
+		return null;
+	}
+}
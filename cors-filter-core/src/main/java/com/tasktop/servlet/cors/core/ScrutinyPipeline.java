@@ -0,0 +1,815 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * The sequence of checks applied to each request, compiled from a {@link Policy} and the features enabled by the
+ * init parameters. Each check is a small stage object that either decides the verdict or passes the request on to the
+ * next stage, and stages that cannot affect the verdict under the current configuration are left out when the
+ * pipeline is compiled, rather than being skipped by a branch on every request. Since a pipeline is only compiled
+ * when the policy changes, each call to a next stage usually sees a single implementation and can be inlined.
+ * Pipelines are immutable, and {@link #describe()} provides the compiled stages for debugging.
+ */
+class ScrutinyPipeline {
+
+	private static final String HEADER_ACCESS_CONTROL_REQUEST_METHOD = "Access-Control-Request-Method";
+
+	private static final String METHOD_OPTIONS = "OPTIONS";
+
+	private final Policy policy;
+
+	private final Optional<HostVerdictCache> originVerdictCache;
+
+	private final Optional<IdnHostConverter> idnConverter;
+
+	private final Optional<RejectionTracker> rejectionTracker;
+
+	private final Optional<AuditLog> auditLog;
+
+	private final Optional<DoubleSubmitTokens> tokens;
+
+	// the exclusion paths of a policy without host policies, which are checked before any stage
+	private final Optional<RequestPathMatcher> pathExclusion;
+
+	private final RequestStage firstStage;
+
+	/**
+	 * Compiles the stages for the given policy. The other arguments are the features that are not part of the policy,
+	 * which are shared by the pipelines compiled for successive policies.
+	 */
+	ScrutinyPipeline(Policy policy, Optional<HostVerdictCache> originVerdictCache,
+			Optional<IdnHostConverter> idnConverter, Optional<RejectionTracker> rejectionTracker,
+			Optional<AuditLog> auditLog, Optional<DoubleSubmitTokens> tokens, RejectionReport rejectionReport) {
+		this.policy = requireNonNull(policy);
+		this.originVerdictCache = requireNonNull(originVerdictCache);
+		this.idnConverter = requireNonNull(idnConverter);
+		this.rejectionTracker = requireNonNull(rejectionTracker);
+		this.auditLog = requireNonNull(auditLog);
+		this.tokens = requireNonNull(tokens);
+		RequestStage stage;
+		if (policy.getHostPolicies().isEmpty()) {
+			this.pathExclusion = policy.getRequestExclusionMatcher();
+			stage = compileChecks(policy);
+		} else {
+			this.pathExclusion = Optional.empty();
+			Map<String, PolicyStage> hostStages = new TreeMap<>();
+			policy.getHostPolicies().forEach(
+					(host, hostPolicy) -> hostStages.put(host, compileChecksWithExclusion(hostPolicy)));
+			stage = new HostPolicyStage(policy.getTrustedProxies(), hostStages, compileChecksWithExclusion(policy));
+		}
+		if (policy.getMode() == Mode.REPORT_ONLY) {
+			stage = new SamplingStage(policy.getReportOnlySampleRate(), policy.getPreflightResponse().isPresent(),
+					rejectionReport, stage);
+		}
+		if (policy.getPreflightResponse().isPresent()) {
+			stage = new PreflightStage(stage);
+		}
+		this.firstStage = stage;
+	}
+
+	Policy getPolicy() {
+		return policy;
+	}
+
+	Verdict scrutinize(ScrutinizedRequest request) {
+		return isExcludedPath(request.getRequestUri(), request.getContextPath()) ? Verdict.EXCLUDED
+				: scrutinizeIncludedPath(request);
+	}
+
+	/**
+	 * Indicates whether requests with the given path are excluded from scrutiny whatever their host, which is decided
+	 * before a request is adapted for scrutiny.
+	 */
+	boolean isExcludedPath(String requestUri, String contextPath) {
+		return pathExclusion.isPresent() && pathExclusion.get().matches(requestUri, contextPath);
+	}
+
+	/**
+	 * Scrutinizes a request whose path is not excluded by {@link #isExcludedPath}, without checking it again.
+	 */
+	Verdict scrutinizeIncludedPath(ScrutinizedRequest request) {
+		return firstStage.scrutinize(request);
+	}
+
+	/**
+	 * Describes the compiled stages, one per line in the order in which they are applied, with the stages that only
+	 * apply to some requests indented below the condition that selects them.
+	 */
+	String describe() {
+		Description description = new Description();
+		if (pathExclusion.isPresent()) {
+			description.stage("exclusion paths");
+		}
+		firstStage.describe(description);
+		return description.toString();
+	}
+
+	/**
+	 * Compiles the stages that depend on the settings which may differ between virtual hosts, apart from the exclusion
+	 * paths.
+	 */
+	private PolicyStage compileChecks(Policy policy) {
+		Optional<AddressTrie> trustedProxies = policy.getTrustedProxies();
+		HostComparison originComparison = new HostComparison(originVerdictCache, policy.getAllowedOrigins(),
+				idnConverter);
+		HostComparison refererComparison = new HostComparison(Optional.empty(), policy.getAllowedOrigins(),
+				idnConverter);
+		return compileMethodPolicies(policy.getMethodPolicies(), methodPolicy -> {
+			HeaderStage headerStage = AllowStage.INSTANCE;
+			boolean compareHosts = methodPolicy == MethodPolicy.ENFORCE;
+			headerStage = new UriHeaderStage(UriHeader.REFERER, trustedProxies,
+					compareHosts ? Optional.of(refererComparison) : Optional.empty(), headerStage);
+			headerStage = new UriHeaderStage(UriHeader.ORIGIN, trustedProxies,
+					compareHosts ? Optional.of(originComparison) : Optional.empty(), headerStage);
+			if (compareHosts && tokens.isPresent()) {
+				headerStage = new TokenStage(tokens.get(), headerStage);
+			}
+			if (policy.isFetchMetadataEnabled()) {
+				headerStage = new FetchMetadataStage(compareHosts && !policy.getAllowedOrigins().isPresent(),
+						headerStage);
+			}
+			if (rejectionTracker.isPresent()) {
+				headerStage = new AdaptiveBlockingStage(rejectionTracker.get(), trustedProxies, headerStage);
+			}
+			if (auditLog.isPresent()) {
+				headerStage = new AuditStage(auditLog.get(), trustedProxies, headerStage);
+			}
+			return new ReadHeadersStage(headerStage);
+		});
+	}
+
+	/**
+	 * Compiles the checks of the policy of a virtual host, or of other hosts, which start with its exclusion paths.
+	 */
+	private PolicyStage compileChecksWithExclusion(Policy policy) {
+		PolicyStage stage = compileChecks(policy);
+		if (policy.getRequestExclusionMatcher().isPresent()) {
+			stage = new ExclusionStage(policy.getRequestExclusionMatcher().get(), stage);
+		}
+		return stage;
+	}
+
+	private static PolicyStage compileMethodPolicies(MethodPolicyTable methodPolicies,
+			Function<MethodPolicy, PolicyStage> compileHeaderChecks) {
+		Set<MethodPolicy> usedPolicies = methodPolicies.getPolicies();
+		PolicyStage[] stages = new PolicyStage[MethodPolicy.values().length];
+		for (MethodPolicy methodPolicy : usedPolicies) {
+			stages[methodPolicy.ordinal()] = methodPolicy == MethodPolicy.SKIP ? AllowRequestStage.INSTANCE
+					: compileHeaderChecks.apply(methodPolicy);
+		}
+		if (usedPolicies.size() == 1) {
+			return stages[usedPolicies.iterator().next().ordinal()];
+		}
+		return new MethodPolicyStage(methodPolicies, stages);
+	}
+
+	private static String getEffectiveHost(Optional<AddressTrie> trustedProxies, RequestHeaders headers) {
+		String hostHeader = trustedProxies.isPresent() ? headers.getTrustedForwardedHost(trustedProxies.get())
+				: headers.getForwardedHost();
+		return hostHeader == null ? headers.getHost() : hostHeader;
+	}
+
+	private static boolean isEmpty(String headerValue) {
+		return headerValue.trim().isEmpty();
+	}
+
+	private static boolean isPreflightRequest(ScrutinizedRequest request) {
+		return request.getMethod().equals(METHOD_OPTIONS)
+				&& request.getHeaders(HEADER_ACCESS_CONTROL_REQUEST_METHOD).hasNext();
+	}
+
+	/**
+	 * A stage that only needs the request.
+	 */
+	interface RequestStage {
+
+		Verdict scrutinize(ScrutinizedRequest request);
+
+		void describe(Description description);
+	}
+
+	/**
+	 * A stage compiled for the settings of a policy, which is either applied to the request directly or selected by
+	 * the {@link HostPolicyStage} after it has started reading the headers of the request, in which case it continues
+	 * with the same {@link RequestHeaders} view so that no header is read twice.
+	 */
+	interface PolicyStage extends RequestStage {
+
+		Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers);
+	}
+
+	/**
+	 * A stage that reads the headers of the request through a {@link RequestHeaders} view, at most once each.
+	 */
+	interface HeaderStage {
+
+		Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers);
+
+		void describe(Description description);
+	}
+
+	private enum UriHeader {
+
+		ORIGIN(RequestHeaders.ORIGIN),
+
+		REFERER(RequestHeaders.REFERER);
+
+		private final String headerName;
+
+		private UriHeader(String headerName) {
+			this.headerName = headerName;
+		}
+	}
+
+	/**
+	 * In report-only mode, scrutinizes a sample of requests and reports those that would have been rejected, so that
+	 * the cost of requests that are not sampled is a single draw from a thread-local random number generator. When
+	 * preflight responses are enabled, preflight requests are always scrutinized, since only an allowed preflight
+	 * request may be answered.
+	 */
+	private static final class SamplingStage implements RequestStage {
+
+		private final double sampleRate;
+
+		private final boolean scrutinizingPreflights;
+
+		private final RejectionReport rejectionReport;
+
+		private final RequestStage next;
+
+		SamplingStage(double sampleRate, boolean scrutinizingPreflights, RejectionReport rejectionReport,
+				RequestStage next) {
+			this.sampleRate = sampleRate;
+			this.scrutinizingPreflights = scrutinizingPreflights;
+			this.rejectionReport = rejectionReport;
+			this.next = next;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request) {
+			if (ThreadLocalRandom.current().nextDouble() >= sampleRate
+					&& !(scrutinizingPreflights && isPreflightRequest(request))) {
+				return Verdict.NOT_SAMPLED;
+			}
+			rejectionReport.recordSample();
+			Verdict verdict = next.scrutinize(request);
+			if (verdict.isAllowed()) {
+				return verdict;
+			}
+			Iterator<String> origins = request.getHeaders(RequestHeaders.ORIGIN);
+			rejectionReport.recordRejection(origins.hasNext() ? origins.next() : null, verdict);
+			return Verdict.REPORTED;
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("report-only sampling, rate " + sampleRate
+					+ (scrutinizingPreflights ? ", all preflight requests" : ""));
+			next.describe(description);
+		}
+	}
+
+	/**
+	 * Answers allowed preflight requests. In report-only mode, preflight requests that would have been rejected are
+	 * reported and passed on unanswered, so that report-only mode never grants more than enforcement would. Excluded
+	 * requests are passed on.
+	 */
+	private static final class PreflightStage implements RequestStage {
+
+		private final RequestStage next;
+
+		PreflightStage(RequestStage next) {
+			this.next = next;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request) {
+			Verdict verdict = next.scrutinize(request);
+			if (verdict == Verdict.ALLOWED && isPreflightRequest(request)) {
+				return Verdict.PREFLIGHT;
+			}
+			return verdict;
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("preflight response to allowed requests");
+			next.describe(description);
+		}
+	}
+
+	/**
+	 * Selects the stages compiled for the policy of the effective host of the request, if it has one.
+	 */
+	private static final class HostPolicyStage implements RequestStage {
+
+		private final Optional<AddressTrie> trustedProxies;
+
+		private final Map<String, PolicyStage> hostStages;
+
+		private final HostTable<PolicyStage> hostTable;
+
+		private final PolicyStage defaultStage;
+
+		HostPolicyStage(Optional<AddressTrie> trustedProxies, Map<String, PolicyStage> hostStages,
+				PolicyStage defaultStage) {
+			this.trustedProxies = trustedProxies;
+			this.hostStages = hostStages;
+			this.hostTable = new HostTable<>(hostStages);
+			this.defaultStage = defaultStage;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request) {
+			RequestHeaders headers = new RequestHeaders(request);
+			String host = getEffectiveHost(trustedProxies, headers);
+			PolicyStage stage = host == null ? defaultStage : hostTable.get(host, defaultStage);
+			return stage.scrutinize(request, headers);
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("host policy");
+			hostStages.forEach((host, stage) -> description.branch("host " + host, stage));
+			description.branch("other hosts", defaultStage);
+		}
+	}
+
+	private static final class ExclusionStage implements PolicyStage {
+
+		private final RequestPathMatcher matcher;
+
+		private final PolicyStage next;
+
+		ExclusionStage(RequestPathMatcher matcher, PolicyStage next) {
+			this.matcher = matcher;
+			this.next = next;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request) {
+			return matcher.matches(request) ? Verdict.EXCLUDED : next.scrutinize(request);
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			return matcher.matches(request) ? Verdict.EXCLUDED : next.scrutinize(request, headers);
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("exclusion paths");
+			next.describe(description);
+		}
+	}
+
+	/**
+	 * Selects the stages for the policy of the request method. Only compiled when methods have different policies.
+	 */
+	private static final class MethodPolicyStage implements PolicyStage {
+
+		private final MethodPolicyTable methodPolicies;
+
+		private final PolicyStage[] stages;
+
+		MethodPolicyStage(MethodPolicyTable methodPolicies, PolicyStage[] stages) {
+			this.methodPolicies = methodPolicies;
+			this.stages = stages;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request) {
+			return stages[methodPolicies.get(request.getMethod()).ordinal()].scrutinize(request);
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			return stages[methodPolicies.get(request.getMethod()).ordinal()].scrutinize(request, headers);
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("method policy");
+			for (MethodPolicy methodPolicy : MethodPolicy.values()) {
+				PolicyStage stage = stages[methodPolicy.ordinal()];
+				if (stage != null) {
+					description.branch(methodPolicy.getParameterValue(), stage);
+				}
+			}
+		}
+	}
+
+	private static final class AllowRequestStage implements PolicyStage {
+
+		static final AllowRequestStage INSTANCE = new AllowRequestStage();
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request) {
+			return Verdict.ALLOWED;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			return Verdict.ALLOWED;
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("allow");
+		}
+	}
+
+	/**
+	 * Creates the view of the {@link RequestHeaders} of the request, which is small and short-lived enough to be
+	 * allocated for each request, unless the {@link HostPolicyStage} has already created it.
+	 */
+	private static final class ReadHeadersStage implements PolicyStage {
+
+		private final HeaderStage next;
+
+		ReadHeadersStage(HeaderStage next) {
+			this.next = next;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request) {
+			return next.scrutinize(request, new RequestHeaders(request));
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			return next.scrutinize(request, headers);
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("read headers");
+			next.describe(description);
+		}
+	}
+
+	private static final class AuditStage implements HeaderStage {
+
+		private final AuditLog auditLog;
+
+		private final Optional<AddressTrie> trustedProxies;
+
+		private final HeaderStage next;
+
+		AuditStage(AuditLog auditLog, Optional<AddressTrie> trustedProxies, HeaderStage next) {
+			this.auditLog = auditLog;
+			this.trustedProxies = trustedProxies;
+			this.next = next;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			Verdict verdict = next.scrutinize(request, headers);
+			if (!verdict.isAllowed()) {
+				auditLog.record(System.currentTimeMillis(), request.getMethod(), request.getRequestUri(),
+						headers.getOrigin(), headers.getReferer(), getEffectiveHost(trustedProxies, headers), verdict);
+			}
+			return verdict;
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("audit log of rejections");
+			next.describe(description);
+		}
+	}
+
+	/**
+	 * Rejects requests whose Origin host is blocked, and counts the requests rejected because their Origin is not
+	 * allowed towards blocking its host. Other rejections, such as duplicate or empty headers, are not counted, since
+	 * they say nothing about the Origin.
+	 */
+	private static final class AdaptiveBlockingStage implements HeaderStage {
+
+		private final RejectionTracker rejectionTracker;
+
+		private final Optional<AddressTrie> trustedProxies;
+
+		private final HeaderStage next;
+
+		AdaptiveBlockingStage(RejectionTracker rejectionTracker, Optional<AddressTrie> trustedProxies,
+				HeaderStage next) {
+			this.rejectionTracker = rejectionTracker;
+			this.trustedProxies = trustedProxies;
+			this.next = next;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			String origin = headers.getOrigin();
+			if (origin == null) {
+				return next.scrutinize(request, headers);
+			}
+			int hostStart = UriHostScanner.uriHostStart(origin);
+			int hostEnd = hostStart == UriHostScanner.NOT_FOUND ? UriHostScanner.NOT_FOUND
+					: UriHostScanner.uriHostEnd(origin, hostStart);
+			if (hostEnd == UriHostScanner.NOT_FOUND || isEffectiveHost(origin, hostStart, hostEnd, headers)) {
+				return next.scrutinize(request, headers);
+			}
+			long now = System.nanoTime();
+			if (rejectionTracker.isBlocked(origin, hostStart, hostEnd, now)) {
+				return Verdict.BLOCKED_ORIGIN;
+			}
+			Verdict verdict = next.scrutinize(request, headers);
+			if (verdict == Verdict.HOST_MISMATCH || verdict == Verdict.CROSS_SITE) {
+				rejectionTracker.recordRejection(origin, hostStart, hostEnd, now);
+			}
+			return verdict;
+		}
+
+		/**
+		 * Indicates whether the Origin host is the effective host of the request, which is never blocked so that
+		 * requests forged with the host of the application cannot block its own pages.
+		 */
+		private boolean isEffectiveHost(String origin, int hostStart, int hostEnd, RequestHeaders headers) {
+			String host = getEffectiveHost(trustedProxies, headers);
+			return host != null && AsciiHosts.regionEqualsIgnoreAsciiCase(origin, hostStart, hostEnd, host, 0,
+					UriHostScanner.hostHeaderHostEnd(host));
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("adaptive blocking of Origin host");
+			next.describe(description);
+		}
+	}
+
+	/**
+	 * Decides the verdict from the Sec-Fetch-Site header sent by browsers when it is conclusive, so that the Origin and
+	 * Referer headers of most requests need not be parsed. Requests from older browsers, which do not send the header,
+	 * and requests from the same site, which may or may not be from the same origin, are passed on. Cross-site requests
+	 * are only rejected by the stage when no origins are allowed, since they may otherwise come from an allowed origin.
+	 */
+	private static final class FetchMetadataStage implements HeaderStage {
+
+		private final boolean rejectingCrossSite;
+
+		private final HeaderStage next;
+
+		FetchMetadataStage(boolean rejectingCrossSite, HeaderStage next) {
+			this.rejectingCrossSite = rejectingCrossSite;
+			this.next = next;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			Iterator<String> values = request.getHeaders(RequestHeaders.SEC_FETCH_SITE);
+			if (!values.hasNext()) {
+				return next.scrutinize(request, headers);
+			}
+			String site = values.next();
+			if (values.hasNext()) {
+				return next.scrutinize(request, headers);
+			}
+			switch (site) {
+			case "same-origin":
+			case "none":
+				return Verdict.ALLOWED;
+			case "cross-site":
+				return rejectingCrossSite ? Verdict.CROSS_SITE : next.scrutinize(request, headers);
+			default:
+				return next.scrutinize(request, headers);
+			}
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("Sec-Fetch-Site header, allow same-origin and none"
+					+ (rejectingCrossSite ? ", reject cross-site" : ""));
+			next.describe(description);
+		}
+	}
+
+	/**
+	 * Requires a valid token in requests that have neither an Origin nor a Referer header.
+	 */
+	private static final class TokenStage implements HeaderStage {
+
+		private final DoubleSubmitTokens tokens;
+
+		private final HeaderStage next;
+
+		TokenStage(DoubleSubmitTokens tokens, HeaderStage next) {
+			this.tokens = tokens;
+			this.next = next;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			if (headers.getOrigin() != null || headers.getReferer() != null) {
+				return next.scrutinize(request, headers);
+			}
+			return tokens.verify(request, System.currentTimeMillis());
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("token in " + tokens.getCookieName() + " cookie and " + tokens.getHeaderName()
+					+ " header, without Origin or Referer");
+			next.describe(description);
+		}
+	}
+
+	/**
+	 * Checks the Origin or Referer header, if present, and compares its host with the effective Host header unless
+	 * the method policy only validates headers.
+	 */
+	private static final class UriHeaderStage implements HeaderStage {
+
+		private final UriHeader uriHeader;
+
+		private final Optional<AddressTrie> trustedProxies;
+
+		private final Optional<HostComparison> hostComparison;
+
+		private final HeaderStage next;
+
+		UriHeaderStage(UriHeader uriHeader, Optional<AddressTrie> trustedProxies,
+				Optional<HostComparison> hostComparison, HeaderStage next) {
+			this.uriHeader = uriHeader;
+			this.trustedProxies = trustedProxies;
+			this.hostComparison = hostComparison;
+			this.next = next;
+		}
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			boolean origin = uriHeader == UriHeader.ORIGIN;
+			String headerValue = origin ? headers.getOrigin() : headers.getReferer();
+			if (headerValue == null) {
+				return next.scrutinize(request, headers);
+			}
+			boolean duplicated = origin ? headers.isOriginDuplicated() : headers.isRefererDuplicated();
+			Verdict verdict = duplicated ? Verdict.DUPLICATE_HEADER : validate(headers, headerValue);
+			return verdict == Verdict.ALLOWED ? next.scrutinize(request, headers) : verdict;
+		}
+
+		private Verdict validate(RequestHeaders headers, String headerValue) {
+			if (isEmpty(headerValue)) {
+				return Verdict.EMPTY_HEADER;
+			}
+			if (!trustedProxies.isPresent() && headers.isForwardedHostDuplicated()) {
+				return Verdict.DUPLICATE_HEADER;
+			}
+			if (headers.getHost() == null) {
+				return Verdict.MISSING_HOST;
+			}
+			if (headers.isHostDuplicated()) {
+				return Verdict.DUPLICATE_HEADER;
+			}
+			String hostHeader = getEffectiveHost(trustedProxies, headers);
+			if (isEmpty(hostHeader)) {
+				return Verdict.EMPTY_HEADER;
+			}
+			if (!hostComparison.isPresent() || hostComparison.get().matches(hostHeader, headerValue)) {
+				return Verdict.ALLOWED;
+			}
+			return Verdict.HOST_MISMATCH;
+		}
+
+		@Override
+		public void describe(Description description) {
+			StringBuilder text = new StringBuilder(uriHeader.headerName).append(" header, ");
+			text.append(trustedProxies.isPresent() ? "host forwarded by trusted proxies" : "X-Forwarded-Host or Host");
+			if (hostComparison.isPresent()) {
+				text.append(", ").append(hostComparison.get().describe());
+			} else {
+				text.append(", headers only");
+			}
+			description.stage(text.toString());
+			next.describe(description);
+		}
+	}
+
+	private static final class AllowStage implements HeaderStage {
+
+		static final AllowStage INSTANCE = new AllowStage();
+
+		@Override
+		public Verdict scrutinize(ScrutinizedRequest request, RequestHeaders headers) {
+			return Verdict.ALLOWED;
+		}
+
+		@Override
+		public void describe(Description description) {
+			description.stage("allow");
+		}
+	}
+
+	/**
+	 * Compares the host of a URI header with the effective Host header, using the verdict cache if present, and
+	 * otherwise checks whether it is an allowed origin. Neither the cache nor the IDN converter depends on the policy,
+	 * so that cached verdicts remain valid when the policy is reloaded.
+	 */
+	private static final class HostComparison {
+
+		private final Optional<HostVerdictCache> verdictCache;
+
+		private final Optional<DomainTrie> allowedOrigins;
+
+		private final Optional<IdnHostConverter> idnConverter;
+
+		HostComparison(Optional<HostVerdictCache> verdictCache, Optional<DomainTrie> allowedOrigins,
+				Optional<IdnHostConverter> idnConverter) {
+			this.verdictCache = verdictCache;
+			this.allowedOrigins = allowedOrigins;
+			this.idnConverter = idnConverter;
+		}
+
+		boolean matches(String hostHeader, String uriHeaderValue) {
+			return hostMatches(hostHeader, uriHeaderValue) || isHostAllowed(uriHeaderValue);
+		}
+
+		private boolean isHostAllowed(String uriHeaderValue) {
+			return allowedOrigins.isPresent()
+					&& UriHostScanner.isHostAllowed(uriHeaderValue, allowedOrigins.get(), idnConverter);
+		}
+
+		private boolean hostMatches(String hostHeader, String uriHeaderValue) {
+			if (!verdictCache.isPresent()) {
+				return UriHostScanner.hostMatches(uriHeaderValue, hostHeader, idnConverter);
+			}
+			HostVerdictCache cache = verdictCache.get();
+			Boolean cachedVerdict = cache.get(uriHeaderValue, hostHeader);
+			if (cachedVerdict != null) {
+				return cachedVerdict;
+			}
+			boolean verdict = UriHostScanner.hostMatches(uriHeaderValue, hostHeader, idnConverter);
+			cache.put(uriHeaderValue, hostHeader, verdict);
+			return verdict;
+		}
+
+		String describe() {
+			StringBuilder text = new StringBuilder("compare host");
+			if (verdictCache.isPresent()) {
+				text.append(" through verdict cache");
+			}
+			if (idnConverter.isPresent()) {
+				text.append(" with IDN conversion");
+			}
+			if (allowedOrigins.isPresent()) {
+				text.append(", or allowed origins");
+			}
+			return text.toString();
+		}
+	}
+
+	/**
+	 * Accumulates the description of the stages, indenting the stages selected by a condition.
+	 */
+	static final class Description {
+
+		private static final String INDENTATION = "  ";
+
+		private final StringBuilder text = new StringBuilder();
+
+		private int depth;
+
+		void stage(String stage) {
+			for (int level = 0; level < depth; ++level) {
+				text.append(INDENTATION);
+			}
+			text.append(stage).append('\n');
+		}
+
+		void branch(String condition, RequestStage stage) {
+			stage(condition + ":");
+			++depth;
+			stage.describe(this);
+			--depth;
+		}
+
+		@Override
+		public String toString() {
+			return text.toString();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes percent-encoded URI paths as specified by RFC 3986. Unlike {@link java.net.URLDecoder}, which decodes form
+ * data, {@code +} is not decoded to a space. Paths without percent-encoded octets are returned as-is without
+ * allocating, and malformed percent-encoded octets are left undecoded.
+ */
+class UriDecoder {
+
+	private static final char ESCAPE = '%';
+
+	private static final int NOT_FOUND = -1;
+
+	public static String decode(String path) {
+		int firstEscape = path.indexOf(ESCAPE);
+		if (firstEscape == NOT_FOUND) {
+			return path;
+		}
+		return decode(path, firstEscape);
+	}
+
+	private static String decode(String path, int firstEscape) {
+		int length = path.length();
+		StringBuilder decoded = new StringBuilder(length);
+		decoded.append(path, 0, firstEscape);
+		byte[] octets = new byte[(length - firstEscape) / 3];
+		int index = firstEscape;
+		while (index < length) {
+			int octetCount = 0;
+			while (isEscapedOctet(path, index)) {
+				octets[octetCount++] = (byte) ((hexValue(path.charAt(index + 1)) << 4)
+						| hexValue(path.charAt(index + 2)));
+				index += 3;
+			}
+			if (octetCount > 0) {
+				decoded.append(new String(octets, 0, octetCount, StandardCharsets.UTF_8));
+			} else {
+				decoded.append(path.charAt(index++));
+			}
+		}
+		return decoded.toString();
+	}
+
+	private static boolean isEscapedOctet(String path, int index) {
+		return index + 2 < path.length() && path.charAt(index) == ESCAPE
+				&& hexValue(path.charAt(index + 1)) != NOT_FOUND && hexValue(path.charAt(index + 2)) != NOT_FOUND;
+	}
+
+	private static int hexValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return NOT_FOUND;
+	}
+
+	private UriDecoder() {
+		// prevent instantiation
+	}
+}
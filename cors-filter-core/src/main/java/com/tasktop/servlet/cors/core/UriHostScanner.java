@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Optional;
+
+/**
+ * Scans the host out of the authority section of an absolute URI such as the value of an Origin or Referer header,
+ * without parsing the rest of the URI. Scanning works on index ranges of the original {@link String} so that no
+ * substrings are created, and malformed input produces a negative result rather than an exception. Hosts are compared
+ * in canonical form: without the port, ignoring ASCII case and, optionally, by the ASCII form of internationalized
+ * host names.
+ */
+class UriHostScanner {
+
+	static final int NOT_FOUND = -1;
+
+	private static final char MAX_ASCII = 0x7f;
+
+	/**
+	 * Indicates whether the host of the given URI is equal to the host portion (i.e. without the port) of the given
+	 * Host header value, ignoring ASCII case. IPv6 literals are compared including their brackets.
+	 *
+	 * @return {@code false} if the URI has no authority, has an empty host or is malformed
+	 */
+	public static boolean hostMatches(String uri, String hostHeader) {
+		return hostMatches(uri, hostHeader, Optional.empty());
+	}
+
+	/**
+	 * Indicates whether the host of the given URI is equal to the host portion of the given Host header value, like
+	 * {@link #hostMatches(String, String)}. When an IDN converter is given, hosts with non-ASCII characters are
+	 * accepted on either side and are compared by their ASCII form; ASCII hosts are always compared in place.
+	 *
+	 * @return {@code false} if the URI has no authority, has an empty host or is malformed
+	 */
+	public static boolean hostMatches(String uri, String hostHeader, Optional<IdnHostConverter> idnConverter) {
+		requireNonNull(uri);
+		requireNonNull(hostHeader);
+		int authorityStart = authorityStart(uri);
+		if (authorityStart == NOT_FOUND) {
+			return false;
+		}
+		int authorityEnd = authorityEnd(uri, authorityStart);
+		int hostStart = hostStart(uri, authorityStart, authorityEnd);
+		int hostEnd = hostEnd(uri, hostStart, authorityEnd, idnConverter.isPresent());
+		if (hostEnd == NOT_FOUND) {
+			return false;
+		}
+		int hostHeaderHostEnd = hostHeaderHostEnd(hostHeader);
+		if (AsciiHosts.regionEqualsIgnoreAsciiCase(uri, hostStart, hostEnd, hostHeader, 0, hostHeaderHostEnd)) {
+			return true;
+		}
+		return idnConverter.isPresent()
+				&& idnHostsMatch(uri, hostStart, hostEnd, hostHeader, hostHeaderHostEnd, idnConverter.get());
+	}
+
+	/**
+	 * Indicates whether the host of the given URI is in the given set of allowed hosts.
+	 *
+	 * @return {@code false} if the URI has no authority, has an empty host or is malformed
+	 */
+	public static boolean isHostAllowed(String uri, DomainTrie allowedHosts) {
+		return isHostAllowed(uri, allowedHosts, Optional.empty());
+	}
+
+	/**
+	 * Indicates whether the host of the given URI is in the given set of allowed hosts, like
+	 * {@link #isHostAllowed(String, DomainTrie)}. When an IDN converter is given, a host with non-ASCII characters is
+	 * looked up by its ASCII form.
+	 *
+	 * @return {@code false} if the URI has no authority, has an empty host or is malformed
+	 */
+	public static boolean isHostAllowed(String uri, DomainTrie allowedHosts, Optional<IdnHostConverter> idnConverter) {
+		requireNonNull(uri);
+		requireNonNull(allowedHosts);
+		int authorityStart = authorityStart(uri);
+		if (authorityStart == NOT_FOUND) {
+			return false;
+		}
+		int authorityEnd = authorityEnd(uri, authorityStart);
+		int hostStart = hostStart(uri, authorityStart, authorityEnd);
+		int hostEnd = hostEnd(uri, hostStart, authorityEnd, idnConverter.isPresent());
+		if (hostEnd == NOT_FOUND) {
+			return false;
+		}
+		if (!idnConverter.isPresent() || isAscii(uri, hostStart, hostEnd)) {
+			return allowedHosts.contains(uri, hostStart, hostEnd);
+		}
+		String asciiHost = idnConverter.get().toAscii(uri, hostStart, hostEnd);
+		return asciiHost != null && allowedHosts.contains(asciiHost, 0, asciiHost.length());
+	}
+
+	/**
+	 * Finds the start of the host of the given URI, which may be preceded by user information.
+	 *
+	 * @return {@link #NOT_FOUND} if the URI has no authority
+	 */
+	static int uriHostStart(String uri) {
+		int authorityStart = authorityStart(uri);
+		return authorityStart == NOT_FOUND ? NOT_FOUND
+				: hostStart(uri, authorityStart, authorityEnd(uri, authorityStart));
+	}
+
+	/**
+	 * Finds the end of the host of the given URI, whose host starts at the given index, accepting non-ASCII characters
+	 * in registered names.
+	 *
+	 * @return {@link #NOT_FOUND} if the host is empty or malformed
+	 */
+	static int uriHostEnd(String uri, int hostStart) {
+		return hostEnd(uri, hostStart, authorityEnd(uri, hostStart), true);
+	}
+
+	private static boolean idnHostsMatch(String uri, int hostStart, int hostEnd, String hostHeader,
+			int hostHeaderHostEnd, IdnHostConverter idnConverter) {
+		if (isAscii(uri, hostStart, hostEnd) && isAscii(hostHeader, 0, hostHeaderHostEnd)) {
+			return false;
+		}
+		String asciiHost = idnConverter.toAscii(uri, hostStart, hostEnd);
+		String asciiHostHeaderHost = idnConverter.toAscii(hostHeader, 0, hostHeaderHostEnd);
+		return asciiHost != null && asciiHost.equalsIgnoreCase(asciiHostHeaderHost);
+	}
+
+	/**
+	 * Finds the end of the host portion of a Host header value, which is the closing bracket of an IPv6 literal or
+	 * the colon preceding the port.
+	 */
+	static int hostHeaderHostEnd(String hostHeader) {
+		int length = hostHeader.length();
+		if (length > 0 && hostHeader.charAt(0) == '[') {
+			int literalEnd = indexOf(hostHeader, ']', 1, length);
+			return literalEnd == NOT_FOUND ? length : literalEnd + 1;
+		}
+		int portStart = indexOf(hostHeader, ':', 0, length);
+		return portStart == NOT_FOUND ? length : portStart;
+	}
+
+	private static int hostStart(String uri, int authorityStart, int authorityEnd) {
+		int userInfoEnd = lastIndexOf(uri, '@', authorityStart, authorityEnd);
+		return userInfoEnd == NOT_FOUND ? authorityStart : userInfoEnd + 1;
+	}
+
+	private static int hostEnd(String uri, int hostStart, int authorityEnd, boolean allowNonAscii) {
+		int hostEnd;
+		if (hostStart < authorityEnd && uri.charAt(hostStart) == '[') {
+			int literalEnd = indexOf(uri, ']', hostStart, authorityEnd);
+			if (literalEnd == NOT_FOUND || !isIpLiteral(uri, hostStart + 1, literalEnd)) {
+				return NOT_FOUND;
+			}
+			hostEnd = literalEnd + 1;
+		} else {
+			hostEnd = indexOf(uri, ':', hostStart, authorityEnd);
+			if (hostEnd == NOT_FOUND) {
+				hostEnd = authorityEnd;
+			}
+			if (hostEnd == hostStart || !isRegisteredName(uri, hostStart, hostEnd, allowNonAscii)) {
+				return NOT_FOUND;
+			}
+		}
+		if (hostEnd < authorityEnd && (uri.charAt(hostEnd) != ':' || !isPort(uri, hostEnd + 1, authorityEnd))) {
+			return NOT_FOUND;
+		}
+		return hostEnd;
+	}
+
+	/**
+	 * Finds the start of the authority, i.e. the index following {@code scheme://}.
+	 */
+	private static int authorityStart(String uri) {
+		int length = uri.length();
+		if (length == 0 || !isAlpha(uri.charAt(0))) {
+			return NOT_FOUND;
+		}
+		for (int index = 1; index < length; ++index) {
+			char c = uri.charAt(index);
+			if (c == ':') {
+				return uri.startsWith("//", index + 1) ? index + 3 : NOT_FOUND;
+			}
+			if (!isSchemeCharacter(c)) {
+				return NOT_FOUND;
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	private static int authorityEnd(String uri, int authorityStart) {
+		int length = uri.length();
+		for (int index = authorityStart; index < length; ++index) {
+			char c = uri.charAt(index);
+			if (c == '/' || c == '?' || c == '#') {
+				return index;
+			}
+		}
+		return length;
+	}
+
+	private static boolean isRegisteredName(String uri, int start, int end, boolean allowNonAscii) {
+		for (int index = start; index < end; ++index) {
+			char c = uri.charAt(index);
+			if (!isUnreserved(c) && !isSubDelimiter(c) && c != '%' && !(allowNonAscii && c > MAX_ASCII)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isIpLiteral(String uri, int start, int end) {
+		if (start == end) {
+			return false;
+		}
+		for (int index = start; index < end; ++index) {
+			char c = uri.charAt(index);
+			if (!isHexDigit(c) && c != ':' && c != '.' && c != '%' && !isUnreserved(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isPort(String uri, int start, int end) {
+		for (int index = start; index < end; ++index) {
+			char c = uri.charAt(index);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSchemeCharacter(char c) {
+		return isAlpha(c) || isDigit(c) || c == '+' || c == '-' || c == '.';
+	}
+
+	private static boolean isUnreserved(char c) {
+		return isAlpha(c) || isDigit(c) || c == '-' || c == '.' || c == '_' || c == '~';
+	}
+
+	private static boolean isSubDelimiter(char c) {
+		switch (c) {
+		case '!':
+		case '$':
+		case '&':
+		case '\'':
+		case '(':
+		case ')':
+		case '*':
+		case '+':
+		case ',':
+		case ';':
+		case '=':
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isAlpha(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isHexDigit(char c) {
+		return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+	}
+
+	private static boolean isAscii(String value, int start, int end) {
+		for (int index = start; index < end; ++index) {
+			if (value.charAt(index) > MAX_ASCII) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(String value, char c, int start, int end) {
+		for (int index = start; index < end; ++index) {
+			if (value.charAt(index) == c) {
+				return index;
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	private static int lastIndexOf(String value, char c, int start, int end) {
+		for (int index = end - 1; index >= start; --index) {
+			if (value.charAt(index) == c) {
+				return index;
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	private UriHostScanner() {
+		// prevent instantiation
+	}
+}
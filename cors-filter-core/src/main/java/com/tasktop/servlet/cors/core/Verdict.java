@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+/**
+ * The outcome of scrutinizing the headers of a request. Rejected requests carry the reason for the rejection, which
+ * is for internal use only and must not be disclosed in the response.
+ */
+public enum Verdict {
+
+	ALLOWED,
+
+	/**
+	 * The request path is excluded from scrutiny by the {@code exclusion-paths} init parameter.
+	 */
+	EXCLUDED,
+
+	/**
+	 * The request is an allowed CORS preflight request, which must be answered with the headers provided by
+	 * {@link CorsHeaderScrutinizer#writePreflightHeaders} instead of being passed on.
+	 */
+	PREFLIGHT,
+
+	/**
+	 * The request was not scrutinized because the {@code mode} init parameter is {@code report-only} and the request
+	 * was not sampled.
+	 */
+	NOT_SAMPLED,
+
+	/**
+	 * The request failed scrutiny, but is allowed because the {@code mode} init parameter is {@code report-only}. The
+	 * reason is counted in the {@link ReportOnlySummary}.
+	 */
+	REPORTED,
+
+	/**
+	 * A header that must have a single value was provided more than once.
+	 */
+	DUPLICATE_HEADER,
+
+	/**
+	 * A header was provided with an empty value.
+	 */
+	EMPTY_HEADER,
+
+	/**
+	 * The host of the Origin or Referer header does not match the effective Host header.
+	 */
+	HOST_MISMATCH,
+
+	/**
+	 * The Host header is required to check the Origin or Referer header, but was not provided.
+	 */
+	MISSING_HOST,
+
+	/**
+	 * The Sec-Fetch-Site header states that a request whose method policy is {@code enforce} was sent by another site,
+	 * while the {@code fetch-metadata-enabled} init parameter is {@code true} and no origins are allowed.
+	 */
+	CROSS_SITE,
+
+	/**
+	 * The request has neither an Origin nor a Referer header, and lacks the token cookie or header required by the
+	 * {@code token-secret} init parameter.
+	 */
+	MISSING_TOKEN,
+
+	/**
+	 * The token header of a request that has neither an Origin nor a Referer header does not match its token cookie,
+	 * or is not a valid token that has not expired.
+	 */
+	INVALID_TOKEN,
+
+	/**
+	 * The host of the Origin header has not been allowed too often recently, and is blocked without further scrutiny as
+	 * specified by the {@code adaptive-blocking-*} init parameters.
+	 */
+	BLOCKED_ORIGIN;
+
+	public boolean isAllowed() {
+		return this == ALLOWED || this == EXCLUDED || this == PREFLIGHT || this == NOT_SAMPLED || this == REPORTED;
+	}
+}
@@ -13,13 +13,31 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  *******************************************************************************/
-package com.tasktop.servlet.cors;
+package com.tasktop.servlet.cors.core;
 
-class InitParameterNames {
+/**
+ * Provides the counters of the cache of host verdicts maintained by {@link CorsHeaderScrutinizer} when it is enabled
+ * by the {@code verdict-cache-enabled} init parameter.
+ */
+public interface VerdictCacheStatistics {
 
-	public static final String EXCLUSION_PATHS = "exclusion-paths";
+	/**
+	 * Provides the number of lookups that were answered by the cache.
+	 */
+	long getHitCount();
 
-	private InitParameterNames() {
-		// prevent instantiation
-	}
+	/**
+	 * Provides the number of lookups that were not answered by the cache.
+	 */
+	long getMissCount();
+
+	/**
+	 * Provides the number of entries that were evicted to make room for more frequently used entries.
+	 */
+	long getEvictionCount();
+
+	/**
+	 * Provides the maximum number of entries held by the cache.
+	 */
+	int getCapacity();
 }
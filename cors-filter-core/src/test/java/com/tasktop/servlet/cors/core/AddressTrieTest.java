@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class AddressTrieTest {
+
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void constructorRejectsEmptyList() {
+		thrown.expect(IllegalArgumentException.class);
+		new AddressTrie(Collections.emptyList());
+	}
+
+	@Test
+	public void constructorRejectsInvalidIpv4Address() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Not an IP address range: \"10.0.0.256/8\"");
+		new AddressTrie(Arrays.asList("10.0.0.256/8"));
+	}
+
+	@Test
+	public void constructorRejectsInvalidIpv6Address() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Not an IP address range: \"2001:db8::1::2\"");
+		new AddressTrie(Arrays.asList("2001:db8::1::2"));
+	}
+
+	@Test
+	public void constructorRejectsHostName() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Not an IP address range: \"proxy.example.com\"");
+		new AddressTrie(Arrays.asList("proxy.example.com"));
+	}
+
+	@Test
+	public void constructorRejectsTooLongPrefix() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Prefix length must be between 0 and 32: \"10.0.0.0/33\"");
+		new AddressTrie(Arrays.asList("10.0.0.0/33"));
+	}
+
+	@Test
+	public void constructorRejectsTooShortPrefixOfIpv4MappedIpv6Range() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Prefix length must be between 96 and 128: \"::ffff:10.0.0.0/95\"");
+		new AddressTrie(Arrays.asList("::ffff:10.0.0.0/95"));
+	}
+
+	@Test
+	public void containsIpv4Range() {
+		AddressTrie trie = new AddressTrie(Arrays.asList("10.0.0.0/8", "192.168.1.0/24", "203.0.113.7"));
+		assertThat(trie.contains("10.0.0.0")).isTrue();
+		assertThat(trie.contains("10.255.255.255")).isTrue();
+		assertThat(trie.contains("192.168.1.200")).isTrue();
+		assertThat(trie.contains("203.0.113.7")).isTrue();
+		assertThat(trie.contains("11.0.0.1")).isFalse();
+		assertThat(trie.contains("192.168.2.1")).isFalse();
+		assertThat(trie.contains("203.0.113.8")).isFalse();
+	}
+
+	@Test
+	public void containsIpv4RangeAsIpv4MappedIpv6Address() {
+		AddressTrie trie = new AddressTrie(Arrays.asList("10.0.0.0/8"));
+		assertThat(trie.contains("::ffff:10.1.2.3")).isTrue();
+		assertThat(trie.contains("0:0:0:0:0:ffff:a01:203")).isTrue();
+		assertThat(trie.contains("::ffff:11.1.2.3")).isFalse();
+		assertThat(trie.contains("::10.1.2.3")).isFalse();
+	}
+
+	@Test
+	public void containsIpv4MappedIpv6Range() {
+		AddressTrie trie = new AddressTrie(Arrays.asList("::ffff:10.0.0.0/104", "::ffff:192.168.1.7"));
+		assertThat(trie.contains("10.1.2.3")).isTrue();
+		assertThat(trie.contains("::ffff:10.1.2.3")).isTrue();
+		assertThat(trie.contains("192.168.1.7")).isTrue();
+		assertThat(trie.contains("11.1.2.3")).isFalse();
+		assertThat(trie.contains("192.168.1.8")).isFalse();
+		assertThat(trie.contains("::10.1.2.3")).isFalse();
+	}
+
+	@Test
+	public void containsRejectsNonAsciiDigits() {
+		AddressTrie trie = new AddressTrie(Arrays.asList("2001:db8::/32", "10.0.0.0/8"));
+		assertThat(trie.contains("2001:db8::1")).isTrue();
+		assertThat(trie.contains("2001:db\uff18::1")).isFalse();
+		assertThat(trie.contains("\u0662001:db8::1")).isFalse();
+		assertThat(trie.contains("1\uff10.0.0.1")).isFalse();
+		assertThat(trie.contains("::ffff:1\uff10.0.0.1")).isFalse();
+	}
+
+	@Test
+	public void containsIpv6Range() {
+		AddressTrie trie = new AddressTrie(Arrays.asList("2001:db8::/32", "fd00::1", "::1"));
+		assertThat(trie.contains("2001:db8::1")).isTrue();
+		assertThat(trie.contains("2001:DB8:FFFF:0:0:0:0:1")).isTrue();
+		assertThat(trie.contains("2001:0db8:0000::")).isTrue();
+		assertThat(trie.contains("fd00::1")).isTrue();
+		assertThat(trie.contains("fd00:0:0:0:0:0:0:1")).isTrue();
+		assertThat(trie.contains("0:0:0:0:0:0:0:1")).isTrue();
+		assertThat(trie.contains("::1%lo")).isTrue();
+		assertThat(trie.contains("2001:db9::1")).isFalse();
+		assertThat(trie.contains("fd00::2")).isFalse();
+		assertThat(trie.contains("::")).isFalse();
+	}
+
+	@Test
+	public void containsEverythingWithZeroPrefixLength() {
+		AddressTrie trie = new AddressTrie(Arrays.asList("::/0"));
+		assertThat(trie.contains("2001:db8::1")).isTrue();
+		assertThat(trie.contains("192.0.2.1")).isTrue();
+	}
+
+	@Test
+	public void containsWithIndexes() {
+		AddressTrie trie = new AddressTrie(Arrays.asList("192.0.2.0/24", "2001:db8::/32"));
+		assertThat(trie.contains("for=192.0.2.43:4711", 4, 14)).isTrue();
+		assertThat(trie.contains("[2001:db8:cafe::17]:4711", 1, 18)).isTrue();
+	}
+
+	@Test
+	public void doesNotContainInvalidAddresses() {
+		AddressTrie trie = new AddressTrie(Arrays.asList("::/0"));
+		assertThat(trie.contains((String) null)).isFalse();
+		assertThat(trie.contains("")).isFalse();
+		assertThat(trie.contains("unknown")).isFalse();
+		assertThat(trie.contains("_hidden")).isFalse();
+		assertThat(trie.contains("192.0.2")).isFalse();
+		assertThat(trie.contains("192.0.2.1.5")).isFalse();
+		assertThat(trie.contains("192.0.2.256")).isFalse();
+		assertThat(trie.contains("1:2:3:4:5:6:7")).isFalse();
+		assertThat(trie.contains("1:2:3:4:5:6:7:8:9")).isFalse();
+		assertThat(trie.contains("1::2::3")).isFalse();
+		assertThat(trie.contains("1:2:3:4:5:6:7:8::")).isFalse();
+		assertThat(trie.contains("12345::")).isFalse();
+		assertThat(trie.contains("1:2:3:4:5:6:7:")).isFalse();
+		assertThat(trie.contains("g::1")).isFalse();
+	}
+}
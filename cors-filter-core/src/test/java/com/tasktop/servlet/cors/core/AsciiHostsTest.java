@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class AsciiHostsTest {
+
+	@Test
+	public void hashIgnoresAsciiCase() {
+		assertThat(AsciiHosts.hash("https://Example.COM", 8, 19)).isEqualTo(AsciiHosts.hash("example.com", 0, 11));
+		assertThat(AsciiHosts.hash("example.org", 0, 11)).isNotEqualTo(AsciiHosts.hash("example.com", 0, 11));
+	}
+
+	@Test
+	public void withoutTrailingDot() {
+		assertThat(AsciiHosts.withoutTrailingDot("example.com.", 0, 12)).isEqualTo(11);
+		assertThat(AsciiHosts.withoutTrailingDot("example.com..", 0, 13)).isEqualTo(12);
+		assertThat(AsciiHosts.withoutTrailingDot("example.com", 0, 11)).isEqualTo(11);
+		assertThat(AsciiHosts.withoutTrailingDot("a.:80", 0, 2)).isEqualTo(1);
+		assertThat(AsciiHosts.withoutTrailingDot(".", 1, 1)).isEqualTo(1);
+	}
+
+	@Test
+	public void regionEqualsIgnoreAsciiCase() {
+		assertThat(AsciiHosts.regionEqualsIgnoreAsciiCase("http://A-Host:80", 7, 13, "a-host", 0, 6)).isTrue();
+		assertThat(AsciiHosts.regionEqualsIgnoreAsciiCase("a-host", 0, 6, "b-host", 0, 6)).isFalse();
+		assertThat(AsciiHosts.regionEqualsIgnoreAsciiCase("a-host", 0, 6, "a-hos", 0, 5)).isFalse();
+	}
+
+	@Test
+	public void regionEqualsIgnoreAsciiCaseDoesNotFoldNonAsciiCharacters() {
+		assertThat(AsciiHosts.regionEqualsIgnoreAsciiCase("\u212a-host", 0, 6, "k-host", 0, 6)).isFalse();
+		assertThat(AsciiHosts.regionEqualsIgnoreAsciiCase("\u0130-host", 0, 6, "i-host", 0, 6)).isFalse();
+	}
+
+	@Test
+	public void toLowerAscii() {
+		assertThat(AsciiHosts.toLowerAscii("https://Example.COM:443", 8, 19)).isEqualTo("example.com");
+		assertThat(AsciiHosts.toLowerAscii("\u212a-Host", 0, 6)).isEqualTo("\u212a-host");
+		assertThat(AsciiHosts.toLowerAscii('Z')).isEqualTo('z');
+		assertThat(AsciiHosts.toLowerAscii('\u00c4')).isEqualTo('\u00c4');
+	}
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AuditLogTest {
+
+	private static final long TIMESTAMP = 1500000000123L;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Path file;
+
+	private AuditLog auditLog;
+
+	@Before
+	public void before() {
+		file = new File(folder.getRoot(), "cors-audit.log").toPath();
+	}
+
+	@After
+	public void after() {
+		if (auditLog != null) {
+			auditLog.close();
+		}
+	}
+
+	@Test
+	public void roundsCapacityUpToPowerOfTwo() {
+		assertThat(new AuditLog(file, 1, 1, 1).getCapacity()).isEqualTo(1);
+		assertThat(new AuditLog(file, 1000, 1, 1).getCapacity()).isEqualTo(1024);
+		assertThat(new AuditLog(file, 1024, 1, 1).getCapacity()).isEqualTo(1024);
+	}
+
+	@Test
+	public void writesRecords() throws IOException {
+		auditLog = new AuditLog(file, 16, 1024 * 1024, 2);
+		auditLog.start();
+		auditLog.record(TIMESTAMP, "POST", "/a-path", "http://a-host", null, "a-different-host",
+				Verdict.HOST_MISMATCH);
+		auditLog.record(TIMESTAMP, "PUT", "/another-path", null, "http://a-host/", null, Verdict.MISSING_HOST);
+		auditLog.close();
+		assertThat(read(file)).containsExactly(
+				"2017-07-14T02:40:00.123Z\tPOST\t/a-path\thttp://a-host\t-\ta-different-host\tHOST_MISMATCH",
+				"2017-07-14T02:40:00.123Z\tPUT\t/another-path\t-\thttp://a-host/\t-\tMISSING_HOST");
+		assertThat(auditLog.getWrittenCount()).isEqualTo(2);
+		assertThat(auditLog.getDroppedCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void appendsToExistingFile() throws IOException {
+		Files.write(file, "an existing record\n".getBytes(StandardCharsets.UTF_8));
+		auditLog = new AuditLog(file, 16, 1024 * 1024, 2);
+		auditLog.start();
+		auditLog.record(TIMESTAMP, "POST", "/a-path", "", null, null, Verdict.EMPTY_HEADER);
+		auditLog.close();
+		assertThat(read(file)).containsExactly("an existing record",
+				"2017-07-14T02:40:00.123Z\tPOST\t/a-path\t\t-\t-\tEMPTY_HEADER");
+	}
+
+	@Test
+	public void escapesControlCharacters() throws IOException {
+		auditLog = new AuditLog(file, 16, 1024 * 1024, 2);
+		auditLog.start();
+		auditLog.record(TIMESTAMP, "POST", "/a\\path", "http://a-host\n2017-07-14T00:00:00Z\tGET", null, "a\thost",
+				Verdict.HOST_MISMATCH);
+		auditLog.close();
+		assertThat(read(file)).containsExactly("2017-07-14T02:40:00.123Z\tPOST\t/a\\x5cpath"
+				+ "\thttp://a-host\\x0a2017-07-14T00:00:00Z\\x09GET\t-\ta\\x09host\tHOST_MISMATCH");
+	}
+
+	@Test
+	public void dropsRecordsWhenFull() {
+		auditLog = new AuditLog(file, 4, 1024 * 1024, 2);
+		for (int count = 0; count < 10; ++count) {
+			auditLog.record(TIMESTAMP, "POST", "/a-path", "http://a-host", null, "a-host", Verdict.HOST_MISMATCH);
+		}
+		assertThat(auditLog.getDroppedCount()).isEqualTo(6);
+	}
+
+	@Test
+	public void writesRecordsPublishedWhileFull() throws IOException {
+		auditLog = new AuditLog(file, 4, 1024 * 1024, 2);
+		for (int count = 0; count < 6; ++count) {
+			auditLog.record(TIMESTAMP, "POST", "/path-" + count, null, null, null, Verdict.BLOCKED_ORIGIN);
+		}
+		auditLog.start();
+		auditLog.close();
+		assertThat(read(file)).hasSize(4).allMatch(line -> line.matches(".*\t/path-[0-3]\t.*"));
+		assertThat(auditLog.getWrittenCount()).isEqualTo(4);
+		assertThat(auditLog.getDroppedCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void rotatesFiles() throws IOException {
+		String record = "2017-07-14T02:40:00.123Z\tPOST\t/a-path\t-\t-\t-\tBLOCKED_ORIGIN";
+		int recordSize = record.length() + 1;
+		auditLog = new AuditLog(file, 16, recordSize * 2, 3);
+		auditLog.start();
+		for (int count = 0; count < 7; ++count) {
+			auditLog.record(TIMESTAMP, "POST", "/a-path", null, null, null, Verdict.BLOCKED_ORIGIN);
+		}
+		auditLog.close();
+		assertThat(read(file)).containsExactly(record);
+		assertThat(read(file.resolveSibling("cors-audit.log.1"))).containsExactly(record, record);
+		assertThat(read(file.resolveSibling("cors-audit.log.2"))).containsExactly(record, record);
+		assertThat(file.resolveSibling("cors-audit.log.3")).doesNotExist();
+		assertThat(auditLog.getWrittenCount()).isEqualTo(7);
+	}
+
+	@Test
+	public void writesOversizedRecord() throws IOException {
+		auditLog = new AuditLog(file, 16, 10, 1);
+		auditLog.start();
+		auditLog.record(TIMESTAMP, "POST", "/a-path", null, null, null, Verdict.BLOCKED_ORIGIN);
+		auditLog.record(TIMESTAMP, "POST", "/another-path", null, null, null, Verdict.BLOCKED_ORIGIN);
+		auditLog.close();
+		assertThat(read(file))
+				.containsExactly("2017-07-14T02:40:00.123Z\tPOST\t/another-path\t-\t-\t-\tBLOCKED_ORIGIN");
+	}
+
+	private List<String> read(Path file) throws IOException {
+		return Files.readAllLines(file, StandardCharsets.UTF_8);
+	}
+}
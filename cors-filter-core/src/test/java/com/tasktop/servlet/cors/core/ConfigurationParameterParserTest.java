@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class ConfigurationParameterParserTest {
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void parseExclusionPathsRejectsEmptyValue() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("When specified, exclusion-paths must have at least one value");
+		ConfigurationParameterParser.parseExclusionPaths("   \t\n\r\n");
+	}
+
+	@Test
+	public void parseExclusionPathsWithMultipleValuesSeparatedByComma() {
+		List<String> value = ConfigurationParameterParser.parseExclusionPaths("one,two");
+		assertThat(value).containsExactly("/one", "/two");
+	}
+
+	@Test
+	public void parseExclusionPathsWithMultipleValuesSeparatedByWhitespace() {
+		List<String> value = ConfigurationParameterParser.parseExclusionPaths("  one\n\ttwo   ");
+		assertThat(value).containsExactly("/one", "/two");
+	}
+
+	@Test
+	public void parseExclusionPathsWithSingleValue() {
+		List<String> value = ConfigurationParameterParser.parseExclusionPaths("  one\n\t   ");
+		assertThat(value).containsExactly("/one");
+	}
+
+	@Test
+	public void parseExclusionPathsPrependsSlashOnlyIfNeeded() {
+		List<String> value = ConfigurationParameterParser.parseExclusionPaths("/one,two");
+		assertThat(value).containsExactly("/one", "/two");
+	}
+
+	@Test
+	public void parseExclusionPathsIgnoresEmptyValues() {
+		List<String> value = ConfigurationParameterParser.parseExclusionPaths("/one,,");
+		assertThat(value).containsExactly("/one");
+	}
+
+	@Test
+	public void parseExclusionPathsWithWildcardSegments() {
+		List<String> value = ConfigurationParameterParser.parseExclusionPaths("/api/*/internal, **/hooks/");
+		assertThat(value).containsExactly("/api/*/internal", "/**/hooks/");
+	}
+
+	@Test
+	public void parseExclusionPathsRejectsPartialWildcardSegments() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("exclusion-paths must only use \"*\" or \"**\" as an entire path segment: \"/api/v*/\"");
+		ConfigurationParameterParser.parseExclusionPaths("/one /api/v*/");
+	}
+
+	@Test
+	public void parseAllowedOrigins() {
+		List<String> value = ConfigurationParameterParser.parseAllowedOrigins(" Example.com,\n*.partner.org  a_host ");
+		assertThat(value).containsExactly("example.com", "*.partner.org", "a_host");
+	}
+
+	@Test
+	public void parseAllowedOriginsRejectsEmptyValue() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("When specified, allowed-origins must have at least one value");
+		ConfigurationParameterParser.parseAllowedOrigins(" , ");
+	}
+
+	@Test
+	public void parseAllowedOriginsRejectsOrigin() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage(
+				"allowed-origins must only contain host names, optionally prefixed by \"*.\": \"https://example.com\"");
+		ConfigurationParameterParser.parseAllowedOrigins("https://example.com");
+	}
+
+	@Test
+	public void parseAllowedOriginsRejectsPartialWildcard() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage(
+				"allowed-origins must only contain host names, optionally prefixed by \"*.\": \"a*.example.com\"");
+		ConfigurationParameterParser.parseAllowedOrigins("a*.example.com");
+	}
+
+	@Test
+	public void parseTokens() {
+		assertThat(ConfigurationParameterParser.parseTokens("a-parameter", " GET,POST\n X-Custom-Header "))
+				.containsExactly("GET", "POST", "X-Custom-Header");
+		assertThat(ConfigurationParameterParser.parseTokens("a-parameter", " ")).isEmpty();
+	}
+
+	@Test
+	public void parseTokensRejectsInvalidToken() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("a-parameter must only contain HTTP tokens: \"X-Header:\"");
+		ConfigurationParameterParser.parseTokens("a-parameter", "GET X-Header:");
+	}
+
+	@Test
+	public void parseHostPolicies() {
+		Map<String, String> entries = new LinkedHashMap<>();
+		entries.put("A-Host.example.com.allowed-origins", "a-partner.com");
+		entries.put("a-host.example.com.exclusion-paths", "/public/");
+		entries.put("192.0.2.1.exclusion-paths", "/");
+		Map<String, Map<String, String>> policies = ConfigurationParameterParser.parseHostPolicies(entries);
+		assertThat(policies).containsOnlyKeys("a-host.example.com", "192.0.2.1");
+		assertThat(policies.get("a-host.example.com")).containsOnly(entry("allowed-origins", "a-partner.com"),
+				entry("exclusion-paths", "/public/"));
+		assertThat(policies.get("192.0.2.1")).containsOnly(entry("exclusion-paths", "/"));
+	}
+
+	@Test
+	public void parseHostPoliciesRejectsOtherParameter() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("host-policy-file must only contain entries named HOST.PARAMETER, where HOST is a host "
+				+ "name without a port and PARAMETER is one of allowed-origins, exclusion-paths: \"a-host.mode\"");
+		ConfigurationParameterParser.parseHostPolicies(Collections.singletonMap("a-host.mode", "report-only"));
+	}
+
+	@Test
+	public void parseHostPoliciesRejectsPort() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("\"a-host:8080.allowed-origins\"");
+		ConfigurationParameterParser
+				.parseHostPolicies(Collections.singletonMap("a-host:8080.allowed-origins", "a-partner.com"));
+	}
+
+	@Test
+	public void parseHostPoliciesRejectsWildcard() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("\"*.example.com.allowed-origins\"");
+		ConfigurationParameterParser
+				.parseHostPolicies(Collections.singletonMap("*.example.com.allowed-origins", "a-partner.com"));
+	}
+
+	@Test
+	public void parseHostPoliciesRejectsMissingHost() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("\"allowed-origins\"");
+		ConfigurationParameterParser.parseHostPolicies(Collections.singletonMap("allowed-origins", "a-partner.com"));
+	}
+
+	@Test
+	public void parseTrustedProxies() {
+		assertThat(ConfigurationParameterParser.parseTrustedProxies(" 10.0.0.0/8, 192.0.2.1\n2001:db8::/32 "))
+				.containsExactly("10.0.0.0/8", "192.0.2.1", "2001:db8::/32");
+	}
+
+	@Test
+	public void parseTrustedProxiesRejectsEmptyValue() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("When specified, trusted-proxies must have at least one value");
+		ConfigurationParameterParser.parseTrustedProxies(" ");
+	}
+
+	@Test
+	public void parseTrustedProxiesRejectsHostName() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("trusted-proxies must only contain IP addresses, optionally followed by \"/\" and a "
+				+ "prefix length: \"proxy.example.com\"");
+		ConfigurationParameterParser.parseTrustedProxies("proxy.example.com");
+	}
+
+	@Test
+	public void parseMethodPolicies() {
+		assertThat(ConfigurationParameterParser.parseMethodPolicies(" GET=enforce, HEAD = headers-only\n*=skip "))
+				.containsExactly(entry("GET", MethodPolicy.ENFORCE), entry("HEAD", MethodPolicy.HEADERS_ONLY),
+						entry("*", MethodPolicy.SKIP));
+	}
+
+	@Test
+	public void parseMethodPoliciesConvertsMethodsToUpperCase() {
+		assertThat(ConfigurationParameterParser.parseMethodPolicies("get=skip, Propfind=enforce"))
+				.containsExactly(entry("GET", MethodPolicy.SKIP), entry("PROPFIND", MethodPolicy.ENFORCE));
+	}
+
+	@Test
+	public void parseMethodPoliciesRejectsEmptyValue() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("When specified, method-policy must have at least one value");
+		ConfigurationParameterParser.parseMethodPolicies(" , ");
+	}
+
+	@Test
+	public void parseMethodPoliciesRejectsUnknownPolicy() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("method-policy must be a list of METHOD=POLICY entries, where POLICY is one of "
+				+ "enforce, headers-only, skip: \"GET=allow\"");
+		ConfigurationParameterParser.parseMethodPolicies("GET=allow");
+	}
+
+	@Test
+	public void parseMethodPoliciesRejectsEntryWithoutPolicy() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("method-policy must be a list of METHOD=POLICY entries, where POLICY is one of "
+				+ "enforce, headers-only, skip: \"GET\"");
+		ConfigurationParameterParser.parseMethodPolicies("GET");
+	}
+
+	@Test
+	public void parseMode() {
+		assertThat(ConfigurationParameterParser.parseMode("enforce")).isEqualTo(Mode.ENFORCE);
+		assertThat(ConfigurationParameterParser.parseMode(" report-only\n")).isEqualTo(Mode.REPORT_ONLY);
+	}
+
+	@Test
+	public void parseModeRejectsUnknownMode() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("mode must be one of enforce, report-only: \"monitor\"");
+		ConfigurationParameterParser.parseMode("monitor");
+	}
+
+	@Test
+	public void parseSampleRate() {
+		assertThat(ConfigurationParameterParser.parseSampleRate("a-parameter", " 0.001 ")).isEqualTo(0.001);
+		assertThat(ConfigurationParameterParser.parseSampleRate("a-parameter", "1")).isEqualTo(1);
+	}
+
+	@Test
+	public void parseSampleRateRejectsZero() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("a-parameter must be a number greater than 0 and at most 1: \"0\"");
+		ConfigurationParameterParser.parseSampleRate("a-parameter", "0");
+	}
+
+	@Test
+	public void parseSampleRateRejectsPercentage() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("a-parameter must be a number greater than 0 and at most 1: \"5%\"");
+		ConfigurationParameterParser.parseSampleRate("a-parameter", "5%");
+	}
+
+	@Test
+	public void parseToken() {
+		assertThat(ConfigurationParameterParser.parseToken("a-parameter", " X-XSRF-TOKEN ")).isEqualTo("X-XSRF-TOKEN");
+	}
+
+	@Test
+	public void parseTokenRejectsSeparators() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("a-parameter must be an HTTP token: \"a;b\"");
+		ConfigurationParameterParser.parseToken("a-parameter", "a;b");
+	}
+
+	@Test
+	public void parseSecret() {
+		byte[] secret = new byte[32];
+		Arrays.fill(secret, (byte) 7);
+		assertThat(ConfigurationParameterParser.parseSecret("a-parameter",
+				" " + Base64.getEncoder().encodeToString(secret) + "\n")).isEqualTo(secret);
+	}
+
+	@Test
+	public void parseSecretRejectsShortSecret() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("a-parameter must be encoded in Base64 and have at least 32 bytes");
+		ConfigurationParameterParser.parseSecret("a-parameter", Base64.getEncoder().encodeToString(new byte[31]));
+	}
+
+	@Test
+	public void parseSecretRejectsInvalidBase64() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("a-parameter must be encoded in Base64 and have at least 32 bytes");
+		ConfigurationParameterParser.parseSecret("a-parameter", "not base64!");
+	}
+
+	@Test
+	public void parseBoolean() {
+		assertThat(ConfigurationParameterParser.parseBoolean("a-parameter", "true")).isTrue();
+		assertThat(ConfigurationParameterParser.parseBoolean("a-parameter", " TRUE\n")).isTrue();
+		assertThat(ConfigurationParameterParser.parseBoolean("a-parameter", "false")).isFalse();
+	}
+
+	@Test
+	public void parseBooleanRejectsOtherValues() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("a-parameter must be either true or false: \"yes\"");
+		ConfigurationParameterParser.parseBoolean("a-parameter", "yes");
+	}
+
+	@Test
+	public void parsePositiveInteger() {
+		assertThat(ConfigurationParameterParser.parsePositiveInteger("a-parameter", " 1024 ")).isEqualTo(1024);
+	}
+
+	@Test
+	public void parsePositiveIntegerRejectsZero() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("a-parameter must be a positive integer: \"0\"");
+		ConfigurationParameterParser.parsePositiveInteger("a-parameter", "0");
+	}
+
+	@Test
+	public void parsePositiveIntegerRejectsNonNumericValue() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("a-parameter must be a positive integer: \"many\"");
+		ConfigurationParameterParser.parsePositiveInteger("a-parameter", "many");
+	}
+}
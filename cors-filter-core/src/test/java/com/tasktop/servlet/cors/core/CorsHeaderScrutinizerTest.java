@@ -0,0 +1,638 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class CorsHeaderScrutinizerTest {
+
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final Map<String, String> parameters = new HashMap<>();
+
+	private final Map<String, List<String>> headers = new HashMap<>();
+
+	private final ScrutinizedRequest request = mock(ScrutinizedRequest.class);
+
+	@Before
+	public void before() {
+		doReturn("POST").when(request).getMethod();
+		doReturn("").when(request).getContextPath();
+		doReturn("/a-path").when(request).getRequestUri();
+		doAnswer(invocation -> headers.getOrDefault(invocation.getArguments()[0], Collections.emptyList()).iterator())
+				.when(request).getHeaders(any());
+	}
+
+	@Test
+	public void scrutinizeAllowsRequestWithoutOriginOrReferer() {
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeAllowsRequestWithMatchingOrigin() {
+		headers.put("Origin", Arrays.asList("https://a-host"));
+		headers.put("Host", Arrays.asList("a-host:443"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeRejectsRequestWithEmptyOrigin() {
+		headers.put("Origin", Arrays.asList(" "));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.EMPTY_HEADER);
+	}
+
+	@Test
+	public void scrutinizeRejectsRequestWithDuplicateReferer() {
+		headers.put("Referer", Arrays.asList("http://a-host/", "http://a-host/"));
+		headers.put("Host", Arrays.asList("a-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.DUPLICATE_HEADER);
+	}
+
+	@Test
+	public void scrutinizeRejectsRequestWithOriginWithoutHost() {
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.MISSING_HOST);
+	}
+
+	@Test
+	public void scrutinizeRejectsRequestWithOriginWithDifferentHost() {
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		headers.put("Host", Arrays.asList("a-different-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+	}
+
+	@Test
+	public void scrutinizeAllowsGetRequestWithOriginWithDifferentHost() {
+		doReturn("get").when(request).getMethod();
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		headers.put("Host", Arrays.asList("a-different-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeUsesMethodPolicy() {
+		parameters.put(InitParameterNames.METHOD_POLICY, "GET=enforce HEAD=headers-only PUT=skip");
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		headers.put("Host", Arrays.asList("a-different-host"));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		doReturn("GET").when(request).getMethod();
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		doReturn("HEAD").when(request).getMethod();
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		doReturn("POST").when(request).getMethod();
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		doReturn("PUT").when(request).getMethod();
+		headers.put("Origin", Arrays.asList("http://a-host", "http://another-host"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeUsesDefaultMethodPolicy() {
+		parameters.put(InitParameterNames.METHOD_POLICY, "*=headers-only");
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		headers.put("Host", Arrays.asList("a-different-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		headers.put("Origin", Arrays.asList(""));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.EMPTY_HEADER);
+	}
+
+	@Test
+	public void scrutinizeUsesForwardedHostFromTrustedProxy() {
+		parameters.put(InitParameterNames.TRUSTED_PROXIES, "10.0.0.0/8");
+		doReturn("10.0.0.1").when(request).getRemoteAddress();
+		headers.put("Origin", Arrays.asList("https://a-host"));
+		headers.put("Host", Arrays.asList("internal-host"));
+		headers.put("Forwarded", Arrays.asList("for=192.0.2.60;host=a-host, for=10.0.0.2;host=internal-host"));
+		headers.put("X-Forwarded-Host", Arrays.asList("another-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeUsesXForwardedHostOfOutermostTrustedProxy() {
+		parameters.put(InitParameterNames.TRUSTED_PROXIES, "10.0.0.0/8");
+		doReturn("10.0.0.1").when(request).getRemoteAddress();
+		headers.put("Origin", Arrays.asList("https://a-host"));
+		headers.put("Host", Arrays.asList("internal-host"));
+		headers.put("X-Forwarded-Host", Arrays.asList("spoofed-host, a-host", "internal-host"));
+		headers.put("X-Forwarded-For", Arrays.asList("10.0.0.3, 192.0.2.60", "10.0.0.2"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		headers.put("Origin", Arrays.asList("https://spoofed-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+	}
+
+	@Test
+	public void scrutinizeIgnoresXForwardedHostWhenForwardedHasNoHost() {
+		parameters.put(InitParameterNames.TRUSTED_PROXIES, "10.0.0.0/8");
+		doReturn("10.0.0.1").when(request).getRemoteAddress();
+		headers.put("Origin", Arrays.asList("https://spoofed-host"));
+		headers.put("Host", Arrays.asList("a-host"));
+		headers.put("Forwarded", Arrays.asList("for=192.0.2.60;proto=https"));
+		headers.put("X-Forwarded-Host", Arrays.asList("spoofed-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.put("Origin", Arrays.asList("https://a-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeIgnoresForwardedHeadersFromUntrustedClient() {
+		parameters.put(InitParameterNames.TRUSTED_PROXIES, "10.0.0.0/8");
+		doReturn("192.0.2.60").when(request).getRemoteAddress();
+		headers.put("Origin", Arrays.asList("https://a-host"));
+		headers.put("Host", Arrays.asList("internal-host"));
+		headers.put("Forwarded", Arrays.asList("host=a-host"));
+		headers.put("X-Forwarded-Host", Arrays.asList("a-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.put("Origin", Arrays.asList("https://internal-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeAllowsRequestWithAllowedOrigin() {
+		parameters.put(InitParameterNames.ALLOWED_ORIGINS, "*.partner.com, other.org");
+		headers.put("Origin", Arrays.asList("https://app.partner.com"));
+		headers.put("Referer", Arrays.asList("https://other.org/page"));
+		headers.put("Host", Arrays.asList("a-host"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+
+		headers.put("Origin", Arrays.asList("https://partner.com"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+	}
+
+	@Test
+	public void scrutinizeAllowsRequestWithAllowedOriginUsingVerdictCache() {
+		parameters.put(InitParameterNames.ALLOWED_ORIGINS, "*.partner.com");
+		parameters.put(InitParameterNames.VERDICT_CACHE_ENABLED, "true");
+		headers.put("Origin", Arrays.asList("https://app.partner.com"));
+		headers.put("Host", Arrays.asList("a-host"));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		assertThat(scrutinizer.getVerdictCacheStatistics().get().getHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void scrutinizeAnswersPreflightRequest() {
+		parameters.put(InitParameterNames.PREFLIGHT_ENABLED, "true");
+		parameters.put(InitParameterNames.PREFLIGHT_MAX_AGE, "600");
+		parameters.put(InitParameterNames.ALLOWED_ORIGINS, "*.partner.com");
+		doReturn("OPTIONS").when(request).getMethod();
+		headers.put("Origin", Arrays.asList("https://app.partner.com"));
+		headers.put("Host", Arrays.asList("a-host"));
+		headers.put("Access-Control-Request-Method", Arrays.asList("PUT"));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.PREFLIGHT);
+
+		Map<String, String> responseHeaders = new HashMap<>();
+		scrutinizer.writePreflightHeaders(request, responseHeaders::put);
+		assertThat(responseHeaders).containsEntry("Access-Control-Allow-Origin", "https://app.partner.com")
+				.containsEntry("Access-Control-Allow-Methods", "GET, HEAD, POST")
+				.containsEntry("Access-Control-Max-Age", "600").doesNotContainKey("Access-Control-Allow-Headers");
+	}
+
+	@Test
+	public void scrutinizeRejectsPreflightRequestWithOriginWithDifferentHost() {
+		parameters.put(InitParameterNames.PREFLIGHT_ENABLED, "true");
+		doReturn("OPTIONS").when(request).getMethod();
+		headers.put("Origin", Arrays.asList("https://other-host"));
+		headers.put("Host", Arrays.asList("a-host"));
+		headers.put("Access-Control-Request-Method", Arrays.asList("PUT"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+	}
+
+	@Test
+	public void scrutinizeAllowsOptionsRequestWhenPreflightIsNotEnabledOrRequested() {
+		doReturn("OPTIONS").when(request).getMethod();
+		headers.put("Access-Control-Request-Method", Arrays.asList("PUT"));
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+
+		parameters.put(InitParameterNames.PREFLIGHT_ENABLED, "true");
+		headers.clear();
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void writePreflightHeadersWritesNothingWhenPreflightIsNotEnabled() {
+		Map<String, String> responseHeaders = new HashMap<>();
+		scrutinizer().writePreflightHeaders(request, responseHeaders::put);
+		assertThat(responseHeaders).isEmpty();
+	}
+
+	@Test
+	public void scrutinizeBlocksRepeatedlyRejectedOrigin() {
+		parameters.put(InitParameterNames.ADAPTIVE_BLOCKING_ENABLED, "true");
+		parameters.put(InitParameterNames.ADAPTIVE_BLOCKING_THRESHOLD, "2");
+		headers.put("Origin", Arrays.asList("http://attacker"));
+		headers.put("Host", Arrays.asList("a-host"));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.BLOCKED_ORIGIN);
+
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeBlocksOriginHostRegardlessOfSchemeAndPort() {
+		parameters.put(InitParameterNames.ADAPTIVE_BLOCKING_ENABLED, "true");
+		parameters.put(InitParameterNames.ADAPTIVE_BLOCKING_THRESHOLD, "2");
+		headers.put("Host", Arrays.asList("a-host"));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		headers.put("Origin", Arrays.asList("http://attacker"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.put("Origin", Arrays.asList("https://Attacker:8443"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.put("Origin", Arrays.asList("https://attacker"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.BLOCKED_ORIGIN);
+	}
+
+	@Test
+	public void scrutinizeOnlyCountsDisallowedOrigins() {
+		parameters.put(InitParameterNames.ADAPTIVE_BLOCKING_ENABLED, "true");
+		parameters.put(InitParameterNames.ADAPTIVE_BLOCKING_THRESHOLD, "2");
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		headers.put("Origin", Arrays.asList("http://attacker", "http://attacker"));
+		headers.put("Host", Arrays.asList("a-host"));
+		for (int count = 0; count < 4; ++count) {
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.DUPLICATE_HEADER);
+		}
+		headers.put("Origin", Arrays.asList("http://attacker"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+	}
+
+	@Test
+	public void scrutinizeNeverBlocksOriginOfEffectiveHost() {
+		parameters.put(InitParameterNames.ADAPTIVE_BLOCKING_ENABLED, "true");
+		parameters.put(InitParameterNames.ADAPTIVE_BLOCKING_THRESHOLD, "2");
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		for (int count = 0; count < 4; ++count) {
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.MISSING_HOST);
+		}
+		headers.put("Host", Arrays.asList("a-host"));
+		headers.put("Referer", Arrays.asList("http://a-host/a-page", "http://a-host/a-page"));
+		for (int count = 0; count < 4; ++count) {
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.DUPLICATE_HEADER);
+		}
+		headers.remove("Referer");
+		headers.put("Host", Arrays.asList("a-forged-host"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.BLOCKED_ORIGIN);
+
+		headers.put("Host", Arrays.asList("a-host:8080"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeDoesNotBlockRejectedOriginWhenAdaptiveBlockingIsDisabled() {
+		headers.put("Origin", Arrays.asList("http://attacker"));
+		headers.put("Host", Arrays.asList("a-host"));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		for (int count = 0; count < 100; ++count) {
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		}
+	}
+
+	@Test
+	public void scrutinizeExcludesRequestForExcludedPath() {
+		parameters.put(InitParameterNames.EXCLUSION_PATHS, "/a-path");
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		Verdict verdict = scrutinizer().scrutinize(request);
+		assertThat(verdict).isEqualTo(Verdict.EXCLUDED);
+		assertThat(verdict.isAllowed()).isTrue();
+	}
+
+	@Test
+	public void scrutinizePathExcludesRequestForExcludedPath() {
+		parameters.put(InitParameterNames.EXCLUSION_PATHS, "/a-path");
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		assertThat(scrutinizer.scrutinizePath("/a-context/a-path/a-page", "/a-context")).contains(Verdict.EXCLUDED);
+		assertThat(scrutinizer.scrutinizePath("/a-context/a-different-path", "/a-context")).isEmpty();
+		verifyZeroInteractions(request);
+	}
+
+	@Test
+	public void scrutinizePathLeavesExclusionPathsOfHostPoliciesToScrutinizeIncludedPath() throws IOException {
+		Path file = folder.newFile("host-policy.properties").toPath();
+		Files.write(file, "a-host.allowed-origins = a-partner.com\n".getBytes(StandardCharsets.UTF_8));
+		parameters.put(InitParameterNames.HOST_POLICY_FILE, file.toString());
+		parameters.put(InitParameterNames.EXCLUSION_PATHS, "/public/");
+		headers.put("Origin", Arrays.asList("http://a-partner.com"));
+		headers.put("Host", Arrays.asList("b-host"));
+		doReturn("/public/a-page").when(request).getRequestUri();
+		try (CorsHeaderScrutinizer scrutinizer = scrutinizer()) {
+			assertThat(scrutinizer.scrutinizePath("/public/a-page", "")).isEmpty();
+			assertThat(scrutinizer.scrutinizeIncludedPath(request)).isEqualTo(Verdict.EXCLUDED);
+		}
+	}
+
+	@Test
+	public void scrutinizeUsesPolicyFile() throws IOException, InterruptedException {
+		Path file = folder.newFile("cors-policy.properties").toPath();
+		Files.write(file, "exclusion-paths = /a-path\n".getBytes(StandardCharsets.UTF_8));
+		parameters.put(InitParameterNames.POLICY_FILE, file.toString());
+		parameters.put(InitParameterNames.EXCLUSION_PATHS, "/other-path");
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		headers.put("Host", Arrays.asList("a-different-host"));
+		try (CorsHeaderScrutinizer scrutinizer = scrutinizer()) {
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.EXCLUDED);
+
+			Files.write(file, "allowed-origins = a-host\n".getBytes(StandardCharsets.UTF_8));
+			long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+			while (scrutinizer.scrutinize(request) != Verdict.ALLOWED) {
+				assertThat(System.currentTimeMillis()).as("timed out").isLessThan(deadline);
+				Thread.sleep(10);
+			}
+			doReturn("/other-path").when(request).getRequestUri();
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.EXCLUDED);
+		}
+	}
+
+	@Test
+	public void constructorRejectsMissingPolicyFile() {
+		parameters.put(InitParameterNames.POLICY_FILE, new File(folder.getRoot(), "missing.properties").toString());
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Cannot read policy-file");
+		scrutinizer();
+	}
+
+	@Test
+	public void scrutinizeUsesHostPolicyFile() throws IOException {
+		Path file = folder.newFile("host-policy.properties").toPath();
+		Files.write(file, "a-host.allowed-origins = a-partner.com\n".getBytes(StandardCharsets.UTF_8));
+		parameters.put(InitParameterNames.HOST_POLICY_FILE, file.toString());
+		parameters.put(InitParameterNames.EXCLUSION_PATHS, "/public/");
+		headers.put("Origin", Arrays.asList("http://a-partner.com"));
+		headers.put("Host", Arrays.asList("a-host"));
+		try (CorsHeaderScrutinizer scrutinizer = scrutinizer()) {
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+			headers.put("Host", Arrays.asList("b-host"));
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+			doReturn("/public/a-page").when(request).getRequestUri();
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.EXCLUDED);
+			headers.put("Host", Arrays.asList("a-host"));
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.EXCLUDED);
+		}
+	}
+
+	@Test
+	public void scrutinizeReadsHostOnceWithHostPolicyFile() throws IOException {
+		Path file = folder.newFile("host-policy.properties").toPath();
+		Files.write(file, "a-host.allowed-origins = a-partner.com\n".getBytes(StandardCharsets.UTF_8));
+		parameters.put(InitParameterNames.HOST_POLICY_FILE, file.toString());
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		headers.put("Host", Arrays.asList("a-host"));
+		try (CorsHeaderScrutinizer scrutinizer = scrutinizer()) {
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		}
+		verify(request, times(1)).getHeaders("Host");
+		verify(request, times(1)).getHeaders("X-Forwarded-Host");
+	}
+
+	@Test
+	public void constructorRejectsMissingHostPolicyFile() {
+		parameters.put(InitParameterNames.HOST_POLICY_FILE,
+				new File(folder.getRoot(), "missing.properties").toString());
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Cannot read host-policy-file");
+		scrutinizer();
+	}
+
+	@Test
+	public void constructorRejectsInvalidHostPolicy() throws IOException {
+		Path file = folder.newFile("host-policy.properties").toPath();
+		Files.write(file, "a-host.exclusion-paths = /api/v*/\n".getBytes(StandardCharsets.UTF_8));
+		parameters.put(InitParameterNames.HOST_POLICY_FILE, file.toString());
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Invalid policy of host \"a-host\" in host-policy-file: exclusion-paths must only use");
+		scrutinizer();
+	}
+
+	@Test
+	public void getVerdictCacheStatistics() {
+		assertThat(scrutinizer().getVerdictCacheStatistics()).isEmpty();
+
+		parameters.put(InitParameterNames.VERDICT_CACHE_ENABLED, "true");
+		parameters.put(InitParameterNames.VERDICT_CACHE_SIZE, "64");
+		assertThat(scrutinizer().getVerdictCacheStatistics().get().getCapacity()).isEqualTo(64);
+	}
+
+	@Test
+	public void scrutinizeReportsRejectionsInReportOnlyMode() {
+		parameters.put(InitParameterNames.MODE, "report-only");
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		headers.put("Host", Arrays.asList("a-host"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		headers.put("Origin", Arrays.asList("http://a-different-host"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.REPORTED);
+		headers.put("Origin", Arrays.asList(" "));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.REPORTED);
+		ReportOnlySummary summary = scrutinizer.getReportOnlySummary();
+		assertThat(summary.getSampledCount()).isEqualTo(3);
+		assertThat(summary.getReportedCount()).isEqualTo(2);
+		assertThat(summary.getReportedCount(Verdict.HOST_MISMATCH)).isEqualTo(1);
+		assertThat(summary.getReportedCount(Verdict.EMPTY_HEADER)).isEqualTo(1);
+		assertThat(summary.getReportedCountsByOrigin()).containsOnlyKeys("http://a-different-host", " ");
+	}
+
+	@Test
+	public void scrutinizeSamplesRequestsInReportOnlyMode() {
+		parameters.put(InitParameterNames.MODE, "report-only");
+		parameters.put(InitParameterNames.REPORT_ONLY_SAMPLE_RATE, Double.toString(Double.MIN_VALUE));
+		headers.put("Origin", Arrays.asList("http://a-different-host"));
+		headers.put("Host", Arrays.asList("a-host"));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		for (int count = 0; count < 100; ++count) {
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.NOT_SAMPLED);
+		}
+		assertThat(scrutinizer.getReportOnlySummary().getSampledCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void scrutinizeAlwaysScrutinizesPreflightRequestsInReportOnlyMode() {
+		parameters.put(InitParameterNames.MODE, "report-only");
+		parameters.put(InitParameterNames.REPORT_ONLY_SAMPLE_RATE, Double.toString(Double.MIN_VALUE));
+		parameters.put(InitParameterNames.PREFLIGHT_ENABLED, "true");
+		doReturn("OPTIONS").when(request).getMethod();
+		headers.put("Access-Control-Request-Method", Arrays.asList("PUT"));
+		headers.put("Origin", Arrays.asList("http://a-host"));
+		headers.put("Host", Arrays.asList("a-host"));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		for (int count = 0; count < 100; ++count) {
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.PREFLIGHT);
+		}
+		assertThat(scrutinizer.getReportOnlySummary().getSampledCount()).isEqualTo(100);
+	}
+
+	@Test
+	public void scrutinizeDoesNotAnswerReportedPreflightRequestsInReportOnlyMode() {
+		parameters.put(InitParameterNames.MODE, "report-only");
+		parameters.put(InitParameterNames.REPORT_ONLY_SAMPLE_RATE, Double.toString(Double.MIN_VALUE));
+		parameters.put(InitParameterNames.PREFLIGHT_ENABLED, "true");
+		doReturn("OPTIONS").when(request).getMethod();
+		headers.put("Access-Control-Request-Method", Arrays.asList("PUT"));
+		headers.put("Origin", Arrays.asList("http://a-different-host"));
+		headers.put("Host", Arrays.asList("a-host"));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		Verdict verdict = scrutinizer.scrutinize(request);
+		assertThat(verdict).isEqualTo(Verdict.REPORTED);
+		Map<String, String> responseHeaders = new HashMap<>();
+		if (verdict == Verdict.PREFLIGHT) {
+			scrutinizer.writePreflightHeaders(request, responseHeaders::put);
+		}
+		assertThat(responseHeaders).doesNotContainKey("Access-Control-Allow-Origin");
+		assertThat(scrutinizer.getReportOnlySummary().getReportedCount(Verdict.HOST_MISMATCH)).isEqualTo(1);
+	}
+
+	@Test
+	public void scrutinizeRecordsRejectedRequestsInAuditLog() throws IOException {
+		Path file = new File(folder.getRoot(), "cors-audit.log").toPath();
+		parameters.put(InitParameterNames.AUDIT_LOG_FILE, file.toString());
+		try (CorsHeaderScrutinizer scrutinizer = scrutinizer()) {
+			headers.put("Origin", Arrays.asList("http://a-host"));
+			headers.put("Host", Arrays.asList("a-host"));
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+			headers.put("X-Forwarded-Host", Arrays.asList("a-different-host"));
+			assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		}
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertThat(lines).hasSize(1);
+		assertThat(lines.get(0)).endsWith("\tPOST\t/a-path\thttp://a-host\t-\ta-different-host\tHOST_MISMATCH");
+	}
+
+	@Test
+	public void scrutinizeRequiresTokenWithoutOriginOrRefererInTokenMode() {
+		parameters.put(InitParameterNames.TOKEN_SECRET, Base64.getEncoder().encodeToString(new byte[32]));
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.MISSING_TOKEN);
+		String token = scrutinizer.issueTokenCookie(request).get().replaceAll("XSRF-TOKEN=([0-9a-f]+);.*", "$1");
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + token));
+		headers.put("X-XSRF-TOKEN", Arrays.asList(token));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		headers.put("X-XSRF-TOKEN", Arrays.asList(token.replace('0', '1')));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.INVALID_TOKEN);
+		headers.put("Origin", Arrays.asList("https://a-host"));
+		headers.put("Host", Arrays.asList("a-host"));
+		assertThat(scrutinizer.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeDoesNotRequireTokenForHeadersOnlyMethods() {
+		parameters.put(InitParameterNames.TOKEN_SECRET, Base64.getEncoder().encodeToString(new byte[32]));
+		doReturn("GET").when(request).getMethod();
+		assertThat(scrutinizer().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void issueTokenCookieMarksCookieSecureUnlessDisabled() {
+		parameters.put(InitParameterNames.TOKEN_SECRET, Base64.getEncoder().encodeToString(new byte[32]));
+		assertThat(scrutinizer().issueTokenCookie(request).get()).endsWith("; Secure");
+		parameters.put(InitParameterNames.TOKEN_COOKIE_SECURE, "false");
+		assertThat(scrutinizer().issueTokenCookie(request).get()).doesNotContain("Secure");
+	}
+
+	@Test
+	public void constructorRejectsPrefixedTokenCookieWithoutSecure() {
+		parameters.put(InitParameterNames.TOKEN_SECRET, Base64.getEncoder().encodeToString(new byte[32]));
+		parameters.put(InitParameterNames.TOKEN_COOKIE_NAME, "__Host-XSRF-TOKEN");
+		parameters.put(InitParameterNames.TOKEN_COOKIE_SECURE, "false");
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage(
+				"token-cookie-secure must be true when token-cookie-name starts with __Host- or __Secure-: "
+						+ "\"__Host-XSRF-TOKEN\"");
+		scrutinizer();
+	}
+
+	@Test
+	public void issueTokenCookieWithoutTokenMode() {
+		assertThat(scrutinizer().issueTokenCookie(request)).isEmpty();
+	}
+
+	@Test
+	public void constructorRejectsInvalidParameter() {
+		parameters.put(InitParameterNames.METRICS_ENABLED, "yes");
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("metrics-enabled must be either true or false: \"yes\"");
+		scrutinizer();
+	}
+
+	@Test
+	public void registerMetricsAndClose() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(
+				RecordingFilterMetrics.OBJECT_NAME_DOMAIN + ":type=a-type,name=\"a-name\",context=\"/a-context\"");
+		CorsHeaderScrutinizer scrutinizer = scrutinizer();
+		scrutinizer.registerMetrics("a-type", "a-name", Optional.of("/a-context"));
+		assertThat(server.isRegistered(name)).isTrue();
+		scrutinizer.scrutinize(request);
+		assertThat(server.getAttribute(name, "RequestsAllowed")).isEqualTo(1L);
+
+		scrutinizer.close();
+		assertThat(server.isRegistered(name)).isFalse();
+	}
+
+	@Test
+	public void registerMetricsWhenDisabled() throws JMException {
+		parameters.put(InitParameterNames.METRICS_ENABLED, "false");
+		try (CorsHeaderScrutinizer scrutinizer = scrutinizer()) {
+			scrutinizer.registerMetrics("a-type", "a-disabled-name", Optional.empty());
+			ObjectName pattern = new ObjectName(
+					RecordingFilterMetrics.OBJECT_NAME_DOMAIN + ":name=\"a-disabled-name\",*");
+			assertThat(ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null)).isEmpty();
+		}
+	}
+
+	private CorsHeaderScrutinizer scrutinizer() {
+		return new CorsHeaderScrutinizer(parameters::get);
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class DomainTrieTest {
+
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void constructorRejectsEmptyList() {
+		thrown.expect(IllegalArgumentException.class);
+		new DomainTrie(Collections.emptyList());
+	}
+
+	@Test
+	public void constructorRejectsEmptyLabel() {
+		thrown.expect(IllegalArgumentException.class);
+		new DomainTrie(Arrays.asList("a..example.com"));
+	}
+
+	@Test
+	public void constructorRejectsWildcardWithoutDomain() {
+		thrown.expect(IllegalArgumentException.class);
+		new DomainTrie(Arrays.asList("*."));
+	}
+
+	@Test
+	public void containsExactHost() {
+		DomainTrie trie = new DomainTrie(Arrays.asList("example.com", "partner.org"));
+		assertContains(trie, "example.com");
+		assertContains(trie, "partner.org");
+		assertDoesNotContain(trie, "www.example.com");
+		assertDoesNotContain(trie, "com");
+		assertDoesNotContain(trie, "example.org");
+		assertDoesNotContain(trie, "anexample.com");
+		assertDoesNotContain(trie, "");
+	}
+
+	@Test
+	public void containsSubdomainsOfWildcard() {
+		DomainTrie trie = new DomainTrie(Arrays.asList("*.example.com"));
+		assertContains(trie, "www.example.com");
+		assertContains(trie, "a.b.example.com");
+		assertDoesNotContain(trie, "example.com");
+		assertDoesNotContain(trie, ".example.com");
+		assertDoesNotContain(trie, "wwwexample.com");
+		assertDoesNotContain(trie, "www.example.org");
+	}
+
+	@Test
+	public void containsWildcardAndExactHost() {
+		DomainTrie trie = new DomainTrie(Arrays.asList("*.example.com", "example.com", "a.example.com"));
+		assertContains(trie, "example.com");
+		assertContains(trie, "a.example.com");
+		assertContains(trie, "b.example.com");
+		assertThat(trie.size()).isEqualTo(3);
+	}
+
+	@Test
+	public void containsIsCaseInsensitive() {
+		DomainTrie trie = new DomainTrie(Arrays.asList("*.Example.com", "partner.ORG"));
+		assertContains(trie, "WWW.EXAMPLE.COM");
+		assertContains(trie, "Partner.Org");
+	}
+
+	@Test
+	public void containsIgnoresTrailingDot() {
+		DomainTrie trie = new DomainTrie(Arrays.asList("example.com.", "*.partner.org"));
+		assertContains(trie, "example.com");
+		assertContains(trie, "example.com.");
+		assertContains(trie, "www.partner.org.");
+	}
+
+	@Test
+	public void containsRange() {
+		DomainTrie trie = new DomainTrie(Arrays.asList("*.example.com"));
+		String uri = "https://www.example.com:8443/";
+		assertThat(trie.contains(uri, "https://".length(), uri.indexOf(':', 6))).isTrue();
+		assertThat(trie.contains(uri, "https://www.".length(), uri.indexOf(':', 6))).isFalse();
+	}
+
+	@Test
+	public void containsManyDomains() {
+		List<String> domains = new ArrayList<>();
+		for (int index = 0; index < 5000; ++index) {
+			domains.add("partner" + index + ".com");
+			domains.add("*.partner" + index + ".net");
+		}
+		DomainTrie trie = new DomainTrie(domains);
+		assertThat(trie.size()).isEqualTo(10000);
+		for (int index = 0; index < 5000; ++index) {
+			assertContains(trie, "partner" + index + ".com");
+			assertContains(trie, "www.partner" + index + ".net");
+			assertDoesNotContain(trie, "partner" + index + ".net");
+		}
+		assertDoesNotContain(trie, "partner5000.com");
+	}
+
+	private void assertContains(DomainTrie trie, String host) {
+		assertThat(trie.contains(host, 0, host.length())).as(host).isTrue();
+	}
+
+	private void assertDoesNotContain(DomainTrie trie, String host) {
+		assertThat(trie.contains(host, 0, host.length())).as(host).isFalse();
+	}
+}
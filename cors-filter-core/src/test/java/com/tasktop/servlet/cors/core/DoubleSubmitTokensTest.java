@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class DoubleSubmitTokensTest {
+
+	private static final long NOW = TimeUnit.DAYS.toMillis(17000);
+
+	private static final long MAX_AGE_SECONDS = 3600;
+
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	private final byte[] secret = "a secret that is long enough for HMAC-SHA256".getBytes(StandardCharsets.US_ASCII);
+
+	private final DoubleSubmitTokens tokens = new DoubleSubmitTokens(secret, "XSRF-TOKEN", "X-XSRF-TOKEN",
+			MAX_AGE_SECONDS, true);
+
+	private final Map<String, List<String>> headers = new HashMap<>();
+
+	private final ScrutinizedRequest request = mock(ScrutinizedRequest.class);
+
+	@Before
+	public void before() {
+		doAnswer(invocation -> headers.getOrDefault(invocation.getArguments()[0], Collections.emptyList()).iterator())
+				.when(request).getHeaders(any());
+	}
+
+	@Test
+	public void issueSignsNonceAndExpiryWithHmacSha256() throws Exception {
+		String token = tokens.issue(NOW);
+		assertThat(token).hasSize(DoubleSubmitTokens.TOKEN_LENGTH).matches("[0-9a-f]+");
+		assertThat(Long.parseLong(token.substring(32, 48), 16))
+				.isEqualTo(TimeUnit.MILLISECONDS.toSeconds(NOW) + MAX_AGE_SECONDS);
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+		StringBuilder expectedMac = new StringBuilder();
+		for (byte b : mac.doFinal(token.substring(0, 48).getBytes(StandardCharsets.US_ASCII))) {
+			expectedMac.append(String.format("%02x", b));
+		}
+		assertThat(token.substring(48)).isEqualTo(expectedMac.toString());
+	}
+
+	@Test
+	public void issueProvidesDistinctTokens() {
+		assertThat(tokens.issue(NOW)).isNotEqualTo(tokens.issue(NOW));
+	}
+
+	@Test
+	public void verifyAcceptsMatchingCookieAndHeader() {
+		String token = tokens.issue(NOW);
+		headers.put("X-XSRF-TOKEN", Arrays.asList(token));
+		headers.put("Cookie", Arrays.asList("a=b; XSRF-TOKEN=" + token + "; c=d"));
+		assertThat(tokens.verify(request, NOW + 1000)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void verifyAcceptsAnyMatchingCookie() {
+		String token = tokens.issue(NOW);
+		headers.put("X-XSRF-TOKEN", Arrays.asList(token));
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + tokens.issue(NOW), "XSRF-TOKEN=" + token));
+		assertThat(tokens.verify(request, NOW)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void verifyRejectsMissingHeader() {
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + tokens.issue(NOW)));
+		assertThat(tokens.verify(request, NOW)).isEqualTo(Verdict.MISSING_TOKEN);
+	}
+
+	@Test
+	public void verifyRejectsMissingCookie() {
+		headers.put("X-XSRF-TOKEN", Arrays.asList(tokens.issue(NOW)));
+		headers.put("Cookie", Arrays.asList("NOT-XSRF-TOKEN=a; XSRF-TOKENS=b"));
+		assertThat(tokens.verify(request, NOW)).isEqualTo(Verdict.MISSING_TOKEN);
+	}
+
+	@Test
+	public void verifyRejectsDuplicateHeader() {
+		String token = tokens.issue(NOW);
+		headers.put("X-XSRF-TOKEN", Arrays.asList(token, token));
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + token));
+		assertThat(tokens.verify(request, NOW)).isEqualTo(Verdict.DUPLICATE_HEADER);
+	}
+
+	@Test
+	public void verifyRejectsHeaderThatDoesNotMatchCookie() {
+		headers.put("X-XSRF-TOKEN", Arrays.asList(tokens.issue(NOW)));
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + tokens.issue(NOW)));
+		assertThat(tokens.verify(request, NOW)).isEqualTo(Verdict.INVALID_TOKEN);
+	}
+
+	@Test
+	public void verifyRejectsExpiredToken() {
+		String token = tokens.issue(NOW);
+		headers.put("X-XSRF-TOKEN", Arrays.asList(token));
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + token));
+		assertThat(tokens.verify(request, NOW + TimeUnit.SECONDS.toMillis(MAX_AGE_SECONDS - 1)))
+				.isEqualTo(Verdict.ALLOWED);
+		assertThat(tokens.verify(request, NOW + TimeUnit.SECONDS.toMillis(MAX_AGE_SECONDS)))
+				.isEqualTo(Verdict.INVALID_TOKEN);
+	}
+
+	@Test
+	public void verifyRejectsTokenWithLongerMaxAge() {
+		String token = new DoubleSubmitTokens(secret, "XSRF-TOKEN", "X-XSRF-TOKEN", MAX_AGE_SECONDS * 2, true)
+				.issue(NOW);
+		headers.put("X-XSRF-TOKEN", Arrays.asList(token));
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + token));
+		assertThat(tokens.verify(request, NOW)).isEqualTo(Verdict.INVALID_TOKEN);
+	}
+
+	@Test
+	public void verifyRejectsTokenSignedWithAnotherSecret() {
+		byte[] otherSecret = Arrays.copyOf(secret, secret.length);
+		otherSecret[0] ^= 1;
+		String token = new DoubleSubmitTokens(otherSecret, "XSRF-TOKEN", "X-XSRF-TOKEN", MAX_AGE_SECONDS, true)
+				.issue(NOW);
+		headers.put("X-XSRF-TOKEN", Arrays.asList(token));
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + token));
+		assertThat(tokens.verify(request, NOW)).isEqualTo(Verdict.INVALID_TOKEN);
+	}
+
+	@Test
+	public void verifyRejectsTamperedExpiry() {
+		String token = tokens.issue(NOW);
+		String tampered = token.substring(0, 47) + (token.charAt(47) == 'f' ? 'e' : 'f') + token.substring(48);
+		headers.put("X-XSRF-TOKEN", Arrays.asList(tampered));
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + tampered));
+		assertThat(tokens.verify(request, NOW)).isEqualTo(Verdict.INVALID_TOKEN);
+	}
+
+	@Test
+	public void verifyRejectsUpperCaseToken() {
+		String token = tokens.issue(NOW).toUpperCase();
+		headers.put("X-XSRF-TOKEN", Arrays.asList(token));
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + token));
+		assertThat(tokens.verify(request, NOW)).isEqualTo(Verdict.INVALID_TOKEN);
+	}
+
+	@Test
+	public void issueCookieIssuesToken() {
+		assertThat(tokens.issueCookie(request, NOW).get())
+				.matches("XSRF-TOKEN=[0-9a-f]{112}; Max-Age=3600; Path=/; SameSite=Strict; Secure");
+	}
+
+	@Test
+	public void issueCookieWithoutSecure() {
+		assertThat(new DoubleSubmitTokens(secret, "XSRF-TOKEN", "X-XSRF-TOKEN", MAX_AGE_SECONDS, false)
+				.issueCookie(request, NOW).get())
+						.matches("XSRF-TOKEN=[0-9a-f]{112}; Max-Age=3600; Path=/; SameSite=Strict");
+	}
+
+	@Test
+	public void issueCookieMarksPrefixedCookieSecure() {
+		assertThat(new DoubleSubmitTokens(secret, "__Host-XSRF-TOKEN", "X-XSRF-TOKEN", MAX_AGE_SECONDS, true)
+				.issueCookie(request, NOW).get()).startsWith("__Host-XSRF-TOKEN=").endsWith("; Secure");
+	}
+
+	@Test
+	public void constructorRejectsPrefixedCookieWithoutSecure() {
+		thrown.expect(IllegalArgumentException.class);
+		new DoubleSubmitTokens(secret, "__Secure-XSRF-TOKEN", "X-XSRF-TOKEN", MAX_AGE_SECONDS, false);
+	}
+
+	@Test
+	public void issueCookieKeepsFreshToken() {
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + tokens.issue(NOW)));
+		assertThat(tokens.issueCookie(request, NOW + TimeUnit.SECONDS.toMillis(MAX_AGE_SECONDS / 2 - 1))).isEmpty();
+	}
+
+	@Test
+	public void issueCookieRenewsTokenThatExpiresSoon() {
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=" + tokens.issue(NOW)));
+		assertThat(tokens.issueCookie(request, NOW + TimeUnit.SECONDS.toMillis(MAX_AGE_SECONDS / 2))).isPresent();
+	}
+
+	@Test
+	public void issueCookieReplacesInvalidToken() {
+		headers.put("Cookie", Arrays.asList("XSRF-TOKEN=not-a-token"));
+		assertThat(tokens.issueCookie(request, NOW)).isPresent();
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ForwardedHeadersTest {
+
+	private final AddressTrie trustedProxies = new AddressTrie(Arrays.asList("10.0.0.0/8", "2001:db8::/32"));
+
+	@Test
+	public void forwardedHostOfSingleElement() {
+		assertThat(forwardedHost("for=192.0.2.60;proto=http;host=a-host")).isEqualTo("a-host");
+		assertThat(forwardedHost("For=\"[2001:db8:cafe::17]:4711\"; Host=\"a-host:8080\"")).isEqualTo("a-host:8080");
+		assertThat(forwardedHost("for=192.0.2.60;proto=http")).isNull();
+		assertThat(forwardedHost()).isNull();
+	}
+
+	@Test
+	public void forwardedHostOfOutermostTrustedProxy() {
+		assertThat(forwardedHost("for=192.0.2.60;host=a-host, for=10.0.0.1;host=internal-host")).isEqualTo("a-host");
+		assertThat(forwardedHost("for=192.0.2.60;host=a-host", "for=10.0.0.1;host=internal-host")).isEqualTo("a-host");
+		assertThat(forwardedHost("for=10.0.0.2;host=a-host, for=\"[2001:db8::1]\";host=internal-host"))
+				.isEqualTo("a-host");
+	}
+
+	@Test
+	public void forwardedHostIgnoresElementsAddedBeforeUntrustedProxy() {
+		assertThat(forwardedHost("for=10.0.0.3;host=spoofed-host, for=192.0.2.60;host=a-host, for=10.0.0.1"))
+				.isEqualTo("a-host");
+		assertThat(forwardedHost("for=192.0.2.61;host=spoofed-host, for=192.0.2.60, for=10.0.0.1;host=b")).isNull();
+		assertThat(forwardedHost("for=10.0.0.3;host=spoofed-host, for=unknown;host=a-host, for=10.0.0.1;host=b"))
+				.isEqualTo("a-host");
+		assertThat(forwardedHost("host=spoofed-host, for=192.0.2.60:1234;host=a-host")).isEqualTo("a-host");
+		assertThat(forwardedHost("for=10.0.0.3;host=spoofed-host, for=_hidden;host=a-host")).isEqualTo("a-host");
+	}
+
+	@Test
+	public void forwardedHostIgnoresSeparatorsInQuotedStrings() {
+		assertThat(forwardedHost("for=192.0.2.60;ext=\"a,b;host=c\";host=a-host")).isEqualTo("a-host");
+		assertThat(forwardedHost("for=192.0.2.60;ext=\"a\\\",b\";host=a-host")).isEqualTo("a-host");
+	}
+
+	@Test
+	public void forwardedHostIgnoresEmptyElements() {
+		assertThat(forwardedHost(" , for=192.0.2.60;host=a-host,")).isEqualTo("a-host");
+	}
+
+	@Test
+	public void xForwardedHostWithoutXForwardedFor() {
+		assertThat(xForwardedHost(Arrays.asList("a-host"), Collections.emptyList())).isEqualTo("a-host");
+		assertThat(xForwardedHost(Arrays.asList("spoofed-host, a-host:8080 "), Collections.emptyList()))
+				.isEqualTo("a-host:8080");
+		assertThat(xForwardedHost(Arrays.asList("spoofed-host", "a-host"), Collections.emptyList()))
+				.isEqualTo("a-host");
+		assertThat(xForwardedHost(Collections.emptyList(), Collections.emptyList())).isNull();
+	}
+
+	@Test
+	public void xForwardedHostOfOutermostTrustedProxy() {
+		assertThat(xForwardedHost(Arrays.asList("a-host, internal-host"), Arrays.asList("192.0.2.60, 10.0.0.2")))
+				.isEqualTo("a-host");
+		assertThat(xForwardedHost(Arrays.asList("a-host", "internal-host"), Arrays.asList("192.0.2.60", "10.0.0.2")))
+				.isEqualTo("a-host");
+		assertThat(xForwardedHost(Arrays.asList("a-host, internal-host"), Arrays.asList("192.0.2.60, [2001:db8::1]")))
+				.isEqualTo("a-host");
+	}
+
+	@Test
+	public void xForwardedHostIgnoresHostsAddedBeforeUntrustedProxy() {
+		assertThat(xForwardedHost(Arrays.asList("spoofed-host, a-host, internal-host"),
+				Arrays.asList("10.0.0.3, 192.0.2.60, 10.0.0.2"))).isEqualTo("a-host");
+		assertThat(xForwardedHost(Arrays.asList("spoofed-host, a-host"), Arrays.asList("192.0.2.60:1234")))
+				.isEqualTo("a-host");
+		assertThat(xForwardedHost(Arrays.asList("spoofed-host, a-host"), Arrays.asList("unknown")))
+				.isEqualTo("a-host");
+	}
+
+	@Test
+	public void xForwardedHostUsesFirstHostIfAllAddressesAreTrustedProxies() {
+		assertThat(xForwardedHost(Arrays.asList("a-host, internal-host"),
+				Arrays.asList("10.0.0.3, 10.0.0.2, 10.0.0.1"))).isEqualTo("a-host");
+	}
+
+	@Test
+	public void xForwardedHostIgnoresEmptyElements() {
+		assertThat(xForwardedHost(Arrays.asList(" , a-host,", ","), Arrays.asList(", 10.0.0.2 ,")))
+				.isEqualTo("a-host");
+	}
+
+	private String forwardedHost(String... values) {
+		return ForwardedHeaders.forwardedHost(Arrays.asList(values).iterator(), trustedProxies);
+	}
+
+	private String xForwardedHost(List<String> hostValues, List<String> forValues) {
+		return ForwardedHeaders.xForwardedHost(hostValues.iterator(), forValues.iterator(), trustedProxies);
+	}
+}
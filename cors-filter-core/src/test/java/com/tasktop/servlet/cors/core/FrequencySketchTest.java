@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class FrequencySketchTest {
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	private final FrequencySketch sketch = new FrequencySketch(64);
+
+	@Test
+	public void rejectsNonPositiveCapacity() {
+		thrown.expect(IllegalArgumentException.class);
+		new FrequencySketch(0);
+	}
+
+	@Test
+	public void frequencyOfUnseenHashIsZero() {
+		assertThat(sketch.frequency(42)).isEqualTo(0);
+	}
+
+	@Test
+	public void incrementCountsOccurrences() {
+		sketch.increment(42);
+		sketch.increment(42);
+		sketch.increment(42);
+		sketch.increment(7);
+		assertThat(sketch.frequency(42)).isEqualTo(3);
+		assertThat(sketch.frequency(7)).isEqualTo(1);
+	}
+
+	@Test
+	public void frequencySaturates() {
+		for (int i = 0; i < 100; ++i) {
+			sketch.increment(42);
+		}
+		assertThat(sketch.frequency(42)).isEqualTo(15);
+	}
+
+	@Test
+	public void frequenciesAgeOverTime() {
+		for (int i = 0; i < 8; ++i) {
+			sketch.increment(42);
+		}
+		for (int i = 0; i < 10 * 64; ++i) {
+			sketch.increment(1000 + i);
+		}
+		assertThat(sketch.frequency(42)).isLessThanOrEqualTo(4);
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class HostTableTest {
+
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	private final Map<String, String> entries = new HashMap<>();
+
+	@Test
+	public void get() {
+		entries.put("a-host", "a");
+		entries.put("b-host.example.com", "b");
+		HostTable<String> table = new HostTable<>(entries);
+		assertThat(table.get("a-host", "default")).isEqualTo("a");
+		assertThat(table.get("b-host.example.com", "default")).isEqualTo("b");
+		assertThat(table.get("c-host", "default")).isEqualTo("default");
+		assertThat(table.get("a-host.example.com", "default")).isEqualTo("default");
+		assertThat(table.get("", "default")).isEqualTo("default");
+	}
+
+	@Test
+	public void getIgnoresPort() {
+		entries.put("a-host", "a");
+		HostTable<String> table = new HostTable<>(entries);
+		assertThat(table.get("a-host:8080", "default")).isEqualTo("a");
+		assertThat(table.get("a-host:", "default")).isEqualTo("a");
+	}
+
+	@Test
+	public void getIgnoresAsciiCase() {
+		entries.put("A-Host.Example.com", "a");
+		HostTable<String> table = new HostTable<>(entries);
+		assertThat(table.get("a-host.example.com", "default")).isEqualTo("a");
+		assertThat(table.get("A-HOST.EXAMPLE.COM:443", "default")).isEqualTo("a");
+	}
+
+	@Test
+	public void getIgnoresTrailingDot() {
+		entries.put("a-host.example.com", "a");
+		entries.put("b-host.example.com.", "b");
+		HostTable<String> table = new HostTable<>(entries);
+		assertThat(table.get("a-host.example.com.", "default")).isEqualTo("a");
+		assertThat(table.get("A-Host.Example.com.:8443", "default")).isEqualTo("a");
+		assertThat(table.get("b-host.example.com", "default")).isEqualTo("b");
+		assertThat(table.get("a-host.example.com..", "default")).isEqualTo("default");
+	}
+
+	@Test
+	public void getDoesNotFoldNonAsciiCharacters() {
+		entries.put("\u212a-host", "a");
+		HostTable<String> table = new HostTable<>(entries);
+		assertThat(table.get("k-host", "default")).isEqualTo("default");
+		assertThat(table.get("\u212a-host", "default")).isEqualTo("a");
+	}
+
+	@Test
+	public void getIpv6Address() {
+		entries.put("[2001:db8::1]", "a");
+		HostTable<String> table = new HostTable<>(entries);
+		assertThat(table.get("[2001:DB8::1]:8443", "default")).isEqualTo("a");
+		assertThat(table.get("[2001:db8::2]", "default")).isEqualTo("default");
+	}
+
+	@Test
+	public void getFromEmptyTable() {
+		assertThat(new HostTable<>(entries).get("a-host", "default")).isEqualTo("default");
+	}
+
+	@Test
+	public void getWithCollisions() {
+		for (int index = 0; index < 1000; ++index) {
+			entries.put("host-" + index, "value-" + index);
+		}
+		HostTable<String> table = new HostTable<>(entries);
+		for (int index = 0; index < 1000; ++index) {
+			assertThat(table.get("HOST-" + index + ":80", "default")).isEqualTo("value-" + index);
+		}
+		assertThat(table.get("host-1000", "default")).isEqualTo("default");
+	}
+
+	@Test
+	public void constructorRejectsDuplicateHostWithTrailingDot() {
+		entries.put("a-host", "a");
+		entries.put("a-host.", "b");
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Duplicate host \"a-host\"");
+		new HostTable<>(entries);
+	}
+
+	@Test
+	public void constructorRejectsDuplicateHost() {
+		entries.put("a-host", "a");
+		entries.put("A-HOST", "b");
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Duplicate host \"a-host\"");
+		new HostTable<>(entries);
+	}
+}
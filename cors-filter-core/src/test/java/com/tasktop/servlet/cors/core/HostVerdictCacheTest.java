@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class HostVerdictCacheTest {
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	private final HostVerdictCache cache = new HostVerdictCache(16);
+
+	@Test
+	public void rejectsNonPositiveCapacity() {
+		thrown.expect(IllegalArgumentException.class);
+		new HostVerdictCache(0);
+	}
+
+	@Test
+	public void capacityIsRoundedUp() {
+		assertThat(new HostVerdictCache(1).getCapacity()).isEqualTo(8);
+		assertThat(new HostVerdictCache(16).getCapacity()).isEqualTo(16);
+		assertThat(new HostVerdictCache(17).getCapacity()).isEqualTo(32);
+	}
+
+	@Test
+	public void getMissesUnknownEntries() {
+		assertThat(cache.get("http://a-host", "a-host")).isNull();
+		assertThat(cache.getMissCount()).isEqualTo(1);
+		assertThat(cache.getHitCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void getHitsCachedEntries() {
+		cache.put("http://a-host", "a-host", true);
+		cache.put("http://a-host", "a-different-host", false);
+		assertThat(cache.get("http://a-host", "a-host")).isTrue();
+		assertThat(cache.get("http://a-host", "a-different-host")).isFalse();
+		assertThat(cache.get("http://a-different-host", "a-host")).isNull();
+		assertThat(cache.getHitCount()).isEqualTo(2);
+		assertThat(cache.getMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void getMatchesEqualHeaderValues() {
+		cache.put("http://a-host", "a-host", true);
+		assertThat(cache.get(new String("http://a-host"), new String("a-host"))).isTrue();
+	}
+
+	@Test
+	public void hotEntriesSurviveFloodOfDistinctEntries() {
+		for (int i = 0; i < 10_000; ++i) {
+			lookup("http://attacker-" + i + ".example.com", "a-host");
+			if (i % 10 == 0) {
+				lookup("http://a-host", "a-host");
+				lookup("http://b-host", "b-host");
+			}
+		}
+		long hits = cache.getHitCount();
+		assertThat(cache.get("http://a-host", "a-host")).isTrue();
+		assertThat(cache.get("http://b-host", "b-host")).isTrue();
+		assertThat(cache.getHitCount()).isEqualTo(hits + 2);
+		assertThat(hits).isGreaterThan(1900);
+	}
+
+	@Test
+	public void frequentlySeenEntriesEvictColdEntries() {
+		for (int i = 0; i < 1000; ++i) {
+			lookup("http://host-" + i, "a-host");
+		}
+		for (int i = 0; i < 5; ++i) {
+			lookup("http://a-host", "a-host");
+		}
+		assertThat(cache.get("http://a-host", "a-host")).isTrue();
+		assertThat(cache.getEvictionCount()).isGreaterThan(0);
+	}
+
+	private void lookup(String uriHeader, String hostHeader) {
+		if (cache.get(uriHeader, hostHeader) == null) {
+			cache.put(uriHeader, hostHeader, UriHostScanner.hostMatches(uriHeader, hostHeader));
+		}
+	}
+}
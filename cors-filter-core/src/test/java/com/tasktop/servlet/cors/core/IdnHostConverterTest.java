@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class IdnHostConverterTest {
+
+	private final IdnHostConverter converter = new IdnHostConverter(4);
+
+	@Test
+	public void roundsCapacityUpToPowerOfTwo() {
+		assertThat(converter.getCapacity()).isEqualTo(4);
+		assertThat(new IdnHostConverter(5).getCapacity()).isEqualTo(8);
+	}
+
+	@Test
+	public void toAscii() {
+		assertThat(converter.toAscii("b\u00fccher.example", 0, 14)).isEqualTo("xn--bcher-kva.example");
+		assertThat(converter.toAscii("https://B\u00dcCHER.example/", 8, 22)).isEqualTo("xn--bcher-kva.example");
+		assertThat(converter.toAscii("a-host", 0, 6)).isEqualTo("a-host");
+	}
+
+	@Test
+	public void toAsciiRejectsInvalidHost() {
+		assertThat(converter.toAscii("a\u3002\u3002b", 0, 4)).isNull();
+	}
+
+	@Test
+	public void toAsciiReusesCachedConversion() {
+		String host = "b\u00fccher.example";
+		String asciiHost = converter.toAscii(host, 0, host.length());
+		assertThat(converter.toAscii("http://" + host, 7, 7 + host.length())).isSameAs(asciiHost);
+	}
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	@Test
+	public void bucketIndexIsConsistentWithUpperBounds() {
+		for (int index = 0; index < LatencyHistogram.BUCKET_COUNT; ++index) {
+			long upperBound = LatencyHistogram.bucketUpperBound(index);
+			assertThat(LatencyHistogram.bucketIndex(upperBound)).isEqualTo(index);
+			if (index + 1 < LatencyHistogram.BUCKET_COUNT) {
+				assertThat(LatencyHistogram.bucketIndex(upperBound + 1)).isEqualTo(index + 1);
+			}
+		}
+	}
+
+	@Test
+	public void bucketIndexOfSmallLatencies() {
+		assertThat(LatencyHistogram.bucketIndex(-1)).isEqualTo(0);
+		assertThat(LatencyHistogram.bucketIndex(0)).isEqualTo(0);
+		assertThat(LatencyHistogram.bucketIndex(3)).isEqualTo(3);
+		assertThat(LatencyHistogram.bucketIndex(4)).isEqualTo(4);
+	}
+
+	@Test
+	public void bucketIndexOfLargeLatencies() {
+		assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKET_COUNT - 1);
+	}
+
+	@Test
+	public void bucketsAreWithinQuarterOfLatency() {
+		for (long nanos = 1; nanos < 1_000_000_000L; nanos = nanos * 3 + 1) {
+			long upperBound = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(nanos));
+			assertThat(upperBound).isBetween(nanos, nanos + nanos / 4);
+		}
+	}
+
+	@Test
+	public void emptyHistogram() {
+		assertThat(histogram.getCount()).isEqualTo(0);
+		assertThat(histogram.getMeanNanos()).isEqualTo(0);
+		assertThat(histogram.getPercentileNanos(50)).isEqualTo(0);
+	}
+
+	@Test
+	public void percentiles() {
+		for (int i = 0; i < 990; ++i) {
+			histogram.record(100);
+		}
+		for (int i = 0; i < 9; ++i) {
+			histogram.record(10_000);
+		}
+		histogram.record(1_000_000);
+		assertThat(histogram.getCount()).isEqualTo(1000);
+		assertThat(histogram.getMeanNanos()).isEqualTo((990 * 100 + 9 * 10_000 + 1_000_000) / 1000.0);
+		assertThat(histogram.getPercentileNanos(50)).isBetween(100L, 125L);
+		assertThat(histogram.getPercentileNanos(99)).isBetween(100L, 125L);
+		assertThat(histogram.getPercentileNanos(99.9)).isBetween(10_000L, 12_500L);
+		assertThat(histogram.getPercentileNanos(100)).isBetween(1_000_000L, 1_250_000L);
+	}
+}
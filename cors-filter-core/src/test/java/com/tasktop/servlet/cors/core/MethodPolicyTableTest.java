@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MethodPolicyTableTest {
+
+	@Test
+	public void getWithDefaultPolicies() {
+		MethodPolicyTable table = new MethodPolicyTable(Collections.emptyMap());
+		assertThat(table.get("GET")).isEqualTo(MethodPolicy.HEADERS_ONLY);
+		assertThat(table.get("POST")).isEqualTo(MethodPolicy.ENFORCE);
+		assertThat(table.get("DELETE")).isEqualTo(MethodPolicy.ENFORCE);
+		assertThat(table.get("")).isEqualTo(MethodPolicy.ENFORCE);
+	}
+
+	@Test
+	public void getWithOverriddenPolicies() {
+		Map<String, MethodPolicy> overrides = new HashMap<>();
+		overrides.put("GET", MethodPolicy.ENFORCE);
+		overrides.put("HEAD", MethodPolicy.HEADERS_ONLY);
+		overrides.put("OPTIONS", MethodPolicy.SKIP);
+		overrides.put("PROPFIND", MethodPolicy.SKIP);
+		MethodPolicyTable table = new MethodPolicyTable(overrides);
+		assertThat(table.get("GET")).isEqualTo(MethodPolicy.ENFORCE);
+		assertThat(table.get("HEAD")).isEqualTo(MethodPolicy.HEADERS_ONLY);
+		assertThat(table.get("OPTIONS")).isEqualTo(MethodPolicy.SKIP);
+		assertThat(table.get("PROPFIND")).isEqualTo(MethodPolicy.SKIP);
+		assertThat(table.get("POST")).isEqualTo(MethodPolicy.ENFORCE);
+	}
+
+	@Test
+	public void getWithOverriddenDefaultPolicy() {
+		MethodPolicyTable table = new MethodPolicyTable(
+				Collections.singletonMap(MethodPolicyTable.DEFAULT_METHOD, MethodPolicy.SKIP));
+		assertThat(table.get("GET")).isEqualTo(MethodPolicy.HEADERS_ONLY);
+		assertThat(table.get("POST")).isEqualTo(MethodPolicy.SKIP);
+	}
+
+	@Test
+	public void getIgnoresCaseOfMethod() {
+		MethodPolicyTable table = new MethodPolicyTable(Collections.singletonMap("DELETE", MethodPolicy.SKIP));
+		assertThat(table.get("get")).isEqualTo(MethodPolicy.HEADERS_ONLY);
+		assertThat(table.get("Delete")).isEqualTo(MethodPolicy.SKIP);
+		assertThat(table.get("post")).isEqualTo(MethodPolicy.ENFORCE);
+	}
+
+	@Test
+	public void getWithLowerCaseOverrides() {
+		Map<String, MethodPolicy> overrides = new HashMap<>();
+		overrides.put("get", MethodPolicy.SKIP);
+		overrides.put("Propfind", MethodPolicy.HEADERS_ONLY);
+		MethodPolicyTable table = new MethodPolicyTable(overrides);
+		assertThat(table.get("GET")).isEqualTo(MethodPolicy.SKIP);
+		assertThat(table.get("get")).isEqualTo(MethodPolicy.SKIP);
+		assertThat(table.get("PROPFIND")).isEqualTo(MethodPolicy.HEADERS_ONLY);
+		assertThat(table.getPolicies()).containsExactlyInAnyOrder(MethodPolicy.ENFORCE, MethodPolicy.SKIP,
+				MethodPolicy.HEADERS_ONLY);
+	}
+
+	@Test
+	public void getReturnsDefaultPolicyForMethodsThatAreNotListed() {
+		MethodPolicyTable table = new MethodPolicyTable(
+				Collections.singletonMap(MethodPolicyTable.DEFAULT_METHOD, MethodPolicy.SKIP));
+		assertThat(table.get("POST")).isEqualTo(MethodPolicy.SKIP);
+		assertThat(table.get("post")).isEqualTo(MethodPolicy.SKIP);
+		assertThat(table.get("GE")).isEqualTo(MethodPolicy.SKIP);
+		assertThat(table.get("GETS")).isEqualTo(MethodPolicy.SKIP);
+		assertThat(table.get("G\u0130T")).isEqualTo(MethodPolicy.SKIP);
+	}
+
+	@Test
+	public void getWithManyMethodsSharingLengthAndFirstAndLastCharacters() {
+		Map<String, MethodPolicy> overrides = new HashMap<>();
+		for (char c = 'A'; c <= 'Z'; ++c) {
+			overrides.put("M" + c + "X", MethodPolicy.SKIP);
+		}
+		MethodPolicyTable table = new MethodPolicyTable(overrides);
+		for (char c = 'A'; c <= 'Z'; ++c) {
+			assertThat(table.get("M" + c + "X")).isEqualTo(MethodPolicy.SKIP);
+		}
+		assertThat(table.get("M0X")).isEqualTo(MethodPolicy.ENFORCE);
+	}
+
+	@Test
+	public void getPolicies() {
+		assertThat(new MethodPolicyTable(Collections.emptyMap()).getPolicies())
+				.containsExactlyInAnyOrder(MethodPolicy.ENFORCE, MethodPolicy.HEADERS_ONLY);
+		assertThat(new MethodPolicyTable(Collections.singletonMap("GET", MethodPolicy.ENFORCE)).getPolicies())
+				.containsExactly(MethodPolicy.ENFORCE);
+	}
+}
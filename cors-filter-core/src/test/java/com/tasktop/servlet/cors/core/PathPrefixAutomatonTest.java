@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class PathPrefixAutomatonTest {
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void rejectsEmptyPrefixes() {
+		thrown.expect(IllegalArgumentException.class);
+		new PathPrefixAutomaton(Collections.emptyList());
+	}
+
+	@Test
+	public void requiresPrefixes() {
+		thrown.expect(NullPointerException.class);
+		new PathPrefixAutomaton(null);
+	}
+
+	@Test
+	public void matchesLiteralPrefixes() {
+		PathPrefixAutomaton automaton = automaton("/api/one/", "/api/two", "/other/api");
+		assertMatches(automaton, "/api/one/example-suffix", "/api/two", "/api/two/with-suffix", "/api/twofold",
+				"/other/api-with-any-suffix");
+		assertDoesNotMatch(automaton, "", "/", "/api", "/api/one", "/api/three", "/some/other/api");
+	}
+
+	@Test
+	public void matchesFromIndex() {
+		PathPrefixAutomaton automaton = automaton("/api/");
+		assertThat(automaton.matchesPrefix("/context/api/one", "/context".length())).isTrue();
+		assertThat(automaton.matchesPrefix("/context/api/one", 0)).isFalse();
+		assertThat(automaton.matchesPrefix("/api/", "/api/".length())).isFalse();
+	}
+
+	@Test
+	public void matchesPrefixesSharingCharacters() {
+		PathPrefixAutomaton automaton = automaton("/abc", "/ab", "/abd/e");
+		assertMatches(automaton, "/ab", "/abc", "/abd/e", "/abx");
+		assertDoesNotMatch(automaton, "/a", "/b");
+	}
+
+	@Test
+	public void matchesSegmentWildcard() {
+		PathPrefixAutomaton automaton = automaton("/api/*/internal/");
+		assertMatches(automaton, "/api/v1/internal/", "/api/v2/internal/status", "/api//internal/");
+		assertDoesNotMatch(automaton, "/api/v1/internal", "/api/v1/v2/internal/", "/api/internal/",
+				"/api/v1/external/");
+	}
+
+	@Test
+	public void matchesTrailingSegmentWildcard() {
+		PathPrefixAutomaton automaton = automaton("/api/*");
+		assertMatches(automaton, "/api/", "/api/v1", "/api/v1/tasks");
+		assertDoesNotMatch(automaton, "/api", "/apiv1");
+	}
+
+	@Test
+	public void matchesSegmentWildcardCombinedWithLiterals() {
+		PathPrefixAutomaton automaton = automaton("/api/*/internal/", "/api/v1/public/");
+		assertMatches(automaton, "/api/v1/internal/", "/api/v1/public/", "/api/v2/internal/");
+		assertDoesNotMatch(automaton, "/api/v2/public/", "/api/v1/other/");
+	}
+
+	@Test
+	public void matchesMultiSegmentWildcard() {
+		PathPrefixAutomaton automaton = automaton("/api/**/admin");
+		assertMatches(automaton, "/api/admin", "/api/v1/admin", "/api/v1/tasks/admin/users", "/api/a/b/c/administer");
+		assertDoesNotMatch(automaton, "/api/", "/api/v1/", "/api/v1admin", "/apiadmin", "/admin");
+	}
+
+	@Test
+	public void matchesLeadingMultiSegmentWildcard() {
+		PathPrefixAutomaton automaton = automaton("/**/hooks/");
+		assertMatches(automaton, "/hooks/", "/a/hooks/", "/a/b/hooks/push");
+		assertDoesNotMatch(automaton, "/hooks", "/a/hooks", "/ahooks/");
+	}
+
+	@Test
+	public void matchesTrailingMultiSegmentWildcard() {
+		PathPrefixAutomaton automaton = automaton("/api/**");
+		assertMatches(automaton, "/api/", "/api/a/b");
+		assertDoesNotMatch(automaton, "/api", "/other/");
+	}
+
+	@Test
+	public void matchesCombinedWildcards() {
+		PathPrefixAutomaton automaton = automaton("/*/api/**/export");
+		assertMatches(automaton, "/tenant/api/export", "/tenant/api/v1/tasks/export.csv");
+		assertDoesNotMatch(automaton, "/api/export", "/a/b/api/export");
+	}
+
+	@Test
+	public void matchesDecodedLiterals() {
+		PathPrefixAutomaton automaton = automaton("/path%20with%20spaces", "/%2A/literal");
+		assertMatches(automaton, "/path with spaces", "/*/literal");
+		assertDoesNotMatch(automaton, "/path%20with%20spaces", "/x/literal");
+	}
+
+	@Test
+	public void compilesManyPrefixesIntoTrie() {
+		List<String> prefixes = IntStream.range(0, 500).mapToObj(i -> "/api/endpoint-" + i + "/")
+				.collect(Collectors.toList());
+		PathPrefixAutomaton automaton = new PathPrefixAutomaton(prefixes);
+		assertMatches(automaton, "/api/endpoint-0/", "/api/endpoint-499/tasks", "/api/endpoint-250/");
+		assertDoesNotMatch(automaton, "/api/endpoint-500/", "/api/endpoint-/", "/api/endpoint-1");
+		int trieNodes = prefixes.stream().mapToInt(String::length).sum();
+		assertThat(automaton.stateCount()).isLessThan(trieNodes);
+	}
+
+	private PathPrefixAutomaton automaton(String... prefixes) {
+		return new PathPrefixAutomaton(Arrays.asList(prefixes));
+	}
+
+	private void assertMatches(PathPrefixAutomaton automaton, String... paths) {
+		for (String path : paths) {
+			assertThat(automaton.matchesPrefix(path, 0)).as(path).isTrue();
+		}
+	}
+
+	private void assertDoesNotMatch(PathPrefixAutomaton automaton, String... paths) {
+		for (String path : paths) {
+			assertThat(automaton.matchesPrefix(path, 0)).as(path).isFalse();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class PolicyFileWatcherTest {
+
+	private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final Map<String, String> parameters = new HashMap<>();
+
+	private final AtomicReference<Policy> publishedPolicy = new AtomicReference<>();
+
+	private Path file;
+
+	private PolicyFileWatcher watcher;
+
+	@Before
+	public void before() throws IOException {
+		file = new File(folder.getRoot(), "cors-policy.properties").toPath();
+		watcher = new PolicyFileWatcher(file, parameters::get, publishedPolicy::set);
+	}
+
+	@After
+	public void after() {
+		watcher.close();
+	}
+
+	@Test
+	public void loadOverridesInitParameters() throws IOException {
+		parameters.put(InitParameterNames.EXCLUSION_PATHS, "/a-path");
+		parameters.put(InitParameterNames.PREFLIGHT_ENABLED, "true");
+		write("allowed-origins = partner.com\npreflight-enabled = false\n");
+		Policy policy = watcher.load();
+		assertThat(policy.getRequestExclusionMatcher()).isPresent();
+		assertThat(policy.getAllowedOrigins()).isPresent();
+		assertThat(policy.getPreflightResponse()).isEmpty();
+	}
+
+	@Test
+	public void loadRejectsMissingFile() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Cannot read policy-file");
+		watcher.load();
+	}
+
+	@Test
+	public void loadRejectsInvalidValue() throws IOException {
+		write("preflight-enabled = maybe\n");
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("preflight-enabled must be either true or false: \"maybe\"");
+		watcher.load();
+	}
+
+	@Test
+	public void publishesPolicyWhenFileIsModified() throws IOException {
+		write("");
+		watcher.start();
+		write("exclusion-paths = /a-path\n");
+		await(() -> publishedPolicy.get() != null && publishedPolicy.get().getRequestExclusionMatcher().isPresent());
+		assertThat(watcher.getReloadFailureCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void keepsPolicyWhenFileIsInvalid() throws IOException {
+		write("");
+		watcher.start();
+		write("verdict-cache-size = 1\nallowed-origins = https://partner.com\n");
+		await(() -> watcher.getReloadFailureCount() > 0);
+		assertThat(publishedPolicy.get()).isNull();
+
+		write("allowed-origins = partner.com\n");
+		await(() -> publishedPolicy.get() != null);
+		assertThat(publishedPolicy.get().getAllowedOrigins()).isPresent();
+	}
+
+	@Test
+	public void waitsForWritesToSettleBeforeReloading() throws IOException, InterruptedException {
+		watcher = new PolicyFileWatcher(file, parameters::get, publishedPolicy::set, 1000);
+		write("");
+		watcher.load();
+		watcher.start();
+		Files.write(file, "exclusion-paths = /a-path\n".getBytes(StandardCharsets.UTF_8));
+		Thread.sleep(100);
+		Files.write(file, "allowed-origins = partner.com\n".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		await(() -> publishedPolicy.get() != null);
+		assertThat(publishedPolicy.get().getRequestExclusionMatcher()).isPresent();
+		assertThat(publishedPolicy.get().getAllowedOrigins()).isPresent();
+		assertThat(watcher.getReloadCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void ignoresChangesToOtherFiles() throws IOException, InterruptedException {
+		watcher = new PolicyFileWatcher(file, parameters::get, publishedPolicy::set, 10);
+		write("");
+		watcher.load();
+		watcher.start();
+		folder.newFile("another-file.properties");
+		Thread.sleep(500);
+		assertThat(watcher.getReloadCount()).isEqualTo(0);
+		assertThat(watcher.getReloadFailureCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void publishesPolicyWhenSymbolicLinkIsSwapped() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		Files.write(folder.newFolder("..v1").toPath().resolve(file.getFileName()), new byte[0]);
+		Files.createSymbolicLink(directory.resolve("..data"), Paths.get("..v1"));
+		Files.createSymbolicLink(file, Paths.get("..data").resolve(file.getFileName()));
+		watcher.load();
+		watcher.start();
+
+		Files.write(folder.newFolder("..v2").toPath().resolve(file.getFileName()),
+				"exclusion-paths = /a-path\n".getBytes(StandardCharsets.UTF_8));
+		Files.createSymbolicLink(directory.resolve("..data_tmp"), Paths.get("..v2"));
+		Files.move(directory.resolve("..data_tmp"), directory.resolve("..data"), StandardCopyOption.ATOMIC_MOVE);
+		await(() -> publishedPolicy.get() != null && publishedPolicy.get().getRequestExclusionMatcher().isPresent());
+		assertThat(watcher.getReloadFailureCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void closeStopsWatching() throws IOException {
+		write("");
+		watcher.start();
+		watcher.close();
+		watcher.close();
+	}
+
+	private void write(String content) throws IOException {
+		Path temporaryFile = folder.newFile().toPath();
+		Files.write(temporaryFile, content.getBytes(StandardCharsets.UTF_8));
+		Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void await(BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!condition.getAsBoolean()) {
+			assertThat(System.currentTimeMillis()).as("timed out").isLessThan(deadline);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				throw new AssertionError(e);
+			}
+		}
+	}
+}
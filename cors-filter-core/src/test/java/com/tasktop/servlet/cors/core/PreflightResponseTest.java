@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class PreflightResponseTest {
+
+	private final Map<String, String> headers = new LinkedHashMap<>();
+
+	@Test
+	public void writeHeaders() {
+		PreflightResponse response = new PreflightResponse(Arrays.asList("GET", "PUT"),
+				Arrays.asList("Content-Type", "X-Requested-With"), Optional.of(600));
+		response.writeHeaders(Optional.of("https://a-host"), headers::put);
+		assertThat(headers).containsExactly(entry("Access-Control-Allow-Origin", "https://a-host"),
+				entry("Access-Control-Allow-Methods", "GET, PUT"),
+				entry("Access-Control-Allow-Headers", "Content-Type, X-Requested-With"),
+				entry("Access-Control-Max-Age", "600"), entry("Vary", "Origin"));
+	}
+
+	@Test
+	public void writeHeadersOmitsUnspecifiedHeaders() {
+		PreflightResponse response = new PreflightResponse(Arrays.asList("POST"), Collections.emptyList(),
+				Optional.empty());
+		response.writeHeaders(Optional.empty(), headers::put);
+		assertThat(headers).containsExactly(entry("Access-Control-Allow-Methods", "POST"), entry("Vary", "Origin"));
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RecordingFilterMetricsTest {
+
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+	private final RecordingFilterMetrics metrics = new RecordingFilterMetrics(Optional.empty(), Optional.empty());
+
+	@After
+	public void after() throws JMException {
+		metrics.unregister();
+	}
+
+	@Test
+	public void countsVerdicts() {
+		metrics.record(Verdict.EXCLUDED, metrics.startTime());
+		metrics.record(Verdict.ALLOWED, metrics.startTime());
+		metrics.record(Verdict.ALLOWED, metrics.startTime());
+		metrics.record(Verdict.DUPLICATE_HEADER, metrics.startTime());
+		metrics.record(Verdict.EMPTY_HEADER, metrics.startTime());
+		metrics.record(Verdict.HOST_MISMATCH, metrics.startTime());
+		metrics.record(Verdict.HOST_MISMATCH, metrics.startTime());
+		metrics.record(Verdict.MISSING_HOST, metrics.startTime());
+		metrics.record(Verdict.PREFLIGHT, metrics.startTime());
+		metrics.record(Verdict.BLOCKED_ORIGIN, metrics.startTime());
+		metrics.record(Verdict.CROSS_SITE, metrics.startTime());
+		metrics.record(Verdict.MISSING_TOKEN, metrics.startTime());
+		metrics.record(Verdict.INVALID_TOKEN, metrics.startTime());
+		assertThat(metrics.getRequestsExcluded()).isEqualTo(1);
+		assertThat(metrics.getRequestsChecked()).isEqualTo(12);
+		assertThat(metrics.getRequestsAllowed()).isEqualTo(2);
+		assertThat(metrics.getRequestsPreflightAnswered()).isEqualTo(1);
+		assertThat(metrics.getRequestsRejected()).isEqualTo(9);
+		assertThat(metrics.getRequestsRejectedDuplicateHeader()).isEqualTo(1);
+		assertThat(metrics.getRequestsRejectedEmptyHeader()).isEqualTo(1);
+		assertThat(metrics.getRequestsRejectedHostMismatch()).isEqualTo(2);
+		assertThat(metrics.getRequestsRejectedMissingHost()).isEqualTo(1);
+		assertThat(metrics.getRequestsRejectedBlockedOrigin()).isEqualTo(1);
+		assertThat(metrics.getRequestsRejectedCrossSite()).isEqualTo(1);
+		assertThat(metrics.getRequestsRejectedMissingToken()).isEqualTo(1);
+		assertThat(metrics.getRequestsRejectedInvalidToken()).isEqualTo(1);
+		assertThat(metrics.getLatencyBucketCounts()).hasSize(LatencyHistogram.BUCKET_COUNT);
+		assertThat(sum(metrics.getLatencyBucketCounts())).isEqualTo(13);
+	}
+
+	@Test
+	public void countsReportOnlyVerdicts() {
+		metrics.record(Verdict.NOT_SAMPLED, metrics.startTime());
+		metrics.record(Verdict.NOT_SAMPLED, metrics.startTime());
+		metrics.record(Verdict.ALLOWED, metrics.startTime());
+		metrics.record(Verdict.REPORTED, metrics.startTime());
+		assertThat(metrics.getRequestsNotSampled()).isEqualTo(2);
+		assertThat(metrics.getRequestsChecked()).isEqualTo(2);
+		assertThat(metrics.getRequestsReported()).isEqualTo(1);
+		assertThat(metrics.getRequestsRejected()).isEqualTo(0);
+	}
+
+	@Test
+	public void providesVerdictCacheStatistics() {
+		HostVerdictCache cache = new HostVerdictCache(8);
+		cache.get("http://a-host", "a-host");
+		RecordingFilterMetrics metrics = new RecordingFilterMetrics(Optional.of(cache), Optional.empty());
+		assertThat(metrics.getVerdictCacheMissCount()).isEqualTo(1);
+		assertThat(metrics.getVerdictCacheHitCount()).isEqualTo(0);
+		assertThat(this.metrics.getVerdictCacheMissCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void registerAndUnregister() throws JMException {
+		metrics.register("CorsHeaderScrutinyServletFilter", "a-filter", Optional.of("/a-context"));
+		ObjectName name = metrics.getObjectName().get();
+		assertThat(name.getDomain()).isEqualTo(RecordingFilterMetrics.OBJECT_NAME_DOMAIN);
+		assertThat(name.getKeyProperty("type")).isEqualTo("CorsHeaderScrutinyServletFilter");
+		assertThat(name.getKeyProperty("name")).isEqualTo("\"a-filter\"");
+		assertThat(name.getKeyProperty("context")).isEqualTo("\"/a-context\"");
+		assertThat(server.isRegistered(name)).isTrue();
+		metrics.record(Verdict.ALLOWED, metrics.startTime());
+		assertThat(server.getAttribute(name, "RequestsAllowed")).isEqualTo(1L);
+
+		metrics.unregister();
+		assertThat(server.isRegistered(name)).isFalse();
+		assertThat(metrics.getObjectName()).isEmpty();
+	}
+
+	@Test
+	public void registerWithNameInUse() throws JMException {
+		RecordingFilterMetrics other = new RecordingFilterMetrics(Optional.empty(), Optional.empty());
+		other.register("CorsHeaderScrutinyServletFilter", "a-filter", Optional.empty());
+		try {
+			metrics.register("CorsHeaderScrutinyServletFilter", "a-filter", Optional.empty());
+			assertThat(metrics.getObjectName().get()).isNotEqualTo(other.getObjectName().get());
+			assertThat(metrics.getObjectName().get().getKeyProperty("instance")).isNotNull();
+		} finally {
+			other.unregister();
+		}
+	}
+
+	private long sum(long[] values) {
+		long sum = 0;
+		for (long value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+}
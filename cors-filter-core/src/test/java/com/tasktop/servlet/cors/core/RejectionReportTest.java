@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import org.junit.Test;
+
+public class RejectionReportTest {
+
+	private final RejectionReport report = new RejectionReport(4);
+
+	@Test
+	public void roundsCapacityUpToPowerOfTwo() {
+		assertThat(report.getCapacity()).isEqualTo(4);
+		assertThat(new RejectionReport(5).getCapacity()).isEqualTo(8);
+	}
+
+	@Test
+	public void countsSamples() {
+		report.recordSample();
+		report.recordSample();
+		assertThat(report.getSampledCount()).isEqualTo(2);
+		assertThat(report.getReportedCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void countsRejectionsByReason() {
+		report.recordRejection("http://a-host", Verdict.HOST_MISMATCH);
+		report.recordRejection("http://a-host", Verdict.HOST_MISMATCH);
+		report.recordRejection(null, Verdict.DUPLICATE_HEADER);
+		assertThat(report.getReportedCount()).isEqualTo(3);
+		assertThat(report.getReportedCount(Verdict.HOST_MISMATCH)).isEqualTo(2);
+		assertThat(report.getReportedCount(Verdict.DUPLICATE_HEADER)).isEqualTo(1);
+		assertThat(report.getReportedCount(Verdict.MISSING_HOST)).isEqualTo(0);
+	}
+
+	@Test
+	public void countsRejectionsByOriginInDecreasingOrder() {
+		report.recordRejection(null, Verdict.MISSING_HOST);
+		report.recordRejection("http://a-host", Verdict.HOST_MISMATCH);
+		report.recordRejection("http://a-host", Verdict.HOST_MISMATCH);
+		report.recordRejection("http://another-host", Verdict.HOST_MISMATCH);
+		report.recordRejection("http://another-host", Verdict.HOST_MISMATCH);
+		report.recordRejection("http://another-host", Verdict.BLOCKED_ORIGIN);
+		assertThat(report.getReportedCountsByOrigin()).containsExactly(entry("http://another-host", 3L),
+				entry("http://a-host", 2L), entry("", 1L));
+	}
+
+	@Test
+	public void countsRejectionsOfOriginsThatDoNotFitAsUnlisted() {
+		for (int index = 0; index < 10; ++index) {
+			report.recordRejection("http://host-" + index, Verdict.HOST_MISMATCH);
+		}
+		report.recordRejection("http://host-0", Verdict.HOST_MISMATCH);
+		assertThat(report.getReportedCountsByOrigin()).hasSize(4).containsEntry("http://host-0", 2L);
+		assertThat(report.getUnlistedReportedCount()).isEqualTo(6);
+		assertThat(report.getReportedCount()).isEqualTo(11);
+	}
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class RejectionTrackerTest {
+
+	private static final long WINDOW = TimeUnit.SECONDS.toNanos(60);
+
+	private static final long COOLDOWN = TimeUnit.SECONDS.toNanos(300);
+
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	private final RejectionTracker tracker = new RejectionTracker(3, WINDOW, COOLDOWN, 64);
+
+	@Test
+	public void constructorRejectsInvalidThreshold() {
+		thrown.expect(IllegalArgumentException.class);
+		new RejectionTracker(0, WINDOW, COOLDOWN, 64);
+	}
+
+	@Test
+	public void blocksOriginAtThreshold() {
+		long now = System.nanoTime();
+		recordRejection("attacker", now);
+		recordRejection("attacker", now + 1);
+		assertThat(isBlocked("attacker", now + 2)).isFalse();
+		recordRejection("attacker", now + 2);
+		assertThat(isBlocked("attacker", now + 3)).isTrue();
+		assertThat(isBlocked("other", now + 3)).isFalse();
+		assertThat(isBlocked("ATTACKER", now + 3)).isTrue();
+	}
+
+	@Test
+	public void unblocksOriginAfterCooldown() {
+		long now = System.nanoTime();
+		for (int count = 0; count < 3; ++count) {
+			recordRejection("attacker", now);
+		}
+		assertThat(isBlocked("attacker", now + COOLDOWN - 1)).isTrue();
+		assertThat(isBlocked("attacker", now + COOLDOWN)).isFalse();
+	}
+
+	@Test
+	public void forgetsRejectionsOutsideWindow() {
+		long now = 0;
+		recordRejection("attacker", now);
+		recordRejection("attacker", now);
+		now += WINDOW;
+		recordRejection("attacker", now);
+		assertThat(isBlocked("attacker", now)).isFalse();
+		recordRejection("attacker", now + WINDOW / RejectionTracker.WINDOW_SLOTS);
+		recordRejection("attacker", now + 2 * WINDOW / RejectionTracker.WINDOW_SLOTS);
+		assertThat(isBlocked("attacker", now + 2 * WINDOW / RejectionTracker.WINDOW_SLOTS)).isTrue();
+	}
+
+	@Test
+	public void countsRejectionsAcrossSlots() {
+		long slot = WINDOW / RejectionTracker.WINDOW_SLOTS;
+		recordRejection("attacker", 0);
+		recordRejection("attacker", slot);
+		recordRejection("attacker", 2 * slot);
+		assertThat(isBlocked("attacker", 2 * slot)).isTrue();
+	}
+
+	@Test
+	public void neverBlocksOriginThatWasNotRejected() {
+		long now = System.nanoTime();
+		for (int index = 0; index < 10000; ++index) {
+			for (int count = 0; count < 3; ++count) {
+				recordRejection("attacker-" + index, now);
+			}
+		}
+		assertThat(isBlocked("a-host", now)).isFalse();
+		assertThat(isBlocked("attacker-9999", now)).isTrue();
+	}
+
+	@Test
+	public void comparesHostInPlace() {
+		long now = System.nanoTime();
+		for (int count = 0; count < 3; ++count) {
+			tracker.recordRejection("http://attacker:8080", 7, 15, now);
+		}
+		assertThat(tracker.isBlocked("https://Attacker", 8, 16, now)).isTrue();
+		assertThat(tracker.isBlocked("https://attacker.example", 8, 24, now)).isFalse();
+	}
+
+	private void recordRejection(String host, long now) {
+		tracker.recordRejection(host, 0, host.length(), now);
+	}
+
+	private boolean isBlocked(String host, long now) {
+		return tracker.isBlocked(host, 0, host.length(), now);
+	}
+}
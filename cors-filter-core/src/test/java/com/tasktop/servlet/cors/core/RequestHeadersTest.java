@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestHeadersTest {
+
+	private final Map<String, List<String>> headerValues = new HashMap<>();
+
+	private final ScrutinizedRequest request = mock(ScrutinizedRequest.class);
+
+	private final RequestHeaders headers = new RequestHeaders(request);
+
+	private final AddressTrie trustedProxies = new AddressTrie(Arrays.asList("10.0.0.0/8"));
+
+	@Before
+	public void before() {
+		doAnswer(invocation -> headerValues.getOrDefault(invocation.getArguments()[0], Collections.emptyList())
+				.iterator()).when(request).getHeaders(any());
+	}
+
+	@Test
+	public void readsEachHeaderOnce() {
+		headerValues.put("Origin", Arrays.asList("https://a-host"));
+		headerValues.put("Host", Arrays.asList("a-host"));
+		for (int count = 0; count < 2; ++count) {
+			assertThat(headers.getOrigin()).isEqualTo("https://a-host");
+			assertThat(headers.isOriginDuplicated()).isFalse();
+			assertThat(headers.getReferer()).isNull();
+			assertThat(headers.isRefererDuplicated()).isFalse();
+			assertThat(headers.getHost()).isEqualTo("a-host");
+			assertThat(headers.isHostDuplicated()).isFalse();
+			assertThat(headers.getForwardedHost()).isNull();
+			assertThat(headers.isForwardedHostDuplicated()).isFalse();
+		}
+		verify(request, times(1)).getHeaders("Origin");
+		verify(request, times(1)).getHeaders("Referer");
+		verify(request, times(1)).getHeaders("Host");
+		verify(request, times(1)).getHeaders("X-Forwarded-Host");
+	}
+
+	@Test
+	public void readsHeadersOnlyWhenNeeded() {
+		headers.getOrigin();
+		verify(request).getHeaders("Origin");
+		verify(request, never()).getHeaders("Referer");
+		verify(request, never()).getHeaders("Host");
+		verify(request, never()).getHeaders("X-Forwarded-Host");
+	}
+
+	@Test
+	public void detectsDuplicateHeaderWithoutReadingFurtherValues() {
+		@SuppressWarnings("unchecked")
+		Iterator<String> values = mock(Iterator.class);
+		doAnswer(invocation -> true).when(values).hasNext();
+		doAnswer(invocation -> "a-host").when(values).next();
+		doAnswer(invocation -> values).when(request).getHeaders("X-Forwarded-Host");
+		assertThat(headers.getForwardedHost()).isEqualTo("a-host");
+		assertThat(headers.isForwardedHostDuplicated()).isTrue();
+		verify(values, times(1)).next();
+	}
+
+	@Test
+	public void detectsDuplicateHeader() {
+		headerValues.put("Referer", Arrays.asList("https://a-host/a-path", "https://another-host/a-path"));
+		assertThat(headers.isRefererDuplicated()).isTrue();
+		assertThat(headers.getReferer()).isEqualTo("https://a-host/a-path");
+		assertThat(headers.isOriginDuplicated()).isFalse();
+	}
+
+	@Test
+	public void trustedForwardedHostIgnoresXForwardedHostWhenForwardedIsPresent() {
+		doAnswer(invocation -> "10.0.0.1").when(request).getRemoteAddress();
+		headerValues.put("Forwarded", Arrays.asList("for=192.0.2.60"));
+		headerValues.put("X-Forwarded-Host", Arrays.asList("a-host"));
+		assertThat(headers.getTrustedForwardedHost(trustedProxies)).isNull();
+		assertThat(headers.getTrustedForwardedHost(trustedProxies)).isNull();
+		verify(request, times(1)).getHeaders("Forwarded");
+		verify(request, never()).getHeaders("X-Forwarded-Host");
+	}
+
+	@Test
+	public void trustedForwardedHostReadsXForwardedHostAndForOnce() {
+		doAnswer(invocation -> "10.0.0.1").when(request).getRemoteAddress();
+		headerValues.put("X-Forwarded-Host", Arrays.asList("spoofed-host, a-host", "internal-host"));
+		headerValues.put("X-Forwarded-For", Arrays.asList("192.0.2.60, 10.0.0.2"));
+		assertThat(headers.getTrustedForwardedHost(trustedProxies)).isEqualTo("a-host");
+		assertThat(headers.getTrustedForwardedHost(trustedProxies)).isEqualTo("a-host");
+		verify(request, times(1)).getHeaders("X-Forwarded-Host");
+		verify(request, times(1)).getHeaders("X-Forwarded-For");
+	}
+}
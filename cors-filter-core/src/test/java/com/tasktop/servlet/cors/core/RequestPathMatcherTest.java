@@ -13,7 +13,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  *******************************************************************************/
-package com.tasktop.servlet.cors;
+package com.tasktop.servlet.cors.core;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doReturn;
@@ -22,8 +22,6 @@ import static org.mockito.Mockito.mock;
 import java.util.Arrays;
 import java.util.Collections;
 
-import javax.servlet.http.HttpServletRequest;
-
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -81,7 +79,7 @@ public class RequestPathMatcherTest {
 
 	@Test
 	public void rejectsBadContextPath() {
-		HttpServletRequest request = request("/a-context-path", "/path-without-context");
+		ScrutinizedRequest request = request("/a-context-path", "/path-without-context");
 		thrown.expect(IllegalStateException.class);
 		thrown.expectMessage("Path \"/a-context-path\" must start with context path \"/a-context-path\"");
 		matcher.matches(request);
@@ -89,8 +87,35 @@ public class RequestPathMatcherTest {
 
 	@Test
 	public void matchesUriEncodedPaths() {
-		matcher = new RequestPathMatcher(Arrays.asList("/path+with+spaces"));
+		matcher = new RequestPathMatcher(Arrays.asList("/path%20with%20spaces"));
 		assertMatches(request("/path%20with%20spaces"));
+		assertMatches(request("/path with spaces"));
+	}
+
+	@Test
+	public void matchesPlusLiterally() {
+		matcher = new RequestPathMatcher(Arrays.asList("/path+with+plus"));
+		assertMatches(request("/path+with+plus"));
+		assertMatches(request("/path%2Bwith%2Bplus"));
+		assertMatchesDoesNotMatch(request("/path%20with%20plus"));
+	}
+
+	@Test
+	public void matchesUriEncodedContextPath() {
+		assertMatches(request("/a%20context", "/a%20context/first-path"));
+		assertMatches(request("/a%20context", "/a context/first-path"));
+		assertMatches(request("/another-context", "/another-context/first-path"));
+		assertMatchesDoesNotMatch(request("/a%20context", "/a%20context/different-path"));
+	}
+
+	@Test
+	public void matchesWildcardPaths() {
+		matcher = new RequestPathMatcher(Arrays.asList("/api/*/internal", "/**/hooks/"));
+		assertMatches(request("/a-context-path", "/a-context-path/api/v1/internal"));
+		assertMatches(request("/a-context-path", "/a-context-path/hooks/push"));
+		assertMatches(request("/a-context-path", "/a-context-path/a/b/hooks/push"));
+		assertMatchesDoesNotMatch(request("/a-context-path", "/a-context-path/api/v1/external"));
+		assertMatchesDoesNotMatch(request("/hooks", "/hooks/push"));
 	}
 
 	@Test
@@ -107,22 +132,22 @@ public class RequestPathMatcherTest {
 		assertMatchesDoesNotMatch(request("/a-context-path", "/a-context-path/different-path"));
 	}
 
-	private void assertMatchesDoesNotMatch(HttpServletRequest request) {
+	private void assertMatchesDoesNotMatch(ScrutinizedRequest request) {
 		assertThat(matcher.matches(request)).isFalse();
 	}
 
-	private void assertMatches(HttpServletRequest request) {
+	private void assertMatches(ScrutinizedRequest request) {
 		assertThat(matcher.matches(request)).isTrue();
 	}
 
-	private HttpServletRequest request(String path) {
+	private ScrutinizedRequest request(String path) {
 		return request("", path);
 	}
 
-	private HttpServletRequest request(String contextPath, String path) {
-		HttpServletRequest request = mock(HttpServletRequest.class);
+	private ScrutinizedRequest request(String contextPath, String path) {
+		ScrutinizedRequest request = mock(ScrutinizedRequest.class);
 		doReturn(contextPath).when(request).getContextPath();
-		doReturn(path).when(request).getRequestURI();
+		doReturn(path).when(request).getRequestUri();
 		return request;
 	}
 }
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScrutinyPipelineTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final Map<String, String> parameters = new HashMap<>();
+
+	private final Map<String, List<String>> headers = new HashMap<>();
+
+	private final ScrutinizedRequest request = mock(ScrutinizedRequest.class);
+
+	@Before
+	public void before() {
+		doReturn("POST").when(request).getMethod();
+		doReturn("").when(request).getContextPath();
+		doReturn("/a-path").when(request).getRequestUri();
+		doAnswer(invocation -> headers.getOrDefault(invocation.getArguments()[0], Collections.emptyList()).iterator())
+				.when(request).getHeaders(any());
+	}
+
+	@Test
+	public void describeDefaultPipeline() {
+		assertThat(pipeline().describe()).isEqualTo("method policy\n" //
+				+ "enforce:\n" //
+				+ "  read headers\n" //
+				+ "  Origin header, X-Forwarded-Host or Host, compare host\n" //
+				+ "  Referer header, X-Forwarded-Host or Host, compare host\n" //
+				+ "  allow\n" //
+				+ "headers-only:\n" //
+				+ "  read headers\n" //
+				+ "  Origin header, X-Forwarded-Host or Host, headers only\n" //
+				+ "  Referer header, X-Forwarded-Host or Host, headers only\n" //
+				+ "  allow\n");
+	}
+
+	@Test
+	public void describeEliminatesMethodPolicyWhenAllMethodsHaveTheSamePolicy() {
+		parameters.put(InitParameterNames.METHOD_POLICY, "GET=enforce");
+		assertThat(pipeline().describe()).isEqualTo("read headers\n" //
+				+ "Origin header, X-Forwarded-Host or Host, compare host\n" //
+				+ "Referer header, X-Forwarded-Host or Host, compare host\n" //
+				+ "allow\n");
+	}
+
+	@Test
+	public void describeEliminatesHeaderChecksWhenAllMethodsAreSkipped() {
+		parameters.put(InitParameterNames.METHOD_POLICY, "GET=skip *=skip");
+		assertThat(pipeline().describe()).isEqualTo("allow\n");
+	}
+
+	@Test
+	public void describePipelineWithAllStages() {
+		parameters.put(InitParameterNames.METHOD_POLICY, "GET=enforce OPTIONS=skip");
+		parameters.put(InitParameterNames.MODE, "report-only");
+		parameters.put(InitParameterNames.REPORT_ONLY_SAMPLE_RATE, "0.5");
+		parameters.put(InitParameterNames.PREFLIGHT_ENABLED, "true");
+		parameters.put(InitParameterNames.EXCLUSION_PATHS, "/a-path");
+		parameters.put(InitParameterNames.TRUSTED_PROXIES, "10.0.0.0/8");
+		parameters.put(InitParameterNames.ALLOWED_ORIGINS, "a-host");
+		ScrutinyPipeline pipeline = new ScrutinyPipeline(new Policy(parameters::get),
+				Optional.of(new HostVerdictCache(16)), Optional.of(new IdnHostConverter(16)),
+				Optional.of(new RejectionTracker(1, 1000, 1000, 16)),
+				Optional.of(new AuditLog(folder.getRoot().toPath().resolve("audit.log"), 16, 1024, 1)),
+				Optional.of(new DoubleSubmitTokens(new byte[32], "XSRF-TOKEN", "X-XSRF-TOKEN", 60, true)),
+				new RejectionReport(16));
+		assertThat(pipeline.describe()).isEqualTo("exclusion paths\n" //
+				+ "preflight response to allowed requests\n" //
+				+ "report-only sampling, rate 0.5, all preflight requests\n" //
+				+ "method policy\n" //
+				+ "enforce:\n" //
+				+ "  read headers\n" //
+				+ "  audit log of rejections\n" //
+				+ "  adaptive blocking of Origin host\n" //
+				+ "  token in XSRF-TOKEN cookie and X-XSRF-TOKEN header, without Origin or Referer\n" //
+				+ "  Origin header, host forwarded by trusted proxies, compare host through verdict cache "
+				+ "with IDN conversion, or allowed origins\n" //
+				+ "  Referer header, host forwarded by trusted proxies, compare host with IDN conversion, "
+				+ "or allowed origins\n" //
+				+ "  allow\n" //
+				+ "skip:\n" //
+				+ "  allow\n");
+	}
+
+	@Test
+	public void describePipelineWithFetchMetadata() {
+		parameters.put(InitParameterNames.METHOD_POLICY, "GET=enforce");
+		parameters.put(InitParameterNames.FETCH_METADATA_ENABLED, "true");
+		assertThat(pipeline().describe()).isEqualTo("read headers\n" //
+				+ "Sec-Fetch-Site header, allow same-origin and none, reject cross-site\n" //
+				+ "Origin header, X-Forwarded-Host or Host, compare host\n" //
+				+ "Referer header, X-Forwarded-Host or Host, compare host\n" //
+				+ "allow\n");
+		parameters.put(InitParameterNames.ALLOWED_ORIGINS, "partner.com");
+		assertThat(pipeline().describe()).contains("Sec-Fetch-Site header, allow same-origin and none\n");
+	}
+
+	@Test
+	public void scrutinizeWithFetchMetadataAllowsSameOriginWithoutParsingOrigin() {
+		parameters.put(InitParameterNames.FETCH_METADATA_ENABLED, "true");
+		ScrutinyPipeline pipeline = pipeline();
+		headers.put("Origin", Arrays.asList("not a URI"));
+		headers.put("Sec-Fetch-Site", Arrays.asList("same-origin"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		headers.put("Sec-Fetch-Site", Arrays.asList("none"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeWithFetchMetadataRejectsCrossSite() {
+		parameters.put(InitParameterNames.FETCH_METADATA_ENABLED, "true");
+		ScrutinyPipeline pipeline = pipeline();
+		headers.put("Sec-Fetch-Site", Arrays.asList("cross-site"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.CROSS_SITE);
+		doReturn("GET").when(request).getMethod();
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeWithFetchMetadataFallsBackToOriginForCrossSiteWhenOriginsAreAllowed() {
+		parameters.put(InitParameterNames.FETCH_METADATA_ENABLED, "true");
+		parameters.put(InitParameterNames.ALLOWED_ORIGINS, "partner.com");
+		ScrutinyPipeline pipeline = pipeline();
+		headers.put("Sec-Fetch-Site", Arrays.asList("cross-site"));
+		headers.put("Host", Arrays.asList("a-host"));
+		headers.put("Origin", Arrays.asList("https://partner.com"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		headers.put("Origin", Arrays.asList("https://attacker.com"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+	}
+
+	@Test
+	public void scrutinizeWithFetchMetadataFallsBackToOriginOtherwise() {
+		parameters.put(InitParameterNames.FETCH_METADATA_ENABLED, "true");
+		ScrutinyPipeline pipeline = pipeline();
+		headers.put("Host", Arrays.asList("a-host"));
+		headers.put("Origin", Arrays.asList("https://other.a-host"));
+		headers.put("Sec-Fetch-Site", Arrays.asList("same-site"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.put("Sec-Fetch-Site", Arrays.asList("same-origin", "same-origin"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.put("Sec-Fetch-Site", Arrays.asList("SAME-ORIGIN"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.remove("Sec-Fetch-Site");
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+	}
+
+	@Test
+	public void scrutinizeWithEliminatedMethodPolicy() {
+		parameters.put(InitParameterNames.METHOD_POLICY, "GET=enforce");
+		ScrutinyPipeline pipeline = pipeline();
+		headers.put("Origin", Arrays.asList("https://a-host"));
+		headers.put("Host", Arrays.asList("a-different-host"));
+		doReturn("GET").when(request).getMethod();
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.put("Host", Arrays.asList("a-host"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeWithSkippedMethods() {
+		parameters.put(InitParameterNames.METHOD_POLICY, "GET=skip *=skip");
+		headers.put("Origin", Arrays.asList("https://a-host", "https://a-host"));
+		assertThat(pipeline().scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	@Test
+	public void scrutinizeWithHeadersOnlyPolicy() {
+		parameters.put(InitParameterNames.METHOD_POLICY, "*=headers-only");
+		ScrutinyPipeline pipeline = pipeline();
+		headers.put("Origin", Arrays.asList("https://a-host"));
+		headers.put("Host", Arrays.asList("a-different-host"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		headers.remove("Host");
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.MISSING_HOST);
+	}
+
+	@Test
+	public void describeHostPolicies() throws IOException {
+		parameters.put(InitParameterNames.METHOD_POLICY, "GET=enforce");
+		parameters.put(InitParameterNames.HOST_POLICY_FILE, hostPolicyFile());
+		assertThat(pipeline().describe()).isEqualTo("host policy\n" //
+				+ "host a-host:\n" //
+				+ "  exclusion paths\n" //
+				+ "  read headers\n" //
+				+ "  Origin header, X-Forwarded-Host or Host, compare host\n" //
+				+ "  Referer header, X-Forwarded-Host or Host, compare host\n" //
+				+ "  allow\n" //
+				+ "host b-host:\n" //
+				+ "  read headers\n" //
+				+ "  Origin header, X-Forwarded-Host or Host, compare host, or allowed origins\n" //
+				+ "  Referer header, X-Forwarded-Host or Host, compare host, or allowed origins\n" //
+				+ "  allow\n" //
+				+ "other hosts:\n" //
+				+ "  read headers\n" //
+				+ "  Origin header, X-Forwarded-Host or Host, compare host\n" //
+				+ "  Referer header, X-Forwarded-Host or Host, compare host\n" //
+				+ "  allow\n");
+	}
+
+	@Test
+	public void scrutinizeWithHostPolicies() throws IOException {
+		parameters.put(InitParameterNames.HOST_POLICY_FILE, hostPolicyFile());
+		ScrutinyPipeline pipeline = pipeline();
+		headers.put("Origin", Arrays.asList("https://a-partner.com"));
+		headers.put("Host", Arrays.asList("A-Host:8443"));
+		doReturn("/public/a-page").when(request).getRequestUri();
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.EXCLUDED);
+		doReturn("/a-path").when(request).getRequestUri();
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.put("Host", Arrays.asList("b-host"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+		headers.put("Host", Arrays.asList("c-host"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.HOST_MISMATCH);
+		headers.remove("Host");
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.MISSING_HOST);
+	}
+
+	@Test
+	public void scrutinizeWithHostPoliciesUsesForwardedHost() throws IOException {
+		parameters.put(InitParameterNames.HOST_POLICY_FILE, hostPolicyFile());
+		ScrutinyPipeline pipeline = pipeline();
+		headers.put("Origin", Arrays.asList("https://a-partner.com"));
+		headers.put("Host", Arrays.asList("a-proxy"));
+		headers.put("X-Forwarded-Host", Arrays.asList("b-host"));
+		assertThat(pipeline.scrutinize(request)).isEqualTo(Verdict.ALLOWED);
+	}
+
+	private String hostPolicyFile() throws IOException {
+		Path file = folder.newFile("host-policy.properties").toPath();
+		Files.write(file, ("a-host.exclusion-paths = /public/\n" //
+				+ "b-host.allowed-origins = a-partner.com\n").getBytes(StandardCharsets.UTF_8));
+		return file.toString();
+	}
+
+	private ScrutinyPipeline pipeline() {
+		return new ScrutinyPipeline(new Policy(parameters::get), Optional.empty(), Optional.empty(), Optional.empty(),
+				Optional.empty(), Optional.empty(), new RejectionReport(16));
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class UriDecoderTest {
+
+	@Test
+	public void decode() {
+		assertThat(UriDecoder.decode("a path")).isEqualTo("a path");
+	}
+
+	@Test
+	public void decodeEmpty() {
+		assertThat(UriDecoder.decode("")).isEqualTo("");
+	}
+
+	@Test
+	public void decodePathWithEncodedSpaces() {
+		assertThat(UriDecoder.decode("one%20two")).isEqualTo("one two");
+	}
+
+	@Test
+	public void decodeDoesNotDecodePlus() {
+		assertThat(UriDecoder.decode("one+two")).isEqualTo("one+two");
+		assertThat(UriDecoder.decode("one+two%2B")).isEqualTo("one+two+");
+	}
+
+	@Test
+	public void decodeReturnsPathWithoutEscapesAsIs() {
+		String path = "/a/path/without/escapes";
+		assertThat(UriDecoder.decode(path)).isSameAs(path);
+	}
+
+	@Test
+	public void decodeMultiByteCharacters() {
+		assertThat(UriDecoder.decode("/caf%C3%A9/%E2%82%AC")).isEqualTo("/caf\u00e9/\u20ac");
+		assertThat(UriDecoder.decode("%f0%9f%98%80")).isEqualTo("\ud83d\ude00");
+	}
+
+	@Test
+	public void decodeLeavesMalformedEscapesUndecoded() {
+		assertThat(UriDecoder.decode("100%")).isEqualTo("100%");
+		assertThat(UriDecoder.decode("%2")).isEqualTo("%2");
+		assertThat(UriDecoder.decode("%zz%20")).isEqualTo("%zz ");
+		assertThat(UriDecoder.decode("%%20")).isEqualTo("% ");
+	}
+
+	@Test
+	public void decodeInvalidUtf8WithReplacementCharacter() {
+		assertThat(UriDecoder.decode("a%FFb")).isEqualTo("a\ufffdb");
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.netty;
+
+import static java.util.Objects.requireNonNull;
+
+import com.tasktop.servlet.cors.core.CorsHeaderScrutinizer;
+import com.tasktop.servlet.cors.core.Verdict;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Scrutinizes the headers of each {@link HttpRequest} read from a channel, rejecting requests that are not allowed
+ * with a {@code 403 Forbidden} response that closes the connection. Allowed CORS preflight requests are answered
+ * with a {@code 204 No Content} response when preflight responses are enabled. The content of requests that are
+ * answered by this handler is discarded.
+ * <p>
+ * Since it tracks the request being read, a handler must be added to a single pipeline, after the
+ * {@code HttpServerCodec}. The {@link CorsHeaderScrutinizer} should be shared by the handlers of all channels.
+ */
+public class CorsHeaderScrutinyHandler extends ChannelInboundHandlerAdapter {
+
+	private static final String FORBIDDEN_MESSAGE = "Forbidden";// don't disclose the reason
+
+	private final CorsHeaderScrutinizer scrutinizer;
+
+	private boolean discardingContent;
+
+	public CorsHeaderScrutinyHandler(CorsHeaderScrutinizer scrutinizer) {
+		this.scrutinizer = requireNonNull(scrutinizer);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof HttpRequest) {
+			HttpRequest request = (HttpRequest) msg;
+			NettyScrutinizedRequest scrutinizedRequest = new NettyScrutinizedRequest(request,
+					ctx.channel().remoteAddress());
+			Verdict verdict = scrutinizer.scrutinize(scrutinizedRequest);
+			discardingContent = !verdict.isAllowed() || verdict == Verdict.PREFLIGHT;
+			if (!verdict.isAllowed()) {
+				ctx.writeAndFlush(forbiddenResponse()).addListener(ChannelFutureListener.CLOSE);
+			} else if (verdict == Verdict.PREFLIGHT) {
+				ChannelFuture future = ctx.writeAndFlush(preflightResponse(scrutinizedRequest));
+				if (!HttpUtil.isKeepAlive(request)) {
+					future.addListener(ChannelFutureListener.CLOSE);
+				}
+			}
+		}
+		if (discardingContent) {
+			if (msg instanceof LastHttpContent) {
+				discardingContent = false;
+			}
+			ReferenceCountUtil.release(msg);
+			return;
+		}
+		ctx.fireChannelRead(msg);
+	}
+
+	private FullHttpResponse preflightResponse(NettyScrutinizedRequest request) {
+		FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NO_CONTENT);
+		scrutinizer.writePreflightHeaders(request, response.headers()::set);
+		return response;
+	}
+
+	private FullHttpResponse forbiddenResponse() {
+		FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.FORBIDDEN,
+				Unpooled.copiedBuffer(FORBIDDEN_MESSAGE, CharsetUtil.UTF_8));
+		response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+		response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+		response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+		return response;
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.netty;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Iterator;
+
+import com.tasktop.servlet.cors.core.ScrutinizedRequest;
+
+import io.netty.handler.codec.http.HttpRequest;
+
+class NettyScrutinizedRequest implements ScrutinizedRequest {
+
+	private static final String SCHEME_DELIMITER = "://";
+
+	private final HttpRequest request;
+
+	private final SocketAddress remoteAddress;
+
+	NettyScrutinizedRequest(HttpRequest request, SocketAddress remoteAddress) {
+		this.request = request;
+		this.remoteAddress = remoteAddress;
+	}
+
+	@Override
+	public String getMethod() {
+		return request.method().name();
+	}
+
+	/**
+	 * Provides the path of the request target, which may be in origin form ({@code /path?query}) or, when sent to a
+	 * proxy, in absolute form ({@code http://host/path?query}).
+	 */
+	@Override
+	public String getRequestUri() {
+		String uri = request.uri();
+		int start = 0;
+		int schemeDelimiter = uri.indexOf(SCHEME_DELIMITER);
+		if (schemeDelimiter > 0 && !uri.startsWith("/")) {
+			int pathStart = uri.indexOf('/', schemeDelimiter + SCHEME_DELIMITER.length());
+			if (pathStart < 0) {
+				return "/";
+			}
+			start = pathStart;
+		}
+		int end = uri.indexOf('?', start);
+		if (end < 0) {
+			end = uri.length();
+		}
+		return start == 0 && end == uri.length() ? uri : uri.substring(start, end);
+	}
+
+	@Override
+	public String getContextPath() {
+		return "";
+	}
+
+	@Override
+	public Iterator<String> getHeaders(String name) {
+		return request.headers().valueStringIterator(name);
+	}
+
+	/**
+	 * Provides the IP address of the remote end of the channel, or {@code null} if the channel is not an IP socket.
+	 */
+	@Override
+	public String getRemoteAddress() {
+		if (remoteAddress instanceof InetSocketAddress) {
+			InetAddress address = ((InetSocketAddress) remoteAddress).getAddress();
+			return address == null ? null : address.getHostAddress();
+		}
+		return null;
+	}
+}
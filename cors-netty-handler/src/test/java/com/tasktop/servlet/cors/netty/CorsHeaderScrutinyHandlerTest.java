@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.netty;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.tasktop.servlet.cors.core.CorsHeaderScrutinizer;
+import com.tasktop.servlet.cors.core.InitParameterNames;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+public class CorsHeaderScrutinyHandlerTest {
+
+	private final Map<String, String> parameters = new HashMap<>();
+
+	private EmbeddedChannel channel;
+
+	@After
+	public void after() {
+		channel.finishAndReleaseAll();
+	}
+
+	@Test
+	public void channelReadPassesRequestWithoutOriginOrReferer() {
+		channel = newChannel();
+		FullHttpRequest request = request(HttpMethod.POST, "/a-path");
+		assertThat(channel.writeInbound(request)).isTrue();
+		assertThat((Object) channel.readInbound()).isSameAs(request);
+		assertThat((Object) channel.readOutbound()).isNull();
+	}
+
+	@Test
+	public void channelReadPassesRequestWithMatchingOrigin() {
+		channel = newChannel();
+		FullHttpRequest request = request(HttpMethod.POST, "/a-path");
+		request.headers().set(HttpHeaderNames.ORIGIN, "http://a-host");
+		request.headers().set(HttpHeaderNames.HOST, "a-host");
+		channel.writeInbound(request);
+		assertThat((Object) channel.readInbound()).isSameAs(request);
+	}
+
+	@Test
+	public void channelReadRejectsRequestWithOriginWithDifferentHost() {
+		channel = newChannel();
+		FullHttpRequest request = request(HttpMethod.POST, "/a-path");
+		request.headers().set(HttpHeaderNames.ORIGIN, "http://a-host");
+		request.headers().set(HttpHeaderNames.HOST, "a-different-host");
+		assertThat(channel.writeInbound(request)).isFalse();
+		assertThat(request.refCnt()).isEqualTo(0);
+		expectForbidden();
+		assertThat(channel.isOpen()).isFalse();
+	}
+
+	@Test
+	public void channelReadRejectsRequestWithDuplicateReferer() {
+		channel = newChannel();
+		HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/a-path");
+		request.headers().add(HttpHeaderNames.REFERER, "http://a-host/");
+		request.headers().add(HttpHeaderNames.REFERER, "http://a-host/");
+		request.headers().set(HttpHeaderNames.HOST, "a-host");
+		assertThat(channel.writeInbound(request)).isFalse();
+		expectForbidden();
+		assertThat(channel.isOpen()).isFalse();
+	}
+
+	@Test
+	public void channelReadAnswersPreflightRequest() {
+		parameters.put(InitParameterNames.PREFLIGHT_ENABLED, "true");
+		parameters.put(InitParameterNames.PREFLIGHT_MAX_AGE, "600");
+		parameters.put(InitParameterNames.ALLOWED_ORIGINS, "partner.com");
+		channel = newChannel();
+		FullHttpRequest request = request(HttpMethod.OPTIONS, "/a-path");
+		request.headers().set(HttpHeaderNames.ORIGIN, "https://partner.com");
+		request.headers().set(HttpHeaderNames.HOST, "a-host");
+		request.headers().set(HttpHeaderNames.ACCESS_CONTROL_REQUEST_METHOD, "POST");
+		assertThat(channel.writeInbound(request)).isFalse();
+		assertThat(request.refCnt()).isEqualTo(0);
+		FullHttpResponse response = channel.readOutbound();
+		try {
+			assertThat(response.status()).isEqualTo(HttpResponseStatus.NO_CONTENT);
+			assertThat(response.headers().get(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN))
+					.isEqualTo("https://partner.com");
+			assertThat(response.headers().get(HttpHeaderNames.ACCESS_CONTROL_ALLOW_METHODS))
+					.isEqualTo("GET, HEAD, POST");
+			assertThat(response.headers().get(HttpHeaderNames.ACCESS_CONTROL_MAX_AGE)).isEqualTo("600");
+		} finally {
+			response.release();
+		}
+		assertThat(channel.isOpen()).isTrue();
+	}
+
+	@Test
+	public void channelReadPassesRequestForExcludedPath() {
+		parameters.put(InitParameterNames.EXCLUSION_PATHS, "/excluded");
+		channel = newChannel();
+		FullHttpRequest request = request(HttpMethod.POST, "/excluded/path?a=b");
+		request.headers().set(HttpHeaderNames.ORIGIN, "http://a-host");
+		channel.writeInbound(request);
+		assertThat((Object) channel.readInbound()).isSameAs(request);
+	}
+
+	private void expectForbidden() {
+		assertThat((Object) channel.readInbound()).isNull();
+		FullHttpResponse response = channel.readOutbound();
+		try {
+			assertThat(response.status()).isEqualTo(HttpResponseStatus.FORBIDDEN);
+			assertThat(response.content().toString(CharsetUtil.UTF_8)).isEqualTo("Forbidden");
+		} finally {
+			response.release();
+		}
+	}
+
+	private EmbeddedChannel newChannel() {
+		parameters.put(InitParameterNames.METRICS_ENABLED, "false");
+		return new EmbeddedChannel(new CorsHeaderScrutinyHandler(new CorsHeaderScrutinizer(parameters::get)));
+	}
+
+	private FullHttpRequest request(HttpMethod method, String uri) {
+		return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+	}
+}
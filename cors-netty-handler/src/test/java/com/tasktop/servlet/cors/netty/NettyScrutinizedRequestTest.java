@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.netty;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Test;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class NettyScrutinizedRequestTest {
+
+	@Test
+	public void getRequestUriInOriginForm() {
+		assertThat(requestUri("/")).isEqualTo("/");
+		assertThat(requestUri("/a/path")).isEqualTo("/a/path");
+		assertThat(requestUri("/a/path?a=b")).isEqualTo("/a/path");
+		assertThat(requestUri("/a/path?a=http://b/c")).isEqualTo("/a/path");
+	}
+
+	@Test
+	public void getRequestUriInAbsoluteForm() {
+		assertThat(requestUri("http://a-host")).isEqualTo("/");
+		assertThat(requestUri("http://a-host/a/path")).isEqualTo("/a/path");
+		assertThat(requestUri("https://a-host:8443/a/path?a=b")).isEqualTo("/a/path");
+	}
+
+	@Test
+	public void getHeaders() {
+		DefaultHttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+		request.headers().add("Referer", "http://a/").add("referer", "http://b/");
+		assertThat(new NettyScrutinizedRequest(request, null).getHeaders("Referer")).containsOnly("http://a/",
+				"http://b/");
+		assertThat(new NettyScrutinizedRequest(request, null).getHeaders("Origin")).isEmpty();
+		assertThat(new NettyScrutinizedRequest(request, null).getMethod()).isEqualTo("GET");
+		assertThat(new NettyScrutinizedRequest(request, null).getContextPath()).isEmpty();
+	}
+
+	@Test
+	public void getRemoteAddress() {
+		DefaultHttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+		assertThat(new NettyScrutinizedRequest(request, new InetSocketAddress("192.0.2.1", 43210)).getRemoteAddress())
+				.isEqualTo("192.0.2.1");
+		assertThat(new NettyScrutinizedRequest(request, null).getRemoteAddress()).isNull();
+	}
+
+	private String requestUri(String uri) {
+		return new NettyScrutinizedRequest(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri), null)
+				.getRequestUri();
+	}
+}
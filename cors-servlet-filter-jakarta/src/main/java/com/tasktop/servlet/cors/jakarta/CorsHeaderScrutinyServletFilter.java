@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.jakarta;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import javax.management.JMException;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import com.tasktop.servlet.cors.core.CorsHeaderScrutinizer;
+import com.tasktop.servlet.cors.core.ReportOnlySummary;
+import com.tasktop.servlet.cors.core.Verdict;
+import com.tasktop.servlet.cors.core.VerdictCacheStatistics;
+
+//based on https://www.owasp.org/index.php/CORS_OriginHeaderScrutiny
+public class CorsHeaderScrutinyServletFilter implements Filter {
+
+	private static final String FORBIDDEN_MESSAGE = "Forbidden";// don't disclose the reason
+
+	private static final String SET_COOKIE_HEADER = "Set-Cookie";
+
+	private static final String ERROR_STATUS_CODE_ATTRIBUTE = "jakarta.servlet.error.status_code";
+
+	private static final String VERDICT_ATTRIBUTE_PREFIX = "com.tasktop.servlet.cors.verdict.";
+
+	// scrutinizes with the default policy until init is called
+	private CorsHeaderScrutinizer scrutinizer = new CorsHeaderScrutinizer(name -> null);
+
+	private String verdictAttributeName = VERDICT_ATTRIBUTE_PREFIX + getClass().getSimpleName();
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		CorsHeaderScrutinizer previousScrutinizer = scrutinizer;
+		scrutinizer = new CorsHeaderScrutinizer(filterConfig::getInitParameter);
+		previousScrutinizer.close();
+		verdictAttributeName = VERDICT_ATTRIBUTE_PREFIX + getFilterName(filterConfig);
+		registerMetrics(filterConfig);
+	}
+
+	/**
+	 * Provides the statistics of the cache of Origin verdicts, which is present only when enabled by the
+	 * {@code verdict-cache-enabled} init parameter.
+	 */
+	public Optional<VerdictCacheStatistics> getVerdictCacheStatistics() {
+		return scrutinizer.getVerdictCacheStatistics();
+	}
+
+	/**
+	 * Provides the summary of the requests that would have been rejected while the {@code mode} init parameter is
+	 * {@code report-only}.
+	 */
+	public ReportOnlySummary getReportOnlySummary() {
+		return scrutinizer.getReportOnlySummary();
+	}
+
+	/**
+	 * Describes the checks that this filter applies to requests under the current policy, for debugging.
+	 */
+	public String describePipeline() {
+		return scrutinizer.describePipeline();
+	}
+
+	/**
+	 * Scrutinizes the request, unless it is a forward, include or error dispatch of a request that was already
+	 * scrutinized by this filter, in which case the verdict stored in a request attribute is reused. An error dispatch
+	 * of a rejected request is passed on so that the error page is rendered.
+	 */
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		boolean reuseVerdict = !scrutinizer.isRescrutinizingDispatches();
+		Verdict verdict = reuseVerdict ? (Verdict) request.getAttribute(verdictAttributeName) : null;
+		if (verdict != null) {
+			if (verdict.isAllowed() || request.getAttribute(ERROR_STATUS_CODE_ATTRIBUTE) != null) {
+				chain.doFilter(request, response);
+			} else {
+				((HttpServletResponse) response).sendError(HttpServletResponse.SC_FORBIDDEN, FORBIDDEN_MESSAGE);
+			}
+			return;
+		}
+		verdict = scrutinize((HttpServletRequest) request, (HttpServletResponse) response);
+		if (reuseVerdict) {
+			request.setAttribute(verdictAttributeName, verdict);
+		}
+		if (!verdict.isAllowed()) {
+			((HttpServletResponse) response).sendError(HttpServletResponse.SC_FORBIDDEN, FORBIDDEN_MESSAGE);
+			return;
+		}
+		if (verdict != Verdict.PREFLIGHT) {
+			chain.doFilter(request, response);
+		}
+	}
+
+	/**
+	 * Scrutinizes the given request, through a new adapter unless its path is excluded from scrutiny, and answers it if
+	 * it is a preflight request. Otherwise, writes the token cookie to the response of an allowed request in token
+	 * mode.
+	 */
+	private Verdict scrutinize(HttpServletRequest request, HttpServletResponse response) {
+		Optional<Verdict> pathVerdict = scrutinizer.scrutinizePath(request.getRequestURI(), request.getContextPath());
+		if (pathVerdict.isPresent()) {
+			if (scrutinizer.isIssuingTokens()) {
+				issueTokenCookie(new ServletScrutinizedRequest(request), response);
+			}
+			return pathVerdict.get();
+		}
+		ServletScrutinizedRequest scrutinizedRequest = new ServletScrutinizedRequest(request);
+		Verdict verdict = scrutinizer.scrutinizeIncludedPath(scrutinizedRequest);
+		if (verdict == Verdict.PREFLIGHT) {
+			scrutinizer.writePreflightHeaders(scrutinizedRequest, response::setHeader);
+			response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+		} else if (verdict.isAllowed()) {
+			issueTokenCookie(scrutinizedRequest, response);
+		}
+		return verdict;
+	}
+
+	private void issueTokenCookie(ServletScrutinizedRequest request, HttpServletResponse response) {
+		Optional<String> tokenCookie = scrutinizer.issueTokenCookie(request);
+		if (tokenCookie.isPresent()) {
+			response.addHeader(SET_COOKIE_HEADER, tokenCookie.get());
+		}
+	}
+
+	@Override
+	public void destroy() {
+		scrutinizer.close();
+	}
+
+	private String getFilterName(FilterConfig filterConfig) {
+		return Optional.ofNullable(filterConfig.getFilterName()).orElse(getClass().getSimpleName());
+	}
+
+	private void registerMetrics(FilterConfig filterConfig) throws ServletException {
+		String filterName = getFilterName(filterConfig);
+		Optional<String> contextPath = Optional.ofNullable(filterConfig.getServletContext())
+				.map(ServletContext::getContextPath);
+		try {
+			scrutinizer.registerMetrics(getClass().getSimpleName(), filterName, contextPath);
+		} catch (JMException e) {
+			throw new ServletException("Cannot register metrics", e);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.jakarta;
+
+import java.util.Enumeration;
+import java.util.Iterator;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import com.tasktop.servlet.cors.core.ScrutinizedRequest;
+
+/**
+ * Adapts a servlet request for scrutiny. Instances are created for each request, and are small and short-lived enough
+ * for the allocation to be cheap or eliminated, so that no object of the application is kept in the thread-locals of
+ * the threads of the server.
+ */
+class ServletScrutinizedRequest implements ScrutinizedRequest {
+
+	private final HttpServletRequest request;
+
+	ServletScrutinizedRequest(HttpServletRequest request) {
+		this.request = request;
+	}
+
+	@Override
+	public String getMethod() {
+		return request.getMethod();
+	}
+
+	@Override
+	public String getRequestUri() {
+		return request.getRequestURI();
+	}
+
+	@Override
+	public String getContextPath() {
+		return request.getContextPath();
+	}
+
+	@Override
+	public String getRemoteAddress() {
+		return request.getRemoteAddr();
+	}
+
+	@Override
+	public Iterator<String> getHeaders(String name) {
+		return new HeaderValues(request.getHeaders(name));
+	}
+
+	/**
+	 * Iterates over the values of a header, independently of the iterators over other headers.
+	 */
+	private static class HeaderValues implements Iterator<String> {
+
+		private final Enumeration<String> values;
+
+		HeaderValues(Enumeration<String> values) {
+			this.values = values;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return values.hasMoreElements();
+		}
+
+		@Override
+		public String next() {
+			return values.nextElement();
+		}
+	}
+}
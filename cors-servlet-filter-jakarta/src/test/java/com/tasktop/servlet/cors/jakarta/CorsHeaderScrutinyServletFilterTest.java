@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors.jakarta;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tasktop.servlet.cors.core.InitParameterNames;
+import com.tasktop.servlet.cors.core.Verdict;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+public class CorsHeaderScrutinyServletFilterTest {
+
+	private static final String VERDICT_ATTRIBUTE = "com.tasktop.servlet.cors.verdict."
+			+ CorsHeaderScrutinyServletFilter.class.getSimpleName();
+
+	private final HttpServletResponse response = mock(HttpServletResponse.class);
+
+	private final HttpServletRequest request = mock(HttpServletRequest.class);
+
+	private final CorsHeaderScrutinyServletFilter filter = new CorsHeaderScrutinyServletFilter();
+
+	private final FilterChain chain = mock(FilterChain.class);
+
+	@Before
+	public void before() {
+		doReturn("POST").when(request).getMethod();
+		doReturn(Collections.emptyEnumeration()).when(request).getHeaders(any());
+	}
+
+	@Test
+	public void doFilterAcceptsRequestWithoutOriginOrReferer() throws IOException, ServletException {
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterAcceptsRequestWithMatchingOrigin() throws IOException, ServletException {
+		mockHeader("Origin", "http://a-host");
+		mockHeader("Host", "a-host");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithOriginWithDifferentHost() throws IOException, ServletException {
+		mockHeader("Origin", "http://a-host");
+		mockHeader("Host", "a-different-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithDuplicateReferer() throws IOException, ServletException {
+		mockHeader("Referer", "http://a-host/", "http://a-host/");
+		mockHeader("Host", "a-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterAcceptsRequestForExcludedPath() throws IOException, ServletException {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("false").when(config).getInitParameter(InitParameterNames.METRICS_ENABLED);
+		doReturn("/excluded").when(config).getInitParameter(InitParameterNames.EXCLUSION_PATHS);
+		filter.init(config);
+		doReturn("/a-context").when(request).getContextPath();
+		doReturn("/a-context/excluded/path").when(request).getRequestURI();
+		mockHeader("Origin", "http://a-host");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterInTokenModeIssuesTokenCookie() throws IOException, ServletException {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("false").when(config).getInitParameter(InitParameterNames.METRICS_ENABLED);
+		doReturn(Base64.getEncoder().encodeToString(new byte[32])).when(config)
+				.getInitParameter(InitParameterNames.TOKEN_SECRET);
+		filter.init(config);
+		doReturn("GET").when(request).getMethod();
+		filter.doFilter(request, response, chain);
+		verify(response).addHeader(eq("Set-Cookie"), startsWith("XSRF-TOKEN="));
+		verify(chain).doFilter(request, response);
+		filter.destroy();
+	}
+
+	@Test
+	public void doFilterReusesVerdictOfEarlierDispatch() throws IOException, ServletException {
+		doReturn(Verdict.ALLOWED).when(request).getAttribute(VERDICT_ATTRIBUTE);
+		mockHeader("Origin", "http://a-host");
+		mockHeader("Host", "a-different-host");
+		filter.doFilter(request, response, chain);
+		verify(request, never()).getHeaders(any());
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterPassesErrorDispatchOfRejectedRequest() throws IOException, ServletException {
+		doReturn(Verdict.HOST_MISMATCH).when(request).getAttribute(VERDICT_ATTRIBUTE);
+		doReturn(HttpServletResponse.SC_FORBIDDEN).when(request).getAttribute("jakarta.servlet.error.status_code");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void initRegistersMetricsAndDestroyUnregistersThem() throws Exception {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("a-jakarta-filter").when(config).getFilterName();
+		filter.init(config);
+		ObjectName name = new ObjectName("com.tasktop.servlet.cors:type="
+				+ CorsHeaderScrutinyServletFilter.class.getSimpleName() + ",name=\"a-jakarta-filter\"");
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isTrue();
+
+		filter.destroy();
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isFalse();
+	}
+
+	private void expectAccepted() throws IOException, ServletException {
+		verify(chain).doFilter(request, response);
+		verifyNoMoreInteractions(chain, response);
+	}
+
+	private void expectForbidden() throws IOException {
+		verify(response).sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden");
+		verifyNoMoreInteractions(chain);
+	}
+
+	private void mockHeader(String headerName, String... values) {
+		doAnswer(i -> Collections.enumeration(Arrays.asList(values))).when(request).getHeaders(headerName);
+	}
+}
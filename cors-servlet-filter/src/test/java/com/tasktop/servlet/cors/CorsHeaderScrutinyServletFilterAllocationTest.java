@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tasktop.servlet.cors.core.InitParameterNames;
+
+/**
+ * Fails when the number of bytes allocated per request by {@link CorsHeaderScrutinyServletFilter#doFilter} exceeds the
+ * budget of a scenario. Each scenario is run until it is compiled, so that allocations which the JIT compiler
+ * eliminates are not counted, and then measured with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes}.
+ * The budgets cover the adapter of the request, the view of its headers and an iterator per header read, which are
+ * allocated per request rather than kept in thread-locals that would retain the classes of the application. The tests
+ * are skipped on JVMs that cannot measure allocations.
+ */
+public class CorsHeaderScrutinyServletFilterAllocationTest {
+
+	private static final int WARMUP_ITERATIONS = 50_000;
+
+	private static final int MEASURED_ITERATIONS = 100_000;
+
+	private static final String CONTEXT_PATH = "/app";
+
+	private static final String HOST = "tasks.example.com";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final CorsHeaderScrutinyServletFilter filter = new CorsHeaderScrutinyServletFilter();
+
+	private final StubHttpServletResponse response = new StubHttpServletResponse();
+
+	private final FilterChain chain = new NoOpFilterChain();
+
+	private com.sun.management.ThreadMXBean threadBean;
+
+	@Before
+	public void before() throws ServletException {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		filter.init(new StubFilterConfig().initParameter(InitParameterNames.EXCLUSION_PATHS, "/webhooks/ /static/")
+				.initParameter(InitParameterNames.ALLOWED_ORIGINS, "*.partner.com")
+				.initParameter(InitParameterNames.VERDICT_CACHE_ENABLED, "true")
+				.initParameter(InitParameterNames.PREFLIGHT_ENABLED, "true")
+				.initParameter(InitParameterNames.FETCH_METADATA_ENABLED, "true"));
+	}
+
+	@After
+	public void after() {
+		filter.destroy();
+	}
+
+	@Test
+	public void excludedPath() throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(0,
+				new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/webhooks/github/push")
+						.header("Host", HOST).header("Origin", "https://github.com"));
+	}
+
+	@Test
+	public void sameOriginPost() throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(160,
+				new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks/1234/comments")
+						.header("Host", HOST).header("Origin", "https://" + HOST)
+						.header("Referer", "https://" + HOST + "/app/tasks/1234"));
+	}
+
+	@Test
+	public void sameOriginPostWithFetchMetadata() throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(96,
+				new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks/1234/comments")
+						.header("Host", HOST).header("Origin", "https://" + HOST)
+						.header("Sec-Fetch-Site", "same-origin"));
+	}
+
+	@Test
+	public void crossSitePostWithFetchMetadata() throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(144,
+				new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks").header("Host", HOST)
+						.header("Origin", "https://attacker.example.net").header("Sec-Fetch-Site", "cross-site"));
+	}
+
+	@Test
+	public void noOriginOrReferer() throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(128,
+				new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks").header("Host", HOST));
+	}
+
+	@Test
+	public void getWithReferer() throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(176,
+				new StubHttpServletRequest("GET", CONTEXT_PATH, CONTEXT_PATH + "/tasks/1234").header("Host", HOST)
+						.header("Referer", "https://" + HOST + "/app/search?query=status%3Aopen#results"));
+	}
+
+	@Test
+	public void allowedOriginPost() throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(160,
+				new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks").header("Host", HOST)
+						.header("Origin", "https://app.partner.com"));
+	}
+
+	@Test
+	public void crossOriginPost() throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(144,
+				new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks").header("Host", HOST)
+						.header("Origin", "https://attacker.example.net"));
+	}
+
+	@Test
+	public void duplicateOrigin() throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(128,
+				new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks").header("Host", HOST)
+						.header("Origin", "https://" + HOST, "https://attacker.example.net"));
+	}
+
+	@Test
+	public void preflight() throws IOException, ServletException {
+		// including the header writer and the origin passed to the preflight response
+		assertAllocatedBytesPerRequestAtMost(224,
+				new StubHttpServletRequest("OPTIONS", CONTEXT_PATH, CONTEXT_PATH + "/tasks").header("Host", HOST)
+						.header("Origin", "https://" + HOST).header("Access-Control-Request-Method", "PUT"));
+	}
+
+	@Test
+	public void forwardOfScrutinizedRequest() throws IOException, ServletException {
+		StubHttpServletRequest request = new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks")
+				.header("Host", HOST).header("Origin", "https://" + HOST);
+		filter.doFilter(request, response, chain);
+		assertAllocatedBytesPerRequestAtMost(0, request, false);
+	}
+
+	@Test
+	public void tokenWithoutOriginOrReferer() throws IOException, ServletException {
+		CorsHeaderScrutinyServletFilter tokenFilter = new CorsHeaderScrutinyServletFilter();
+		tokenFilter.init(new StubFilterConfig().initParameter(InitParameterNames.TOKEN_SECRET,
+				"c2VjcmV0IGtleSBvZiB0aGUgYWxsb2NhdGlvbiB0ZXN0Cg=="));
+		try {
+			tokenFilter.doFilter(new StubHttpServletRequest("GET", CONTEXT_PATH, CONTEXT_PATH + "/tasks")
+					.header("Host", HOST), response, chain);
+			String cookie = response.getAddedHeader("Set-Cookie");
+			String token = cookie.substring(cookie.indexOf('=') + 1, cookie.indexOf(';'));
+			// also covers the three 32 byte arrays that Mac.doFinal and the HmacSHA256 implementation of the JDK
+			// allocate, which escape analysis only sometimes removes
+			assertAllocatedBytesPerRequestAtMost(256, tokenFilter,
+					new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks").header("Host", HOST)
+							.header("Cookie", "SESSION=1234; XSRF-TOKEN=" + token).header("X-XSRF-TOKEN", token),
+					true);
+			assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+		} finally {
+			tokenFilter.destroy();
+		}
+	}
+
+	@Test
+	public void virtualHostPolicy() throws IOException, ServletException {
+		Path file = folder.newFile("host-policy.properties").toPath();
+		Files.write(file, ("wiki.example.com.allowed-origins = *.partner.com\n" //
+				+ "tasks.example.com.exclusion-paths = /webhooks/\n").getBytes(StandardCharsets.UTF_8));
+		CorsHeaderScrutinyServletFilter hostFilter = new CorsHeaderScrutinyServletFilter();
+		hostFilter.init(new StubFilterConfig().initParameter(InitParameterNames.HOST_POLICY_FILE, file.toString()));
+		try {
+			assertAllocatedBytesPerRequestAtMost(160, hostFilter,
+					new StubHttpServletRequest("POST", CONTEXT_PATH, CONTEXT_PATH + "/tasks")
+							.header("Host", "Tasks.Example.com:8443").header("Origin", "https://tasks.example.com"),
+					true);
+			assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+		} finally {
+			hostFilter.destroy();
+		}
+	}
+
+	private void assertAllocatedBytesPerRequestAtMost(long budget, StubHttpServletRequest request)
+			throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(budget, request, true);
+	}
+
+	private void assertAllocatedBytesPerRequestAtMost(long budget, StubHttpServletRequest request,
+			boolean newRequest) throws IOException, ServletException {
+		assertAllocatedBytesPerRequestAtMost(budget, filter, request, newRequest);
+	}
+
+	private void assertAllocatedBytesPerRequestAtMost(long budget, CorsHeaderScrutinyServletFilter filter,
+			StubHttpServletRequest request, boolean newRequest) throws IOException, ServletException {
+		for (int iteration = 0; iteration < WARMUP_ITERATIONS; ++iteration) {
+			doFilter(filter, request, newRequest);
+		}
+		long threadId = Thread.currentThread().getId();
+		long allocatedBytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+		for (int iteration = 0; iteration < MEASURED_ITERATIONS; ++iteration) {
+			doFilter(filter, request, newRequest);
+		}
+		long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+		assertThat(allocatedBytes / MEASURED_ITERATIONS).as("bytes allocated per request").isLessThanOrEqualTo(budget);
+	}
+
+	private void doFilter(CorsHeaderScrutinyServletFilter filter, StubHttpServletRequest request, boolean newRequest)
+			throws IOException, ServletException {
+		if (newRequest) {
+			request.clearAttributes();
+		}
+		filter.doFilter(request, response, chain);
+	}
+
+	private static class NoOpFilterChain implements FilterChain {
+
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) {
+			// nothing to do
+		}
+	}
+}
@@ -0,0 +1,579 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+
+import com.tasktop.servlet.cors.core.InitParameterNames;
+import com.tasktop.servlet.cors.core.Verdict;
+import com.tasktop.servlet.cors.core.VerdictCacheStatistics;
+
+public class CorsHeaderScrutinyServletFilterTest {
+
+	private static final String HTTP_HEADER_HOST = "Host";
+
+	private static final String HTTP_HEADER_ORIGIN = "Origin";
+
+	private static final String HTTP_HEADER_REFERER = "Referer";
+
+	private static final String HTTP_HEADER_X_FORWARDED_HOST = "X-Forwarded-Host";
+
+	private static final String OBJECT_NAME_DOMAIN = "com.tasktop.servlet.cors";
+
+	private static final String VERDICT_ATTRIBUTE = "com.tasktop.servlet.cors.verdict."
+			+ CorsHeaderScrutinyServletFilter.class.getSimpleName();
+
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	private final HttpServletResponse response = mock(HttpServletResponse.class);
+
+	private final HttpServletRequest request = mock(HttpServletRequest.class);
+
+	private CorsHeaderScrutinyServletFilter filter = new CorsHeaderScrutinyServletFilter();
+
+	private final FilterChain chain = mock(FilterChain.class);
+
+	@Before
+	public void before() {
+		doReturn("POST").when(request).getMethod();
+		doReturn(Collections.emptyEnumeration()).when(request).getHeaders(any());
+	}
+
+	@Test
+	public void init() throws ServletException {
+		filter.init(mock(FilterConfig.class));
+	}
+
+	@Test
+	public void destroy() {
+		filter.destroy();
+	}
+
+	@Test
+	public void doFilterAcceptsRequestWithoutOriginOrReferer() throws IOException, ServletException {
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithEmptyOrigin() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithOriginWithoutHost() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsPostRequestWithOriginWithDifferentHost() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsPostRequestWithMalformedOrigin() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a host");
+		mockHeader(HTTP_HEADER_HOST, "a host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterAcceptsGetRequestWithMalformedReferer() throws IOException, ServletException {
+		doReturn("GET").when(request).getMethod();
+		mockHeader(HTTP_HEADER_REFERER, "http://a host/some path");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterAcceptsGetRequestWithOriginWithDifferentHost() throws IOException, ServletException {
+		doReturn("get").when(request).getMethod();
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+	@Test
+	public void doFilterAcceptsRequestWithOriginWithDifferentHostAndMatchingXForwardedHost()
+			throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		mockHeader(HTTP_HEADER_X_FORWARDED_HOST, "a-host");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithOriginWithMatchingHostAndDifferentXForwardedHost()
+			throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		mockHeader(HTTP_HEADER_X_FORWARDED_HOST, "a-different-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithOriginWithEmptyHost() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://");
+		mockHeader(HTTP_HEADER_HOST, "");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithMultipleOriginHeadersWithMatchingHost() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host", "http://a-different-host");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithMultipleHostHeaders() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-host", "a-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithMultipleXForwardedHostHeaders() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		mockHeader(HTTP_HEADER_X_FORWARDED_HOST, "a-host", "a-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithXForwardedHostWithoutHost() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_X_FORWARDED_HOST, "a-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterAcceptsRequestWithMatchingOrigin() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterAcceptsRequestWithMatchingOriginAndPort() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host:8080");
+		mockHeader(HTTP_HEADER_HOST, "a-host:8080");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterAcceptsRequestWithMatchingOriginAndDifferentPort() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host:9999");
+		mockHeader(HTTP_HEADER_HOST, "a-host:8080");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithEmptyReferer() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_REFERER, "");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithRefererWithoutHost() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_REFERER, "http://a-host/some/path");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithRefererWithDifferentHost() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_REFERER, "http://a-host/some/path");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterAcceptsRequestWithRefererWithDifferentHostOnExcludedPath()
+			throws IOException, ServletException {
+		filter = newFilterWithExcludedPath("/a-path");
+		mockHeader(HTTP_HEADER_REFERER, "http://a-host/some/path");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		mockRequestUri("", "/a-path");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithRefererWithDifferentHostOnExcludedPath()
+			throws IOException, ServletException {
+		filter = newFilterWithExcludedPath("/a-path");
+		mockHeader(HTTP_HEADER_REFERER, "http://a-host/some/path");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		mockRequestUri("", "/a-different-path");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithRefererWithEmptyHost() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_REFERER, "/a-path");
+		mockHeader(HTTP_HEADER_HOST, "");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRejectsRequestWithMultipleRefererHeadersWithMatchingHost()
+			throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_REFERER, "http://a-host", "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterAcceptsRequestWithMatchingReferer() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_REFERER, "http://a-host/some/path");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterAcceptsRequestWithMatchingRefererAndOrigin() throws IOException, ServletException {
+		mockHeader(HTTP_HEADER_REFERER, "http://a-host/some/path");
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterAnswersPreflightRequest() throws IOException, ServletException {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("false").when(config).getInitParameter(InitParameterNames.METRICS_ENABLED);
+		doReturn("true").when(config).getInitParameter(InitParameterNames.PREFLIGHT_ENABLED);
+		doReturn("GET POST PUT").when(config).getInitParameter(InitParameterNames.PREFLIGHT_ALLOWED_METHODS);
+		doReturn("Content-Type").when(config).getInitParameter(InitParameterNames.PREFLIGHT_ALLOWED_HEADERS);
+		doReturn("3600").when(config).getInitParameter(InitParameterNames.PREFLIGHT_MAX_AGE);
+		doReturn("partner.com").when(config).getInitParameter(InitParameterNames.ALLOWED_ORIGINS);
+		filter.init(config);
+		doReturn("OPTIONS").when(request).getMethod();
+		mockHeader(HTTP_HEADER_ORIGIN, "https://partner.com");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		mockHeader("Access-Control-Request-Method", "PUT");
+		filter.doFilter(request, response, chain);
+		verify(response).setHeader("Access-Control-Allow-Origin", "https://partner.com");
+		verify(response).setHeader("Access-Control-Allow-Methods", "GET, POST, PUT");
+		verify(response).setHeader("Access-Control-Allow-Headers", "Content-Type");
+		verify(response).setHeader("Access-Control-Max-Age", "3600");
+		verify(response).setHeader("Vary", "Origin");
+		verify(response).setStatus(HttpServletResponse.SC_NO_CONTENT);
+		verifyNoMoreInteractions(chain, response);
+	}
+
+	@Test
+	public void doFilterPassesReportedPreflightRequestInReportOnlyMode() throws IOException, ServletException {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("false").when(config).getInitParameter(InitParameterNames.METRICS_ENABLED);
+		doReturn("true").when(config).getInitParameter(InitParameterNames.PREFLIGHT_ENABLED);
+		doReturn("report-only").when(config).getInitParameter(InitParameterNames.MODE);
+		filter.init(config);
+		doReturn("OPTIONS").when(request).getMethod();
+		mockHeader(HTTP_HEADER_ORIGIN, "https://evil.example");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		mockHeader("Access-Control-Request-Method", "PUT");
+		filter.doFilter(request, response, chain);
+		verify(response, never()).setHeader(eq("Access-Control-Allow-Origin"), any());
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterPassesPreflightRequestWhenPreflightIsNotEnabled() throws IOException, ServletException {
+		doReturn("OPTIONS").when(request).getMethod();
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		mockHeader("Access-Control-Request-Method", "PUT");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void verdictCacheIsDisabledByDefault() throws ServletException {
+		filter.init(mock(FilterConfig.class));
+		assertThat(filter.getVerdictCacheStatistics()).isEmpty();
+	}
+
+	@Test
+	public void doFilterWithVerdictCacheAcceptsRequestWithMatchingOrigin() throws IOException, ServletException {
+		filter = newFilterWithVerdictCache();
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-host");
+		filter.doFilter(request, response, chain);
+		filter.doFilter(request, response, chain);
+		verify(chain, times(2)).doFilter(request, response);
+		verifyNoMoreInteractions(chain, response);
+		VerdictCacheStatistics statistics = filter.getVerdictCacheStatistics().get();
+		assertThat(statistics.getMissCount()).isEqualTo(1);
+		assertThat(statistics.getHitCount()).isEqualTo(1);
+		assertThat(statistics.getCapacity()).isEqualTo(16);
+	}
+
+	@Test
+	public void doFilterWithVerdictCacheRejectsRequestWithOriginWithDifferentHost()
+			throws IOException, ServletException {
+		filter = newFilterWithVerdictCache();
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		filter.doFilter(request, response, chain);
+		filter.doFilter(request, response, chain);
+		verify(response, times(2)).sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden");
+		verifyNoMoreInteractions(chain);
+		assertThat(filter.getVerdictCacheStatistics().get().getHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void doFilterInReportOnlyModeAcceptsRequestWithOriginWithDifferentHost()
+			throws IOException, ServletException {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("report-only").when(config).getInitParameter(InitParameterNames.MODE);
+		filter.init(config);
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+		assertThat(filter.getReportOnlySummary().getReportedCount(Verdict.HOST_MISMATCH)).isEqualTo(1);
+		filter.destroy();
+	}
+
+	@Test
+	public void doFilterInTokenModeIssuesTokenAndRequiresItWithoutOriginOrReferer()
+			throws IOException, ServletException {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("false").when(config).getInitParameter(InitParameterNames.METRICS_ENABLED);
+		doReturn(Base64.getEncoder().encodeToString(new byte[32])).when(config)
+				.getInitParameter(InitParameterNames.TOKEN_SECRET);
+		filter.init(config);
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+
+		doReturn("GET").when(request).getMethod();
+		filter.doFilter(request, response, chain);
+		ArgumentCaptor<String> cookie = ArgumentCaptor.forClass(String.class);
+		verify(response).addHeader(eq("Set-Cookie"), cookie.capture());
+		assertThat(cookie.getValue())
+				.matches("XSRF-TOKEN=[0-9a-f]{112}; Max-Age=43200; Path=/; SameSite=Strict; Secure");
+
+		String token = cookie.getValue().substring("XSRF-TOKEN=".length(), cookie.getValue().indexOf(';'));
+		doReturn("POST").when(request).getMethod();
+		mockHeader("Cookie", "XSRF-TOKEN=" + token);
+		mockHeader("X-XSRF-TOKEN", token);
+		filter.doFilter(request, response, chain);
+		verify(chain, times(2)).doFilter(request, response);
+		verify(response, times(1)).addHeader(any(), any());
+		filter.destroy();
+	}
+
+	@Test
+	public void doFilterInTokenModeIssuesTokenOnExcludedPath() throws IOException, ServletException {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("false").when(config).getInitParameter(InitParameterNames.METRICS_ENABLED);
+		doReturn("/a-path").when(config).getInitParameter(InitParameterNames.EXCLUSION_PATHS);
+		doReturn(Base64.getEncoder().encodeToString(new byte[32])).when(config)
+				.getInitParameter(InitParameterNames.TOKEN_SECRET);
+		filter.init(config);
+		mockRequestUri("", "/a-path");
+		filter.doFilter(request, response, chain);
+		verify(request).setAttribute(VERDICT_ATTRIBUTE, Verdict.EXCLUDED);
+		verify(response).addHeader(eq("Set-Cookie"), any());
+		verify(chain).doFilter(request, response);
+		filter.destroy();
+	}
+
+	@Test
+	public void doFilterStoresVerdictInRequestAttribute() throws IOException, ServletException {
+		filter.doFilter(request, response, chain);
+		verify(request).setAttribute(VERDICT_ATTRIBUTE, Verdict.ALLOWED);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterReusesVerdictOfEarlierDispatch() throws IOException, ServletException {
+		doReturn(Verdict.ALLOWED).when(request).getAttribute(VERDICT_ATTRIBUTE);
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		filter.doFilter(request, response, chain);
+		verify(request, never()).getHeaders(any());
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterPassesErrorDispatchOfRejectedRequest() throws IOException, ServletException {
+		doReturn(Verdict.HOST_MISMATCH).when(request).getAttribute(VERDICT_ATTRIBUTE);
+		doReturn(HttpServletResponse.SC_FORBIDDEN).when(request).getAttribute("javax.servlet.error.status_code");
+		filter.doFilter(request, response, chain);
+		expectAccepted();
+	}
+
+	@Test
+	public void doFilterRejectsOtherDispatchOfRejectedRequest() throws IOException, ServletException {
+		doReturn(Verdict.HOST_MISMATCH).when(request).getAttribute(VERDICT_ATTRIBUTE);
+		filter.doFilter(request, response, chain);
+		expectForbidden();
+	}
+
+	@Test
+	public void doFilterRescrutinizesDispatchesWhenConfigured() throws IOException, ServletException {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("true").when(config).getInitParameter(InitParameterNames.RESCRUTINIZE_DISPATCHES);
+		filter.init(config);
+		doReturn(Verdict.ALLOWED).when(request).getAttribute(VERDICT_ATTRIBUTE);
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		filter.doFilter(request, response, chain);
+		verify(request, never()).setAttribute(any(), any());
+		expectForbidden();
+		filter.destroy();
+	}
+
+	@Test
+	public void initRegistersMetricsAndDestroyUnregistersThem() throws Exception {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("a-metrics-filter").when(config).getFilterName();
+		filter.init(config);
+		ObjectName name = new ObjectName(OBJECT_NAME_DOMAIN + ":type="
+				+ CorsHeaderScrutinyServletFilter.class.getSimpleName() + ",name=\"a-metrics-filter\"");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertThat(server.isRegistered(name)).isTrue();
+
+		mockHeader(HTTP_HEADER_ORIGIN, "http://a-host");
+		mockHeader(HTTP_HEADER_HOST, "a-different-host");
+		filter.doFilter(request, response, chain);
+		assertThat(server.getAttribute(name, "RequestsChecked")).isEqualTo(1L);
+		assertThat(server.getAttribute(name, "RequestsRejectedHostMismatch")).isEqualTo(1L);
+
+		filter.destroy();
+		assertThat(server.isRegistered(name)).isFalse();
+	}
+
+	@Test
+	public void initClosesScrutinizerOfPreviousInit() throws Exception {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("a-reinitialized-filter").when(config).getFilterName();
+		filter.init(config);
+		filter.init(config);
+		ObjectName name = new ObjectName(OBJECT_NAME_DOMAIN + ":type="
+				+ CorsHeaderScrutinyServletFilter.class.getSimpleName() + ",name=\"a-reinitialized-filter\"");
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isTrue();
+		filter.destroy();
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isFalse();
+	}
+
+	@Test
+	public void initDoesNotRegisterMetricsWhenDisabled() throws Exception {
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("a-filter-without-metrics").when(config).getFilterName();
+		doReturn("false").when(config).getInitParameter(InitParameterNames.METRICS_ENABLED);
+		filter.init(config);
+		ObjectName pattern = new ObjectName(
+				OBJECT_NAME_DOMAIN + ":name=\"a-filter-without-metrics\",*");
+		assertThat(ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null)).isEmpty();
+		filter.destroy();
+	}
+
+	private void mockRequestUri(String contextPath, String requestPath) {
+		doReturn(contextPath).when(request).getContextPath();
+		doReturn(requestPath).when(request).getRequestURI();
+	}
+
+	private CorsHeaderScrutinyServletFilter newFilterWithExcludedPath(String pathPrefix) throws ServletException {
+		CorsHeaderScrutinyServletFilter filter = new CorsHeaderScrutinyServletFilter();
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn(pathPrefix).when(config).getInitParameter(InitParameterNames.EXCLUSION_PATHS);
+		filter.init(config);
+		return filter;
+	}
+
+	private CorsHeaderScrutinyServletFilter newFilterWithVerdictCache() throws ServletException {
+		CorsHeaderScrutinyServletFilter filter = new CorsHeaderScrutinyServletFilter();
+		FilterConfig config = mock(FilterConfig.class);
+		doReturn("true").when(config).getInitParameter(InitParameterNames.VERDICT_CACHE_ENABLED);
+		doReturn("16").when(config).getInitParameter(InitParameterNames.VERDICT_CACHE_SIZE);
+		filter.init(config);
+		return filter;
+	}
+
+	private void expectAccepted() throws IOException, ServletException {
+		verify(chain).doFilter(request, response);
+		verifyNoMoreInteractions(chain, response);
+	}
+
+	private void expectForbidden() throws IOException {
+		verify(response).sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden");
+		verifyNoMoreInteractions(chain);
+	}
+
+	private void mockHeader(String headerName, String... values) {
+		doAnswer(i -> Collections.enumeration(Arrays.asList(values))).when(request).getHeaders(headerName);
+	}
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+public class ServletScrutinizedRequestTest {
+
+	@Test
+	public void getHeadersIteratesIndependently() {
+		ServletScrutinizedRequest request = new ServletScrutinizedRequest(
+				new StubHttpServletRequest("POST", "", "/a-path").header("X-XSRF-TOKEN", "a-token", "another-token")
+						.header("Cookie", "a=1", "b=2"));
+		Iterator<String> tokens = request.getHeaders("X-XSRF-TOKEN");
+		assertThat(tokens.next()).isEqualTo("a-token");
+		Iterator<String> cookies = request.getHeaders("Cookie");
+		assertThat(cookies.next()).isEqualTo("a=1");
+		assertThat(tokens.next()).isEqualTo("another-token");
+		assertThat(tokens.hasNext()).isFalse();
+		assertThat(cookies.next()).isEqualTo("b=2");
+		assertThat(cookies.hasNext()).isFalse();
+	}
+
+	@Test
+	public void getHeadersOfMissingHeader() {
+		ServletScrutinizedRequest request = new ServletScrutinizedRequest(
+				new StubHttpServletRequest("GET", "", "/a-path"));
+		assertThat(request.getHeaders("Origin").hasNext()).isFalse();
+	}
+}
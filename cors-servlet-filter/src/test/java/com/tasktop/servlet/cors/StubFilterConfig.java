@@ -15,11 +15,40 @@
  *******************************************************************************/
 package com.tasktop.servlet.cors;
 
-class ForbiddenException extends RuntimeException {
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 
-	private static final long serialVersionUID = 1L;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 
-	ForbiddenException(String message) {
-		super(message);
+public class StubFilterConfig implements FilterConfig {
+
+	private final Map<String, String> initParameters = new HashMap<>();
+
+	public StubFilterConfig initParameter(String name, String value) {
+		initParameters.put(name, value);
+		return this;
+	}
+
+	@Override
+	public String getFilterName() {
+		return "CORSFilter";
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return null;
+	}
+
+	@Override
+	public String getInitParameter(String name) {
+		return initParameters.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getInitParameterNames() {
+		return Collections.enumeration(initParameters.keySet());
 	}
 }
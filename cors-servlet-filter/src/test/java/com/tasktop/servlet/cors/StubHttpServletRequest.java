@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors;
+
+import java.io.BufferedReader;
+import java.security.Principal;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * A minimal {@link HttpServletRequest} that answers only what the filter asks for. Header values are held in
+ * reusable enumerations so that reading them does not allocate, keeping the cost of the stub out of the measurements.
+ */
+public class StubHttpServletRequest implements HttpServletRequest {
+
+	private static final HeaderValues NO_VALUES = new HeaderValues("");
+
+	private final String method;
+	private final String contextPath;
+	private final String requestUri;
+	private HeaderValues[] headers = new HeaderValues[0];
+	private String attributeName;
+	private Object attributeValue;
+
+	public StubHttpServletRequest(String method, String contextPath, String requestUri) {
+		this.method = method;
+		this.contextPath = contextPath;
+		this.requestUri = requestUri;
+	}
+
+	public StubHttpServletRequest header(String name, String... values) {
+		HeaderValues[] newHeaders = new HeaderValues[headers.length + 1];
+		System.arraycopy(headers, 0, newHeaders, 0, headers.length);
+		newHeaders[headers.length] = new HeaderValues(name, values);
+		headers = newHeaders;
+		return this;
+	}
+
+	/**
+	 * Removes the attribute set by the filter, so that the next call to the filter is a new request rather than a
+	 * dispatch of the same request.
+	 */
+	public StubHttpServletRequest clearAttributes() {
+		attributeName = null;
+		attributeValue = null;
+		return this;
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String name) {
+		for (HeaderValues header : headers) {
+			if (header.name.equalsIgnoreCase(name)) {
+				return header.reset();
+			}
+		}
+		return NO_VALUES.reset();
+	}
+
+	@Override
+	public String getHeader(String name) {
+		Enumeration<String> values = getHeaders(name);
+		return values.hasMoreElements() ? values.nextElement() : null;
+	}
+
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public String getContextPath() {
+		return contextPath;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return requestUri;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return name.equals(attributeName) ? attributeValue : null;
+	}
+
+	@Override
+	public Enumeration<?> getAttributeNames() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setCharacterEncoding(String env) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getContentLength() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getContentType() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public ServletInputStream getInputStream() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getParameter(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Enumeration<?> getParameterNames() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String[] getParameterValues(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Map<?, ?> getParameterMap() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getProtocol() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getScheme() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getServerName() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getServerPort() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public BufferedReader getReader() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getRemoteAddr() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getRemoteHost() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setAttribute(String name, Object o) {
+		if (attributeName != null && !attributeName.equals(name)) {
+			throw new UnsupportedOperationException();
+		}
+		attributeName = name;
+		attributeValue = o;
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		if (name.equals(attributeName)) {
+			clearAttributes();
+		}
+	}
+
+	@Override
+	public Locale getLocale() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Enumeration<?> getLocales() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isSecure() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(String path) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	@Deprecated
+	public String getRealPath(String path) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getRemotePort() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getLocalName() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getLocalAddr() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getLocalPort() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getAuthType() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Cookie[] getCookies() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long getDateHeader(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Enumeration<?> getHeaderNames() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getIntHeader(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getPathInfo() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getPathTranslated() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getQueryString() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getRemoteUser() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isUserInRole(String role) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getRequestedSessionId() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getServletPath() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public HttpSession getSession(boolean create) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public HttpSession getSession() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromCookie() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromURL() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	@Deprecated
+	public boolean isRequestedSessionIdFromUrl() {
+		throw new UnsupportedOperationException();
+	}
+
+	private static class HeaderValues implements Enumeration<String> {
+
+		private final String name;
+		private final String[] values;
+		private int index;
+
+		HeaderValues(String name, String... values) {
+			this.name = name;
+			this.values = values;
+		}
+
+		HeaderValues reset() {
+			index = 0;
+			return this;
+		}
+
+		@Override
+		public boolean hasMoreElements() {
+			return index < values.length;
+		}
+
+		@Override
+		public String nextElement() {
+			if (index >= values.length) {
+				throw new NoSuchElementException();
+			}
+			return values[index++];
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Tasktop Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.tasktop.servlet.cors;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A minimal {@link HttpServletResponse} that records the status passed to {@link #sendError(int, String)}, and the
+ * last value of each header passed to {@link #addHeader}.
+ */
+public class StubHttpServletResponse implements HttpServletResponse {
+
+	private int status = SC_OK;
+
+	private final Map<String, String> addedHeaders = new HashMap<>();
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getAddedHeader(String name) {
+		return addedHeaders.get(name);
+	}
+
+	@Override
+	public void sendError(int sc, String msg) {
+		status = sc;
+	}
+
+	@Override
+	public void sendError(int sc) {
+		status = sc;
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		status = sc;
+	}
+
+	@Override
+	@Deprecated
+	public void setStatus(int sc, String sm) {
+		status = sc;
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		// headers are not recorded
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		addedHeaders.put(name, value);
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		// headers are not recorded
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		// headers are not recorded
+	}
+
+	@Override
+	public void setDateHeader(String name, long date) {
+		// headers are not recorded
+	}
+
+	@Override
+	public void addDateHeader(String name, long date) {
+		// headers are not recorded
+	}
+
+	@Override
+	public void addCookie(Cookie cookie) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean containsHeader(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String encodeURL(String url) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String encodeRedirectURL(String url) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	@Deprecated
+	public String encodeUrl(String url) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	@Deprecated
+	public String encodeRedirectUrl(String url) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void sendRedirect(String location) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getContentType() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public PrintWriter getWriter() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setCharacterEncoding(String charset) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setContentLength(int len) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setContentType(String type) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setBufferSize(int size) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getBufferSize() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void flushBuffer() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void resetBuffer() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return false;
+	}
+
+	@Override
+	public void reset() {
+		status = SC_OK;
+	}
+
+	@Override
+	public void setLocale(Locale loc) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Locale getLocale() {
+		throw new UnsupportedOperationException();
+	}
+}